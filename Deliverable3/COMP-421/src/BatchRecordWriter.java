@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts records of one type with batched, parameterized inserts on a single
+ * connection and commits every few thousand rows.
+ *
+ * When a batch fails, the batch is rolled back to a savepoint taken before it
+ * and its rows are inserted one at a time. Rows whose id already exists
+ * (SQLSTATE 23505) are written to the reject file, and the rest of the batch
+ * goes in as normal. Any other error stops the import.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class BatchRecordWriter {
+
+	// SQLSTATE of a duplicate primary key.
+	private static final String DUPLICATE_KEY = "23505";
+
+	private final Connection con;
+	private final PreparedStatement insert;
+	// Rows added per executeBatch() and rows inserted between commits.
+	private final int batchSize;
+	private final int commitInterval;
+	// Where rejected rows are written, with the reason they were rejected.
+	private final Writer rejects;
+
+	// Rows in the current batch, as values, as the original source line and
+	// as the number of that line in the file.
+	private final List<Object[]> pendingValues = new ArrayList<Object[]>();
+	private final List<String> pendingSources = new ArrayList<String>();
+	private final List<Long> pendingLines = new ArrayList<Long>();
+	private int sinceCommit = 0;
+	private long inserted = 0;
+	private long rejected = 0;
+
+	/**
+	 * @param connection - Connection to insert on. Auto-commit is turned off until it is returned.
+	 * @param type - Kind of records inserted.
+	 * @param batchSize - Rows sent to the database per batch.
+	 * @param commitInterval - Rows inserted between commits.
+	 * @param rejects - Where rejected rows are written.
+	 * @throws SQLException
+	 */
+	public BatchRecordWriter(PooledConnection connection, RecordType type, int batchSize, int commitInterval,
+			Writer rejects) throws SQLException {
+		if (batchSize < 1 || commitInterval < 1) {
+			throw new IllegalArgumentException("Batch size and commit interval must be positive.");
+		}
+		this.con = connection.getConnection();
+		this.insert = connection.prepare(type.getInsertSql());
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+		this.rejects = rejects;
+		con.setAutoCommit(false);
+	}
+
+	/**
+	 * Adds a row to the current batch, sending the batch when it is full.
+	 * @param values - Values for the insert, in column order.
+	 * @param source - The line the row came from, written out if it is rejected.
+	 * @param line - Number of that line in the file.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void add(Object[] values, String source, long line) throws SQLException, IOException {
+		for (int i = 0; i < values.length; i++) {
+			insert.setObject(i + 1, values[i]);
+		}
+		insert.addBatch();
+		pendingValues.add(values);
+		pendingSources.add(source);
+		pendingLines.add(line);
+		if (pendingValues.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes a row that will not be inserted to the reject file.
+	 * @param source - The original line.
+	 * @param reason - Why it was rejected.
+	 * @throws IOException
+	 */
+	public void reject(String source, String reason) throws IOException {
+		rejected++;
+		rejects.write(source);
+		rejects.write(",\"" + reason.replace("\"", "\"\"") + "\"\n");
+	}
+
+	/**
+	 * Sends the rows still waiting and commits.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void finish() throws SQLException, IOException {
+		flush();
+		con.commit();
+		sinceCommit = 0;
+		rejects.flush();
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Sends the current batch, falling back to one row at a time if it fails,
+	 * and commits once enough rows were inserted since the last commit.
+	 */
+	private void flush() throws SQLException, IOException {
+		if (pendingValues.isEmpty()) {
+			return;
+		}
+		Savepoint savepoint = con.setSavepoint();
+		try {
+			insert.executeBatch();
+			con.releaseSavepoint(savepoint);
+			inserted += pendingValues.size();
+			sinceCommit += pendingValues.size();
+		} catch (BatchUpdateException e) {
+			con.rollback(savepoint);
+			insert.clearBatch();
+			insertOneByOne();
+		}
+		pendingValues.clear();
+		pendingSources.clear();
+		pendingLines.clear();
+
+		if (sinceCommit >= commitInterval) {
+			con.commit();
+			sinceCommit = 0;
+		}
+	}
+
+	/**
+	 * Inserts the pending rows individually so that only the duplicates are rejected.
+	 */
+	private void insertOneByOne() throws SQLException, IOException {
+		for (int row = 0; row < pendingValues.size(); row++) {
+			Object[] values = pendingValues.get(row);
+			for (int i = 0; i < values.length; i++) {
+				insert.setObject(i + 1, values[i]);
+			}
+			try {
+				insert.executeUpdate();
+				inserted++;
+				sinceCommit++;
+			} catch (SQLException e) {
+				if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+					throw e;
+				}
+				reject(pendingSources.get(row), "Line " + pendingLines.get(row)
+						+ ": A record already exists with this ID");
+			}
+		}
+	}
+}
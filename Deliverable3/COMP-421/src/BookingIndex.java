@@ -0,0 +1,302 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of when every team and every official is booked, for
+ * checking a game move or an official assignment for clashes without querying
+ * HasTeams and Officiates each time a slot is tried.
+ *
+ * A game is taken to last GAME_MINUTES from its start. For every team and
+ * every official the index holds the start times of their games in a
+ * TreeMap, in minutes since 1970-01-01, so the bookings that overlap a new
+ * game are found with one range lookup whatever the number of bookings. The
+ * index is loaded from the database once and then kept up to date as games
+ * are moved, deleted and given officials. It is shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class BookingIndex {
+
+	// Length of a game, set with -Dbooking.gameMinutes.
+	public static final int GAME_MINUTES = Integer.getInteger("booking.gameMinutes", 120);
+	// Rows read from the database per round trip while loading.
+	private static final int FETCH_SIZE = 1000;
+
+	/**
+	 * The teams and officials of one game.
+	 */
+	private static class Booking {
+		final String[] game;
+		final List<String> teams = new ArrayList<String>();
+		final List<Integer> officials = new ArrayList<Integer>();
+
+		Booking(String[] game) {
+			this.game = game;
+		}
+	}
+
+	// Games by key, and the games of every team and official by start time.
+	private Map<String, Booking> games = new HashMap<String, Booking>();
+	private Map<String, TreeMap<Long, List<Booking>>> teams = new HashMap<String, TreeMap<Long, List<Booking>>>();
+	private Map<Integer, TreeMap<Long, List<Booking>>> officials = new HashMap<Integer, TreeMap<Long, List<Booking>>>();
+
+	/**
+	 * Replaces the contents of the index with every game in the database.
+	 * @param pool - Pool to borrow the connection from.
+	 * @return Number of games indexed.
+	 * @throws SQLException
+	 */
+	public int load(ConnectionPool pool) throws SQLException {
+		BookingIndex loaded = new BookingIndex();
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare("SELECT gtime, gdate, sport, llevel, name1, syear1, "
+					+ "sport1, llevel1, name2, syear2, sport2, llevel2 FROM HasTeams");
+			statement.setFetchSize(FETCH_SIZE);
+			ResultSet rs = statement.executeQuery();
+			try {
+				while (rs.next()) {
+					Booking booking = loaded.booking(new String[] { rs.getString(1), rs.getString(2), rs.getString(3),
+							rs.getString(4) });
+					loaded.addTeam(booking, team(rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8)));
+					loaded.addTeam(booking, team(rs.getString(9), rs.getString(10), rs.getString(11), rs.getString(12)));
+				}
+			} finally {
+				rs.close();
+			}
+
+			statement = connection.prepare("SELECT oid, gtime, gdate, sport, llevel FROM Officiates");
+			statement.setFetchSize(FETCH_SIZE);
+			rs = statement.executeQuery();
+			try {
+				while (rs.next()) {
+					loaded.addOfficial(loaded.booking(new String[] { rs.getString(2), rs.getString(3), rs.getString(4),
+							rs.getString(5) }), rs.getInt(1));
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connection.close();
+		}
+		synchronized (this) {
+			games = loaded.games;
+			teams = loaded.teams;
+			officials = loaded.officials;
+			return games.size();
+		}
+	}
+
+	/**
+	 * Finds what stops a game from moving to a new slot: another game of its
+	 * league in that slot, or one of its teams or officials playing or
+	 * officiating another game at the same time.
+	 * @param game - Time, date, sport and level of the game.
+	 * @param date - New date, YYYY-MM-DD.
+	 * @param time - New time, HH:MM:SS.
+	 * @return A description of every clash, empty if the game can move.
+	 */
+	public synchronized List<String> conflicts(String[] game, String date, String time) {
+		List<String> conflicts = new ArrayList<String>();
+		Booking moved = games.get(key(game));
+		String[] slot = { time, date, game[2], game[3] };
+		Booking taken = games.get(key(slot));
+		if (taken != null && taken != moved) {
+			conflicts.add(game[2].trim() + " " + game[3].trim() + " already has a game at " + date + " " + time + ".");
+		}
+		if (moved == null) {
+			return conflicts;
+		}
+		long start = minutes(date, time);
+		for (String team : moved.teams) {
+			for (Booking other : overlapping(teams.get(team), start, moved)) {
+				conflicts.add("Team " + team + " plays at " + describe(other.game) + ".");
+			}
+		}
+		for (Integer oid : moved.officials) {
+			for (Booking other : overlapping(officials.get(oid), start, moved)) {
+				conflicts.add("Official " + oid + " officiates at " + describe(other.game) + ".");
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * @param oid - Id of an official.
+	 * @param game - Time, date, sport and level of a game.
+	 * @return True if the official has no other game overlapping this one.
+	 */
+	public synchronized boolean isFree(int oid, String[] game) {
+		return overlapping(officials.get(oid), minutes(game[1], game[0]), games.get(key(game))).isEmpty();
+	}
+
+	/**
+	 * Records a game moved in the database, with its teams and officials.
+	 * @param game - Old time, date, sport and level of the game.
+	 * @param date - New date, YYYY-MM-DD.
+	 * @param time - New time, HH:MM:SS.
+	 */
+	public synchronized void move(String[] game, String date, String time) {
+		Booking old = games.get(key(game));
+		if (old == null) {
+			return;
+		}
+		remove(game);
+		Booking moved = booking(new String[] { time, date, game[2], game[3] });
+		for (String team : old.teams) {
+			addTeam(moved, team);
+		}
+		for (Integer oid : old.officials) {
+			addOfficial(moved, oid);
+		}
+	}
+
+	/**
+	 * Records a game deleted from the database.
+	 * @param game - Time, date, sport and level of the game.
+	 */
+	public synchronized void remove(String[] game) {
+		Booking booking = games.remove(key(game));
+		if (booking == null) {
+			return;
+		}
+		long start = minutes(booking.game[1], booking.game[0]);
+		for (String team : booking.teams) {
+			unbook(teams.get(team), start, booking);
+		}
+		for (Integer oid : booking.officials) {
+			unbook(officials.get(oid), start, booking);
+		}
+	}
+
+	/**
+	 * Records an official given to a game in the database.
+	 * @param game - Time, date, sport and level of the game.
+	 * @param oid - Id of the official.
+	 */
+	public synchronized void addOfficial(String[] game, int oid) {
+		addOfficial(booking(game), oid);
+	}
+
+	public synchronized int size() {
+		return games.size();
+	}
+
+	/**
+	 * @return The bookings of a team or official overlapping a game starting at a time, other than the game itself.
+	 */
+	private static List<Booking> overlapping(TreeMap<Long, List<Booking>> bookings, long start, Booking self) {
+		List<Booking> found = new ArrayList<Booking>();
+		if (bookings == null) {
+			return found;
+		}
+		NavigableMap<Long, List<Booking>> clashes = bookings.subMap(start - GAME_MINUTES, false, start + GAME_MINUTES,
+				false);
+		for (List<Booking> atTime : clashes.values()) {
+			for (Booking other : atTime) {
+				if (other != self) {
+					found.add(other);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return The booking of a game, created empty the first time.
+	 */
+	private Booking booking(String[] game) {
+		String key = key(game);
+		Booking booking = games.get(key);
+		if (booking == null) {
+			String[] trimmed = new String[4];
+			for (int i = 0; i < trimmed.length; i++) {
+				trimmed[i] = game[i].trim();
+			}
+			booking = new Booking(trimmed);
+			games.put(key, booking);
+		}
+		return booking;
+	}
+
+	private void addTeam(Booking booking, String team) {
+		if (booking.teams.contains(team)) {
+			return;
+		}
+		booking.teams.add(team);
+		TreeMap<Long, List<Booking>> bookings = teams.get(team);
+		if (bookings == null) {
+			bookings = new TreeMap<Long, List<Booking>>();
+			teams.put(team, bookings);
+		}
+		book(bookings, minutes(booking.game[1], booking.game[0]), booking);
+	}
+
+	private void addOfficial(Booking booking, int oid) {
+		if (booking.officials.contains(oid)) {
+			return;
+		}
+		booking.officials.add(oid);
+		TreeMap<Long, List<Booking>> bookings = officials.get(oid);
+		if (bookings == null) {
+			bookings = new TreeMap<Long, List<Booking>>();
+			officials.put(oid, bookings);
+		}
+		book(bookings, minutes(booking.game[1], booking.game[0]), booking);
+	}
+
+	private static void book(TreeMap<Long, List<Booking>> bookings, long start, Booking booking) {
+		List<Booking> atTime = bookings.get(start);
+		if (atTime == null) {
+			// Almost always the only booking at that time.
+			atTime = new ArrayList<Booking>(1);
+			bookings.put(start, atTime);
+		}
+		atTime.add(booking);
+	}
+
+	private static void unbook(TreeMap<Long, List<Booking>> bookings, long start, Booking booking) {
+		List<Booking> atTime = bookings == null ? null : bookings.get(start);
+		if (atTime != null) {
+			atTime.remove(booking);
+			if (atTime.isEmpty()) {
+				bookings.remove(start);
+			}
+		}
+	}
+
+	/**
+	 * @return Key of a team, its name, year, sport and level.
+	 */
+	private static String team(String name, String year, String sport, String level) {
+		return name.trim() + " (" + year.trim() + " " + sport.trim() + " " + level.trim() + ")";
+	}
+
+	private static String key(String[] game) {
+		return game[0].trim() + "|" + game[1].trim() + "|" + game[2].trim() + "|" + game[3].trim();
+	}
+
+	private static String describe(String[] game) {
+		return game[1] + " " + game[0] + " (" + game[2] + " " + game[3] + ")";
+	}
+
+	/**
+	 * @param date - Date as YYYY-MM-DD.
+	 * @param time - Time as HH:MM or HH:MM:SS.
+	 * @return Minutes since 1970-01-01 00:00.
+	 */
+	static long minutes(String date, String time) {
+		String[] parts = time.trim().split(":");
+		if (parts.length < 2) {
+			throw new IllegalArgumentException("Not a time: " + time);
+		}
+		return PlayerDateIndex.epochDay(date) * 1440L + Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+	}
+}
@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Imports players, officials or coordinators from a CSV file, for registering
+ * everyone at once at the start of a season instead of through
+ * DatabaseUI.addNewRecord() one person at a time.
+ *
+ * The file is read a line at a time, so any size can be imported. Each line is
+ * checked against the column limits of the schema, and the valid rows are
+ * inserted in batches with a commit every few thousand rows. Invalid lines and
+ * duplicate ids go to a reject file, together with the reason, and the import
+ * carries on.
+ *
+ * Each line holds the fields in table order without the creation date, which
+ * is set to today: id, gender, last name, first name, address, phone number,
+ * email, birthday, and the salary for officials and coordinators. Fields with
+ * commas are put in double quotes. A first line that does not start with a
+ * number is taken to be a header and skipped.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class BulkImporter {
+
+	// Rows sent to the database per batch.
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	// Lines read between progress messages.
+	private static final int PROGRESS_INTERVAL = 10000;
+
+	private final ConnectionPool pool;
+	private final RecordType type;
+	private final int batchSize;
+	private final int commitInterval;
+
+	/**
+	 * @param pool - Pool to borrow the connection from.
+	 * @param type - Kind of records in the file.
+	 * @param commitInterval - Rows inserted between commits.
+	 */
+	public BulkImporter(ConnectionPool pool, RecordType type, int commitInterval) {
+		this(pool, type, Math.min(DEFAULT_BATCH_SIZE, commitInterval), commitInterval);
+	}
+
+	/**
+	 * @param pool - Pool to borrow the connection from.
+	 * @param type - Kind of records in the file.
+	 * @param batchSize - Rows sent to the database per batch.
+	 * @param commitInterval - Rows inserted between commits.
+	 */
+	public BulkImporter(ConnectionPool pool, RecordType type, int batchSize, int commitInterval) {
+		this.pool = pool;
+		this.type = type;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Imports every line of the file and prints a summary.
+	 * @param input - CSV file to import.
+	 * @param rejectFile - File the rejected lines are written to.
+	 * @return Number of records inserted.
+	 * @throws IOException if a file cannot be read or written.
+	 * @throws SQLException if the database fails for a reason other than a duplicate id.
+	 *         Rows committed before the failure stay in the database.
+	 */
+	public long importFile(File input, File rejectFile) throws IOException, SQLException {
+		String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+		long start = System.nanoTime();
+		long lines = 0;
+
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		BufferedWriter rejects = new BufferedWriter(new FileWriter(rejectFile));
+		PooledConnection connection = pool.borrow();
+		try {
+			BatchRecordWriter writer = new BatchRecordWriter(connection, type, batchSize, commitInterval, rejects);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] fields = parseLine(line);
+				if (lines == 1 && !fields[0].trim().matches("\\d+")) {
+					continue;
+				}
+				String error = type.validate(fields);
+				if (error != null) {
+					writer.reject(line, "Line " + lines + ": " + error);
+				} else {
+					writer.add(type.toParameters(fields, today), line, lines);
+				}
+				if (lines % PROGRESS_INTERVAL == 0) {
+					System.out.println(String.format("  %d lines read, %d rejected, %.0f lines/s",
+							lines, writer.getRejected(), lines / seconds(start)));
+				}
+			}
+			writer.finish();
+
+			System.out.println(String.format("Imported %d %s records from %d lines in %.2f s (%.0f rows/s), "
+					+ "%d rejected to %s.", writer.getInserted(), type, lines, seconds(start),
+					writer.getInserted() / seconds(start), writer.getRejected(), rejectFile.getPath()));
+			return writer.getInserted();
+		} finally {
+			connection.close();
+			reader.close();
+			rejects.close();
+		}
+	}
+
+	/**
+	 * Splits a CSV line into its fields. Fields may be in double quotes, in which
+	 * case they can hold commas, and a doubled quote stands for one quote.
+	 * @param line - The line to split.
+	 * @return The fields, unquoted.
+	 */
+	public static String[] parseLine(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	private static double seconds(long startNanos) {
+		return Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+	}
+}
@@ -0,0 +1,137 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cleans seasons or teams in small transactions instead of one large one.
+ *
+ * Deleting a season or team cascades to Team, PlaysFor, HasTeams, Registers and
+ * Creates, so deleting every qualifying row at once holds a large number of
+ * locks until the end and can escalate to table locks, blocking the front desk.
+ * Here the qualifying rows are found once, then deleted in batches of a
+ * configurable size with a commit after each batch, so locks are only held for
+ * one chunk at a time.
+ *
+ * The qualifying rows are fixed when the run starts. Cleaning is run after the
+ * registration deadline, when seasons and rosters are no longer changing.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ChunkedCleaner {
+
+	// Pool from which the cleaning connection is borrowed.
+	private final ConnectionPool pool;
+	// Number of rows deleted per transaction.
+	private final int chunkSize;
+
+	/**
+	 * @param pool - Pool to borrow the connection from.
+	 * @param chunkSize - Number of rows to delete before each commit.
+	 */
+	public ChunkedCleaner(ConnectionPool pool, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Deletes the seasons or teams which do not meet the minimum requirements,
+	 * reporting progress and throughput after every chunk.
+	 * @param selection - 'season' or 'team'.
+	 * @return Number of seasons or teams deleted.
+	 * @throws SQLException if a chunk fails. Chunks committed before it stay deleted.
+	 */
+	public int clean(String selection) throws SQLException {
+		String keysSql;
+		String deleteSql;
+		if (selection.equals("season")) {
+			keysSql = "select s.syear, s.sport, s.llevel from season s where "
+					+ CleanDatabase.EXPIRED_SEASON_CONDITION;
+			deleteSql = "delete from season where syear = ? and sport = ? and llevel = ?";
+		} else if (selection.equals("team")) {
+			keysSql = "select t.name, t.syear, t.sport, t.llevel from team t where "
+					+ CleanDatabase.UNDERSTAFFED_TEAM_CONDITION;
+			deleteSql = "delete from team where name = ? and syear = ? and sport = ? and llevel = ?";
+		} else {
+			throw new IllegalArgumentException("Unknown selection: " + selection);
+		}
+
+		PooledConnection connection = pool.borrow();
+		Connection con = connection.getConnection();
+		try {
+			long start = System.nanoTime();
+			List<Object[]> keys = loadKeys(connection.prepare(keysSql));
+			System.out.println("Found " + keys.size() + " " + selection + "s to delete in "
+					+ (System.nanoTime() - start) / 1000000 + " ms, deleting " + chunkSize + " per chunk.");
+
+			con.setAutoCommit(false);
+			PreparedStatement delete = connection.prepare(deleteSql);
+			int deleted = 0;
+			for (int from = 0; from < keys.size(); from += chunkSize) {
+				int to = Math.min(from + chunkSize, keys.size());
+				for (Object[] key : keys.subList(from, to)) {
+					for (int i = 0; i < key.length; i++) {
+						delete.setObject(i + 1, key[i]);
+					}
+					delete.addBatch();
+				}
+				for (int count : delete.executeBatch()) {
+					// Drivers may report SUCCESS_NO_INFO instead of a count.
+					deleted += count > 0 ? count : (count == java.sql.Statement.SUCCESS_NO_INFO ? 1 : 0);
+				}
+				con.commit();
+
+				System.out.println(String.format("  %d of %d %ss deleted (%d%%), %.0f %ss/s",
+						to, keys.size(), selection, to * 100 / keys.size(),
+						to / seconds(start), selection));
+			}
+
+			System.out.println(String.format("Deleted %d %ss in %.2f s (%.0f %ss/s).",
+					deleted, selection, seconds(start), deleted / seconds(start), selection));
+			return deleted;
+		} catch (SQLException e) {
+			// The keys are read before auto-commit is turned off. Rolling back in
+			// auto-commit mode would throw and hide the error.
+			try {
+				if (!con.getAutoCommit()) {
+					con.rollback();
+				}
+			} catch (SQLException rollbackE) {
+				e.addSuppressed(rollbackE);
+			}
+			throw e;
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Reads the primary keys returned by the statement.
+	 */
+	private static List<Object[]> loadKeys(PreparedStatement statement) throws SQLException {
+		List<Object[]> keys = new ArrayList<Object[]>();
+		ResultSet rs = statement.executeQuery();
+		try {
+			int columns = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				Object[] key = new Object[columns];
+				for (int i = 0; i < columns; i++) {
+					key[i] = rs.getObject(i + 1);
+				}
+				keys.add(key);
+			}
+		} finally {
+			rs.close();
+		}
+		return keys;
+	}
+
+	private static double seconds(long startNanos) {
+		return Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+	}
+}
@@ -0,0 +1,409 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Compares the cursor and set-based implementations of the clean procedure on
+ * generated datasets, first for seasons and then for teams with large rosters.
+ * The same data is generated before each run, so both implementations see the
+ * same rows. Finally it shows that an incremental season clean takes the same
+ * time however many already processed seasons there are.
+ *
+ * Usage: java CleanBenchmark url username password [seasons] [teams]
+ *
+ * The cursor procedure looks at every season in the database, so this should be
+ * run against a scratch copy of the schema. All generated rows belong to leagues
+ * whose sport starts with "BENCH-" and are removed afterwards.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class CleanBenchmark {
+
+	// Prefix of the sports created for the benchmark.
+	private static final String SPORT_PREFIX = "BENCH-";
+	// League levels used for every generated sport.
+	private static final String[] LEVELS = { "A", "B", "C", "D", "E" };
+	// Number of seasons generated per league, one per year.
+	private static final int YEARS = 200;
+	// Rows inserted per batch.
+	private static final int BATCH_SIZE = 5000;
+	// Seed so that every run generates the same data.
+	private static final long SEED = 421;
+	// Minimum number of teams of every generated league, the one the cursor
+	// procedure assumes, so that both procedures delete the same seasons.
+	private static final int MIN_TEAMS = 4;
+	// Teams per season and largest roster when generating teams.
+	private static final int TEAMS_PER_SEASON = 20;
+	private static final int MAX_ROSTER = 12;
+	// Generated players have ids starting here, below those of
+	// LeagueDataGenerator and inside the range allowed by the Player check.
+	private static final int FIRST_PID = 260400001;
+	private static final int PLAYERS = TEAMS_PER_SEASON * MAX_ROSTER;
+	// New seasons added after the history for the incremental runs, as a
+	// number of years for each of the first few leagues.
+	private static final int FRESH_YEARS = 10;
+	private static final int FRESH_LEAGUES = 5;
+
+	public static void main(String[] args) throws SQLException {
+		if (args.length < 3) {
+			System.err.println("Usage: java CleanBenchmark url username password [seasons] [teams]");
+			System.exit(1);
+		}
+		int seasons = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+		int teams = args.length > 4 ? Integer.parseInt(args[4]) : 50000;
+
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		Connection con = DriverManager.getConnection(args[0], args[1], args[2]);
+		try {
+			createProcedure(con, CleanDatabase.CURSOR_PROCEDURE);
+			createProcedure(con, CleanDatabase.SET_PROCEDURE);
+
+			System.out.println("Cleaning seasons, " + seasons + " generated:");
+			long cursor = timeSeasonClean(con, seasons, "clean");
+			long set = timeSeasonClean(con, seasons, "cleanset");
+			System.out.println(String.format("  cursor %d ms, set-based %d ms, speedup %.1fx",
+					cursor, set, cursor / (double) Math.max(set, 1)));
+
+			System.out.println("Cleaning teams, " + teams + " generated:");
+			cursor = timeTeamClean(con, teams, "clean");
+			set = timeTeamClean(con, teams, "cleanset");
+			System.out.println(String.format("  cursor %d ms, set-based %d ms, speedup %.1fx",
+					cursor, set, cursor / (double) Math.max(set, 1)));
+
+			System.out.println("Incremental season cleaning of " + FRESH_YEARS * FRESH_LEAGUES
+					+ " new seasons as history grows:");
+			ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, 1);
+			try {
+				new IncrementalCleaner(pool).setup();
+				for (int history = seasons / 10; history <= seasons; history += seasons * 9 / 20) {
+					timeIncrementalClean(con, pool, history);
+				}
+			} finally {
+				pool.close();
+			}
+		} finally {
+			removeData(con);
+			con.close();
+		}
+	}
+
+	/**
+	 * Generates the seasons and times one call of the procedure on 'season'.
+	 * @return Elapsed milliseconds of the call.
+	 */
+	private static long timeSeasonClean(Connection con, int seasons, String procedure) throws SQLException {
+		removeData(con);
+		generateSeasons(con, seasons);
+		int before = countBenchRows(con, "season");
+
+		long elapsed = callProcedure(con, procedure, "season");
+
+		System.out.println("  " + procedure + ": deleted " + (before - countBenchRows(con, "season"))
+				+ " of " + before + " seasons in " + elapsed + " ms");
+		return elapsed;
+	}
+
+	/**
+	 * Generates the teams and rosters and times one call of the procedure on 'team'.
+	 * @return Elapsed milliseconds of the call.
+	 */
+	private static long timeTeamClean(Connection con, int teams, String procedure) throws SQLException {
+		removeData(con);
+		generateRosters(con, teams);
+		int before = countBenchRows(con, "team");
+
+		long elapsed = callProcedure(con, procedure, "team");
+
+		System.out.println("  " + procedure + ": deleted " + (before - countBenchRows(con, "team"))
+				+ " of " + before + " teams in " + elapsed + " ms");
+		return elapsed;
+	}
+
+	/**
+	 * Generates the history and catches up on it, then adds the same number of
+	 * new seasons and times the incremental run that picks them up.
+	 */
+	private static void timeIncrementalClean(Connection con, ConnectionPool pool, int history)
+			throws SQLException {
+		removeData(con);
+		generateSeasons(con, history);
+		IncrementalCleaner cleaner = new IncrementalCleaner(pool);
+		cleaner.reset();
+		long start = System.nanoTime();
+		cleaner.clean(java.sql.Date.valueOf("2000-01-01"));
+		long catchUp = (System.nanoTime() - start) / 1000000;
+
+		generateFreshSeasons(con);
+		start = System.nanoTime();
+		int deleted = cleaner.clean(java.sql.Date.valueOf("2001-01-01"));
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println(String.format("  history %7d seasons: catch-up %6d ms, "
+				+ "incremental run %4d ms (%d deleted)", history, catchUp, elapsed, deleted));
+	}
+
+	/**
+	 * Calls the procedure with the given option.
+	 * @return Elapsed milliseconds of the call.
+	 */
+	private static long callProcedure(Connection con, String procedure, String option) throws SQLException {
+		long start = System.nanoTime();
+		Statement stmt = con.createStatement();
+		try {
+			stmt.execute("call " + procedure + "('" + option + "')");
+		} finally {
+			stmt.close();
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Generates leagues with a minimum of MIN_TEAMS teams, seasons whose
+	 * deadlines have passed, and between zero and seven teams per season.
+	 */
+	private static void generateSeasons(Connection con, int seasons) throws SQLException {
+		Random random = new Random(SEED);
+		int leagues = (seasons + YEARS - 1) / YEARS;
+		con.setAutoCommit(false);
+		PreparedStatement league = con.prepareStatement("insert into League values (?, ?, ?, ?, ?)");
+		PreparedStatement season = con.prepareStatement("insert into Season values (?, ?, ?, ?, ?)");
+		PreparedStatement team = con.prepareStatement("insert into Team values (?, ?, ?, ?)");
+		try {
+			int pending = 0;
+			int created = 0;
+			for (int l = 0; l < leagues; l++) {
+				String sport = SPORT_PREFIX + (l / LEVELS.length);
+				String level = LEVELS[l % LEVELS.length];
+				league.setString(1, sport);
+				league.setString(2, level);
+				league.setInt(3, 5);
+				league.setInt(4, 15);
+				league.setInt(5, MIN_TEAMS);
+				league.executeUpdate();
+
+				for (int y = 0; y < YEARS && created < seasons; y++, created++) {
+					int year = 1800 + y;
+					season.setInt(1, year);
+					season.setString(2, sport);
+					season.setString(3, level);
+					season.setDate(4, java.sql.Date.valueOf(year + "-09-01"));
+					season.setInt(5, 16);
+					season.addBatch();
+
+					int teams = random.nextInt(8);
+					for (int t = 0; t < teams; t++) {
+						team.setString(1, "Team " + t);
+						team.setInt(2, year);
+						team.setString(3, sport);
+						team.setString(4, level);
+						team.addBatch();
+					}
+					pending += 1 + teams;
+					if (pending >= BATCH_SIZE) {
+						season.executeBatch();
+						team.executeBatch();
+						con.commit();
+						pending = 0;
+					}
+				}
+			}
+			season.executeBatch();
+			team.executeBatch();
+			con.commit();
+		} finally {
+			league.close();
+			season.close();
+			team.close();
+			con.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Adds seasons for the years after the generated history to the first
+	 * leagues, all with a deadline in the year 2000, and up to seven teams each.
+	 */
+	private static void generateFreshSeasons(Connection con) throws SQLException {
+		Random random = new Random(SEED);
+		con.setAutoCommit(false);
+		PreparedStatement season = con.prepareStatement("insert into Season values (?, ?, ?, ?, ?)");
+		PreparedStatement team = con.prepareStatement("insert into Team values (?, ?, ?, ?)");
+		try {
+			for (int l = 0; l < FRESH_LEAGUES; l++) {
+				String sport = SPORT_PREFIX + (l / LEVELS.length);
+				String level = LEVELS[l % LEVELS.length];
+				for (int y = 0; y < FRESH_YEARS; y++) {
+					int year = 1800 + YEARS + y;
+					season.setInt(1, year);
+					season.setString(2, sport);
+					season.setString(3, level);
+					season.setDate(4, java.sql.Date.valueOf("2000-06-01"));
+					season.setInt(5, 16);
+					season.addBatch();
+
+					int teams = random.nextInt(8);
+					for (int t = 0; t < teams; t++) {
+						team.setString(1, "Team " + t);
+						team.setInt(2, year);
+						team.setString(3, sport);
+						team.setString(4, level);
+						team.addBatch();
+					}
+				}
+			}
+			season.executeBatch();
+			team.executeBatch();
+			con.commit();
+		} finally {
+			season.close();
+			team.close();
+			con.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Generates leagues with a random minimum number of players, a fixed number
+	 * of teams per season, and between zero and MAX_ROSTER players per team.
+	 * Players are reused across seasons but never twice in the same season, so
+	 * the oneTeam trigger is respected.
+	 */
+	private static void generateRosters(Connection con, int teams) throws SQLException {
+		Random random = new Random(SEED);
+		int seasons = (teams + TEAMS_PER_SEASON - 1) / TEAMS_PER_SEASON;
+		int leagues = (seasons + YEARS - 1) / YEARS;
+		con.setAutoCommit(false);
+		PreparedStatement player = con.prepareStatement("insert into Player values (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		PreparedStatement league = con.prepareStatement("insert into League values (?, ?, ?, ?, ?)");
+		PreparedStatement season = con.prepareStatement("insert into Season values (?, ?, ?, ?, ?)");
+		PreparedStatement team = con.prepareStatement("insert into Team values (?, ?, ?, ?)");
+		PreparedStatement playsFor = con.prepareStatement("insert into PlaysFor values (?, ?, ?, ?, ?)");
+		try {
+			java.sql.Date created = java.sql.Date.valueOf("2013-01-01");
+			for (int p = 0; p < PLAYERS; p++) {
+				player.setInt(1, FIRST_PID + p);
+				player.setString(2, p % 2 == 0 ? "m" : "f");
+				player.setString(3, "Bench");
+				player.setString(4, "Player" + p);
+				player.setString(5, p + " Benchmark Street");
+				player.setString(6, "5145550000");
+				player.setString(7, "player" + p + "@bench.ca");
+				player.setDate(8, java.sql.Date.valueOf("1990-01-01"));
+				player.setDate(9, created);
+				player.addBatch();
+			}
+			player.executeBatch();
+			con.commit();
+
+			int pending = 0;
+			int createdTeams = 0;
+			for (int l = 0; l < leagues && createdTeams < teams; l++) {
+				String sport = SPORT_PREFIX + (l / LEVELS.length);
+				String level = LEVELS[l % LEVELS.length];
+				league.setString(1, sport);
+				league.setString(2, level);
+				league.setInt(3, 5 + random.nextInt(5));
+				league.setInt(4, 20);
+				league.setInt(5, 4);
+				league.executeUpdate();
+
+				for (int y = 0; y < YEARS && createdTeams < teams; y++) {
+					int year = 1800 + y;
+					season.setInt(1, year);
+					season.setString(2, sport);
+					season.setString(3, level);
+					season.setDate(4, java.sql.Date.valueOf(year + "-09-01"));
+					season.setInt(5, TEAMS_PER_SEASON);
+					season.executeUpdate();
+
+					for (int t = 0; t < TEAMS_PER_SEASON && createdTeams < teams; t++, createdTeams++) {
+						String name = "Team " + t;
+						team.setString(1, name);
+						team.setInt(2, year);
+						team.setString(3, sport);
+						team.setString(4, level);
+						team.addBatch();
+
+						int roster = random.nextInt(MAX_ROSTER + 1);
+						for (int p = 0; p < roster; p++) {
+							playsFor.setInt(1, FIRST_PID + t * MAX_ROSTER + p);
+							playsFor.setString(2, name);
+							playsFor.setInt(3, year);
+							playsFor.setString(4, sport);
+							playsFor.setString(5, level);
+							playsFor.addBatch();
+						}
+						pending += 1 + roster;
+					}
+					if (pending >= BATCH_SIZE) {
+						team.executeBatch();
+						playsFor.executeBatch();
+						con.commit();
+						pending = 0;
+					}
+				}
+			}
+			team.executeBatch();
+			playsFor.executeBatch();
+			con.commit();
+		} finally {
+			player.close();
+			league.close();
+			season.close();
+			team.close();
+			playsFor.close();
+			con.setAutoCommit(true);
+		}
+	}
+
+	private static int countBenchRows(Connection con, String table) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement("select count(*) from " + table + " where sport like ?");
+		try {
+			stmt.setString(1, SPORT_PREFIX + "%");
+			ResultSet rs = stmt.executeQuery();
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Removes every generated league, which cascades to the seasons, teams and
+	 * rosters, and then the generated players.
+	 */
+	private static void removeData(Connection con) throws SQLException {
+		PreparedStatement stmt = con.prepareStatement("delete from League where sport like ?");
+		try {
+			stmt.setString(1, SPORT_PREFIX + "%");
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+		stmt = con.prepareStatement("delete from Player where pid between ? and ?");
+		try {
+			stmt.setInt(1, FIRST_PID);
+			stmt.setInt(2, FIRST_PID + PLAYERS - 1);
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Creates a procedure, ignoring the error if it already exists.
+	 */
+	private static void createProcedure(Connection con, String ddl) {
+		try {
+			Statement stmt = con.createStatement();
+			try {
+				stmt.execute(ddl);
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			// Already created.
+		}
+	}
+}
@@ -1,4 +1,3 @@
-import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -25,8 +24,144 @@ public class CleanDatabase {
 	private String password;
 	// URL at which the database can be accessed.
 	private String dburl;
-	// The connection which establishes queries.
-	private static Connection con;
+	// Pool from which every statement borrows its connection.
+	private static ConnectionPool pool;
+	// Number of connections the pool keeps open and the most it will open,
+	// enough for one parallel cleaning worker per processor.
+	private static final int POOL_MIN_SIZE = 1;
+	private static final int POOL_MAX_SIZE = Math.max(4, Runtime.getRuntime()
+			.availableProcessors());
+
+	/**
+	 * The ways in which the cleaning can be run.
+	 */
+	enum CleanMode {
+		CURSOR("cursor"), SET_BASED("set-based"), CHUNKED("chunked"), INCREMENTAL(
+				"incremental"), PARALLEL("parallel");
+
+		private final String label;
+
+		private CleanMode(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	// Implementation used when cleaning teams or seasons.
+	private CleanMode mode = CleanMode.SET_BASED;
+	// Number of rows deleted per transaction in chunked mode.
+	private int chunkSize = 500;
+
+	/**
+	 * Condition on season s which holds for seasons whose registration deadline
+	 * has passed with fewer teams than the minimum of their league.
+	 */
+	static final String EXPIRED_SEASON_CONDITION = "s.regdeadline < current_date "
+			+ "and (s.syear, s.sport, s.llevel) not in "
+			+ "(select t.syear, t.sport, t.llevel "
+			+ "from team t join league l on l.sport = t.sport and l.llevel = t.llevel "
+			+ "group by t.syear, t.sport, t.llevel, l.minteams "
+			+ "having count(*) >= l.minteams)";
+
+	/**
+	 * Condition on season s which holds for the seasons the cursor procedure
+	 * deletes: the registration deadline has passed with fewer than 4 teams,
+	 * whatever the minimum of their league.
+	 */
+	static final String CURSOR_EXPIRED_SEASON_CONDITION = "s.regdeadline < current_date "
+			+ "and (s.syear, s.sport, s.llevel) not in "
+			+ "(select t.syear, t.sport, t.llevel from team t "
+			+ "group by t.syear, t.sport, t.llevel "
+			+ "having count(*) >= 4)";
+
+	/**
+	 * Condition on team t which holds for teams with fewer players than the
+	 * minimum of their league.
+	 */
+	static final String UNDERSTAFFED_TEAM_CONDITION = "(t.name, t.syear, t.sport, t.llevel) not in "
+			+ "(select r.name, r.syear, r.sport, r.llevel "
+			+ "from (select p.name, p.syear, p.sport, p.llevel, count(*) as players "
+			+ "from playsfor p group by p.name, p.syear, p.sport, p.llevel) r "
+			+ "join league l on l.sport = r.sport and l.llevel = r.llevel "
+			+ "where r.players >= l.minplayers)";
+
+	/**
+	 * The original procedure, which walks the season or team table row by row
+	 * with a cursor and checks each row against the minimum.
+	 */
+	static final String CURSOR_PROCEDURE = "create procedure clean (in coption varchar(20)) "
+			+ "language sql "
+			+ "begin  "
+			+ "declare syear int;  "
+			+ "declare sport varchar(30); "
+			+ "declare llevel varchar(3); "
+			+ "declare regdeadline date; "
+			+ "declare counter int; "
+			+ "declare maximum int; "
+			+ "declare name varchar(30); "
+			+ "declare thisSeason cursor for "
+			+ "select syear, sport, llevel, regdeadline from season; "
+			+ "declare thisTeam cursor for "
+			+ "select name, syear, sport, llevel from team; "
+			+ "if coption = 'season' then "
+			+ "select count(*) into maximum from season; "
+			+ "set counter = 0; "
+			+ "open thisSeason; "
+			+ "fetch_loop1: "
+			+ "loop "
+			+ "if counter = maximum then "
+			+ "leave fetch_loop1; "
+			+ "end if; "
+			+ "fetch thisSeason into syear, sport, llevel, regdeadline; "
+			+ "if regdeadline < current_date then "
+			+ "if ((syear, sport, llevel) not in (select t.syear, t.sport, t.llevel "
+			+ "from team t group by t.syear, t.sport, t.llevel "
+			+ "having count(*) >= 4)) then  "
+			+ "delete from season where current of thisSeason; "
+			+ "end if; "
+			+ "end if; "
+			+ "set counter = counter + 1; "
+			+ "end loop; "
+			+ "close thisSeason; "
+			+ "else if coption = 'team' then "
+			+ "select count(*) into maximum from team; "
+			+ "set counter = 0; "
+			+ "open thisTeam; "
+			+ "fetch_loop2: "
+			+ "loop "
+			+ "if counter = maximum then "
+			+ "leave fetch_loop2; "
+			+ "end if; "
+			+ "fetch thisTeam into name, syear, sport, llevel; "
+			+ "if ((name, syear, sport, llevel) not in (select p.name, p.syear, p.sport, p.llevel "
+			+ "from playsfor p group by p.name, p.syear, p.sport, p.llevel "
+			+ "having count (*) >= (select min(minplayers) from league "
+			+ "where league.sport = p.sport and league.llevel = p.llevel))) then "
+			+ "delete from team where current of thisTeam; "
+			+ "end if; " + "set counter = counter + 1; " + "end loop; "
+			+ "close thisTeam; " + "end if; " + "end if; " + "end";
+
+	/**
+	 * Set-based version of the procedure. The number of teams in every season
+	 * is counted once, compared with the minimum of the season's league, and
+	 * all expired seasons which fall short are deleted in a single statement.
+	 * Teams are handled the same way: roster sizes are counted once from
+	 * playsfor, joined against the league minimum, and every team that is not
+	 * among the fully staffed ones is deleted in one pass.
+	 */
+	static final String SET_PROCEDURE = "create procedure cleanset (in coption varchar(20)) "
+			+ "language sql "
+			+ "begin "
+			+ "if coption = 'season' then "
+			+ "delete from season s where " + EXPIRED_SEASON_CONDITION + "; "
+			+ "elseif coption = 'team' then "
+			+ "delete from team t where " + UNDERSTAFFED_TEAM_CONDITION + "; "
+			+ "end if; "
+			+ "end";
 
 	/**
 	 * Constructor for the CleanDatabase
@@ -46,7 +181,7 @@ public class CleanDatabase {
 		// Given the input from the user attempt to establish the connection
 		// otherwise catch the error.
 		try {
-			con = connectDatabase();
+			pool = connectDatabase();
 		} catch (SQLException sqle) {
 			System.err.println("Could not establish connection to " + dburl
 					+ ". Please check login credentials.");
@@ -56,13 +191,25 @@ public class CleanDatabase {
 	}
 
 	/**
-	 * Establishes the connection to the DB2 database using the user inputs.
+	 * Constructor for a CleanDatabase which shares an existing pool, for
+	 * example with the front desk application.
+	 * 
+	 * @param sharedPool
+	 *            - Pool to borrow connections from.
+	 */
+	public CleanDatabase(ConnectionPool sharedPool) {
+		pool = sharedPool;
+	}
+
+	/**
+	 * Establishes the pool of connections to the DB2 database using the user
+	 * inputs.
 	 * 
-	 * @return Connection to the database which if successful will be used as
-	 *         the global variable con
+	 * @return Pool of connections to the database which if successful will be
+	 *         used as the global variable pool
 	 * @throws SQLException
 	 */
-	private Connection connectDatabase() throws SQLException {
+	private ConnectionPool connectDatabase() throws SQLException {
 		/*
 		 * Register the driver. If you are on the Trottier labs, this should not
 		 * be a problem, otherwise, must VPN to SOCS
@@ -74,7 +221,8 @@ public class CleanDatabase {
 			System.out.println("Class not found");
 		}
 
-		return DriverManager.getConnection(dburl, username, password);
+		return new ConnectionPool(dburl, username, password, POOL_MIN_SIZE,
+				POOL_MAX_SIZE);
 
 	}
 
@@ -95,15 +243,25 @@ public class CleanDatabase {
 			System.out
 					.println("\nWelcome to JAM Sports and Rec. \nDatabase cleaning system");
 			System.out.println("===================================");
-			System.out.println("1 - Create procedure");
+			System.out.println("1 - Create procedures");
 			System.out.println("2 - Call procedure on TEAM");
 			System.out
 					.println("\tAll teams where there are fewer players than the minimum are delete. \n\tTo be run after the deadline.");
 			System.out.println("3 - Call procedure on SEASON");
+			if (mode != CleanMode.CURSOR) {
+				System.out
+						.println("\tCleans all seasons where the registration deadline \n\thas passed but there are still fewer teams registered than the league minimum.");
+			} else {
+				System.out
+						.println("\tCleans all seasons where the registration deadline \n\thas passed but there are still less than 4 teams registered.");
+			}
+			System.out.println("4 - Choose implementation (currently " + mode
+					+ ")");
+			System.out.println("5 - Preview cleaning");
 			System.out
-					.println("\tCleans all seasons where the registration deadline \n\thas passed but there are still less than 4 teams registered.");
-			System.out.println("4 - Drop Procedure");
-			System.out.println("5 - Exit Application");
+					.println("\tLists the seasons and teams that would be deleted \n\tand how many rows would cascade, without deleting.");
+			System.out.println("6 - Drop Procedures");
+			System.out.println("7 - Exit Application");
 			System.out.println("===================================");
 
 			/*
@@ -122,14 +280,9 @@ public class CleanDatabase {
 			}
 		}
 		// Now that we know that the user would like to quit, we close the
-		// connection and exit.
-		try {
-			con.close();
-		} catch (SQLException e) {
-			System.err
-					.println("Something went wrong with closing the connection. Were you connected to begin with?");
-			System.exit(-1);
-		}
+		// connections and exit.
+		System.out.println(pool.getStatistics());
+		pool.close();
 		System.out.println("Exiting Now. Thank you for using JAM cleaner.");
 		System.exit(0);
 	}
@@ -155,9 +308,15 @@ public class CleanDatabase {
 			callProcedure("season");
 			break;
 		case 4:
-			dropProcedure();
+			chooseMode();
 			break;
 		case 5:
+			previewClean();
+			break;
+		case 6:
+			dropProcedure();
+			break;
+		case 7:
 			return true;
 		default:
 			System.out.print("That was an incorrect selection. Exiting.");
@@ -168,16 +327,13 @@ public class CleanDatabase {
 	}
 
 	/**
-	 * Drops the procedure from the database. If the procedure is not intilized,
+	 * Drops the procedures from the database. If a procedure is not intilized,
 	 * exits with message.
 	 */
 	private void dropProcedure() {
-		Statement stmt = null;
 		// Try to drop procedure
 		try {
-			stmt = con.createStatement();
-			// Drop procedure and success message
-			stmt.execute("DROP PROCEDURE clean");
+			execute("DROP PROCEDURE clean");
 			System.out.println("Stored procedure was deleted.");
 		}
 		// Cannot drop the procedure so return a message and exit
@@ -185,9 +341,116 @@ public class CleanDatabase {
 			System.err
 					.println("The procedure was not initialized. Nothing to delete.");
 		}
+		try {
+			execute("DROP PROCEDURE cleanset");
+			System.out.println("Set-based stored procedure was deleted.");
+		} catch (SQLException ex) {
+			System.err
+					.println("The set-based procedure was not initialized. Nothing to delete.");
+		}
 
 	}
 
+	/**
+	 * Executes a single statement on a connection borrowed from the pool,
+	 * closing the statement and returning the connection afterwards.
+	 * 
+	 * @param sql
+	 *            - The statement to execute.
+	 * @throws SQLException
+	 */
+	private void execute(String sql) throws SQLException {
+		PooledConnection connection = pool.borrow();
+		try {
+			Statement stmt = connection.getConnection().createStatement();
+			try {
+				stmt.execute(sql);
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Shows what cleaning teams or seasons would delete, so the operator can
+	 * decide whether to go ahead before running the destructive procedure.
+	 */
+	private void previewClean() {
+		try {
+			new CleanPreview(pool, mode).print();
+		} catch (SQLException ex) {
+			System.err.println("Could not compute the preview: "
+					+ ex.getMessage());
+		}
+	}
+
+	/**
+	 * Asks the user which implementation should be used for cleaning, and for
+	 * the chunked implementation how many rows to delete per transaction.
+	 */
+	private void chooseMode() {
+		Scanner input = new Scanner(System.in);
+		System.out.println("1 - Cursor procedure (original)");
+		System.out.println("2 - Set-based procedure");
+		System.out.println("3 - Chunked deletes, committing between chunks");
+		System.out
+				.println("4 - Incremental, only seasons whose deadline passed since the last run");
+		System.out
+				.println("5 - Parallel, one league per worker with its own transaction");
+		System.out.print("Make your selection: ");
+		try {
+			int selection = input.nextInt();
+			if (selection < 1 || selection > CleanMode.values().length) {
+				System.out.println("That was an incorrect selection.");
+				return;
+			}
+			mode = CleanMode.values()[selection - 1];
+			if (mode == CleanMode.CHUNKED) {
+				System.out.print("Rows to delete per chunk [" + chunkSize
+						+ "]: ");
+				int size = input.nextInt();
+				if (size > 0) {
+					chunkSize = size;
+				}
+			}
+			if (mode == CleanMode.INCREMENTAL) {
+				setupIncremental(input);
+			}
+			System.out.println("Now using the " + mode + " implementation.");
+		} catch (InputMismatchException inputE) {
+			System.out.println("Please enter the selection as an integer.");
+		}
+	}
+
+	/**
+	 * Offers to create the watermark table and the indexes the incremental
+	 * implementation needs, showing the statements first. Nothing is created
+	 * unless the user agrees.
+	 * 
+	 * @param input
+	 *            - Scanner reading the user's answers.
+	 */
+	private void setupIncremental(Scanner input) {
+		System.out
+				.println("The incremental implementation needs the following table and indexes:");
+		for (String ddl : IncrementalCleaner.SETUP) {
+			System.out.println("\t" + ddl + ";");
+		}
+		System.out.print("Create the ones that do not exist yet? (y/n): ");
+		if (!input.next().trim().equalsIgnoreCase("y")) {
+			System.out
+					.println("Nothing was created. They must exist before seasons are cleaned incrementally.");
+			return;
+		}
+		try {
+			new IncrementalCleaner(pool).setup();
+		} catch (SQLException ex) {
+			System.err.println("Could not create them: " + ex.getMessage());
+		}
+	}
+
 	/**
 	 * Based on whether the user selected the 'team' or 'season' option, calls
 	 * the procedure to delete the appropriate records that are do not meet the
@@ -196,16 +459,49 @@ public class CleanDatabase {
 	 * Since we control that the only two options can be those specified in the
 	 * procedure, we can return error of not being able to call the procedure
 	 * based on the fact that it wasn't instantiated first.
+	 * 
+	 * The chunked, incremental and parallel implementations do not use a
+	 * procedure, the deletes are issued from here instead. Teams have no
+	 * deadline, so the incremental implementation cleans them with the
+	 * set-based procedure.
 	 */
 	private void callProcedure(String selection) {
-		Statement stmt = null;
+		if (mode == CleanMode.INCREMENTAL && selection.equals("season")) {
+			try {
+				new IncrementalCleaner(pool).clean();
+			} catch (SQLException ex) {
+				System.err.println("Incremental cleaning of seasons failed: "
+						+ ex.getMessage());
+			}
+			return;
+		}
+		if (mode == CleanMode.PARALLEL) {
+			try {
+				new ParallelCleaner(pool).clean(selection);
+			} catch (SQLException ex) {
+				System.err.println("Parallel cleaning of " + selection
+						+ " failed: " + ex.getMessage());
+			}
+			return;
+		}
+		if (mode == CleanMode.CHUNKED) {
+			try {
+				new ChunkedCleaner(pool, chunkSize).clean(selection);
+			} catch (SQLException ex) {
+				System.err.println("Chunked cleaning of " + selection
+						+ " stopped: " + ex.getMessage());
+			}
+			return;
+		}
+		String procedure = mode == CleanMode.CURSOR ? "clean" : "cleanset";
 		// Try to call the clean on either team or season
 		try {
-			stmt = con.createStatement();
 			// If successful, perform pruning and write success message.
-			stmt.execute("call clean('" + selection + "')");
-			System.out.println("Stored procedure called on " + selection
-					+ " successfully.");
+			long start = System.nanoTime();
+			execute("call " + procedure + "('" + selection + "')");
+			System.out.println("Stored procedure " + procedure + " called on "
+					+ selection + " successfully in "
+					+ (System.nanoTime() - start) / 1000000 + " ms.");
 			// Otherwise we return a message and quit to menu
 		} catch (SQLException ex) {
 			System.err
@@ -215,66 +511,14 @@ public class CleanDatabase {
 	}
 
 	/**
-	 * Creates the procedure in the database based on the SQL Stored Procedure.
-	 * If the action cannot be performed, the procedure may already be defined
-	 * with the same name in this database.
+	 * Creates the cursor and the set-based procedures in the database based on
+	 * the SQL Stored Procedure. If the action cannot be performed, the
+	 * procedure may already be defined with the same name in this database.
 	 */
 	private void createProcedure() {
-		Statement stmt = null;
 		try {
-			stmt = con.createStatement();
 			// Try to execute the initialization of the procedure
-			stmt.execute("create procedure clean (in coption varchar(20)) "
-					+ "language sql "
-					+ "begin  "
-					+ "declare syear int;  "
-					+ "declare sport varchar(30); "
-					+ "declare llevel varchar(3); "
-					+ "declare regdeadline date; "
-					+ "declare counter int; "
-					+ "declare maximum int; "
-					+ "declare name varchar(30); "
-					+ "declare thisSeason cursor for "
-					+ "select syear, sport, llevel, regdeadline from season; "
-					+ "declare thisTeam cursor for "
-					+ "select name, syear, sport, llevel from team; "
-					+ "if coption = 'season' then "
-					+ "select count(*) into maximum from season; "
-					+ "set counter = 0; "
-					+ "open thisSeason; "
-					+ "fetch_loop1: "
-					+ "loop "
-					+ "if counter = maximum then "
-					+ "leave fetch_loop1; "
-					+ "end if; "
-					+ "fetch thisSeason into syear, sport, llevel, regdeadline; "
-					+ "if regdeadline < current_date then "
-					+ "if ((syear, sport, llevel) not in (select t.syear, t.sport, t.llevel "
-					+ "from team t group by t.syear, t.sport, t.llevel "
-					+ "having count(*) >= 4)) then  "
-					+ "delete from season where current of thisSeason; "
-					+ "end if; "
-					+ "end if; "
-					+ "set counter = counter + 1; "
-					+ "end loop; "
-					+ "close thisSeason; "
-					+ "else if coption = 'team' then "
-					+ "select count(*) into maximum from team; "
-					+ "set counter = 0; "
-					+ "open thisTeam; "
-					+ "fetch_loop2: "
-					+ "loop "
-					+ "if counter = maximum then "
-					+ "leave fetch_loop2; "
-					+ "end if; "
-					+ "fetch thisTeam into name, syear, sport, llevel; "
-					+ "if ((name, syear, sport, llevel) not in (select p.name, p.syear, p.sport, p.llevel "
-					+ "from playsfor p group by p.name, p.syear, p.sport, p.llevel "
-					+ "having count (*) >= (select min(minplayers) from league "
-					+ "where league.sport = p.sport and league.llevel = p.llevel))) then "
-					+ "delete from team where current of thisTeam; "
-					+ "end if; " + "set counter = counter + 1; " + "end loop; "
-					+ "close thisTeam; " + "end if; " + "end if; " + "end");
+			execute(CURSOR_PROCEDURE);
 			// Success message
 			System.out.println("Stored procedure created successfully.");
 		} catch (SQLException ex) {
@@ -282,6 +526,14 @@ public class CleanDatabase {
 			System.err
 					.println("The procedure already exists. You can run the commands.");
 		}
+		try {
+			execute(SET_PROCEDURE);
+			System.out
+					.println("Set-based stored procedure created successfully.");
+		} catch (SQLException ex) {
+			System.err
+					.println("The set-based procedure already exists. You can run the commands.");
+		}
 	}
 
 	/**
@@ -0,0 +1,121 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Dry run of the cleaning. Lists the seasons and teams that cleaning would
+ * delete right now with the chosen implementation, together with the number
+ * of rows the delete would cascade to in each child table, without deleting
+ * anything.
+ *
+ * Everything is computed by one aggregate query, so the preview costs a single
+ * round trip however many seasons and teams qualify.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class CleanPreview {
+
+	// Number of seasons and of teams listed individually, the rest are only counted.
+	private static final int LISTED = 50;
+
+	// For each qualifying season and team, the rows its delete would cascade to.
+	// Deleting a season also deletes its teams, so those columns count the rows
+	// below all of the season's teams.
+	private static String previewSql(String seasonCondition) {
+		return "select 'season' as kind, s.syear, s.sport, s.llevel, "
+				+ "cast(null as varchar(30)) as name, "
+				+ "(select count(*) from team t where t.syear = s.syear and t.sport = s.sport and t.llevel = s.llevel) as teams, "
+				+ "(select count(*) from playsfor p where p.syear = s.syear and p.sport = s.sport and p.llevel = s.llevel) as players, "
+				+ "(select count(*) from hasteams h where (h.syear1 = s.syear and h.sport1 = s.sport and h.llevel1 = s.llevel) "
+				+ "or (h.syear2 = s.syear and h.sport2 = s.sport and h.llevel2 = s.llevel)) as games, "
+				+ "(select count(*) from registers r where r.syear = s.syear and r.sport = s.sport and r.llevel = s.llevel) as registrations, "
+				+ "(select count(*) from creates c where c.syear = s.syear and c.sport = s.sport and c.llevel = s.llevel) as creators "
+				+ "from season s where " + seasonCondition + " "
+				+ "union all "
+				+ "select 'team' as kind, t.syear, t.sport, t.llevel, t.name, 0 as teams, "
+				+ "(select count(*) from playsfor p where p.name = t.name and p.syear = t.syear and p.sport = t.sport and p.llevel = t.llevel) as players, "
+				+ "(select count(*) from hasteams h where (h.name1 = t.name and h.syear1 = t.syear and h.sport1 = t.sport and h.llevel1 = t.llevel) "
+				+ "or (h.name2 = t.name and h.syear2 = t.syear and h.sport2 = t.sport and h.llevel2 = t.llevel)) as games, "
+				+ "(select count(*) from registers r where r.name = t.name and r.syear = t.syear and r.sport = t.sport and r.llevel = t.llevel) as registrations, "
+				+ "0 as creators "
+				+ "from team t where " + CleanDatabase.UNDERSTAFFED_TEAM_CONDITION + " "
+				+ "order by kind, sport, llevel, syear, name";
+	}
+
+	// Pool from which the connection is borrowed.
+	private final ConnectionPool pool;
+	// Implementation whose deletes are previewed.
+	private final CleanDatabase.CleanMode mode;
+
+	/**
+	 * @param pool - Pool to borrow the connection from.
+	 * @param mode - Implementation the cleaning will be run with. The cursor
+	 *        procedure keeps seasons with 4 teams, the others compare with the
+	 *        minimum of the league.
+	 */
+	public CleanPreview(ConnectionPool pool, CleanDatabase.CleanMode mode) {
+		this.pool = pool;
+		this.mode = mode;
+	}
+
+	/**
+	 * Prints the seasons and teams that would be deleted and the totals that
+	 * would cascade to each child table.
+	 * @throws SQLException
+	 */
+	public void print() throws SQLException {
+		// Totals per kind: count, teams, players, games, registrations, creators.
+		long[] seasonTotals = new long[6];
+		long[] teamTotals = new long[6];
+
+		PooledConnection connection = pool.borrow();
+		try {
+			long start = System.nanoTime();
+			System.out.println("Preview of the " + mode + " implementation.");
+			ResultSet rs = connection.prepare(previewSql(mode == CleanDatabase.CleanMode.CURSOR
+					? CleanDatabase.CURSOR_EXPIRED_SEASON_CONDITION : CleanDatabase.EXPIRED_SEASON_CONDITION))
+					.executeQuery();
+			try {
+				String current = "";
+				while (rs.next()) {
+					String kind = rs.getString(1);
+					boolean season = kind.equals("season");
+					long[] totals = season ? seasonTotals : teamTotals;
+					if (!kind.equals(current)) {
+						current = kind;
+						System.out.println(season ? "Seasons that would be deleted:" : "Teams that would be deleted:");
+						System.out.println(String.format("  %-30s %-4s %5s %-30s %6s %8s %6s %6s %8s", "Sport",
+								"Lvl", "Year", "Team", "Teams", "Players", "Games", "Regs", "Creates"));
+					}
+					totals[0]++;
+					for (int i = 1; i < totals.length; i++) {
+						totals[i] += rs.getLong(5 + i);
+					}
+					if (totals[0] <= LISTED) {
+						System.out.println(String.format("  %-30s %-4s %5d %-30s %6d %8d %6d %6d %8d",
+								rs.getString(3), rs.getString(4).trim(), rs.getInt(2),
+								season ? "" : rs.getString(5), rs.getLong(6), rs.getLong(7),
+								rs.getLong(8), rs.getLong(9), rs.getLong(10)));
+					} else if (totals[0] == LISTED + 1) {
+						System.out.println("  ...");
+					}
+				}
+			} finally {
+				rs.close();
+			}
+
+			System.out.println("===================================");
+			printTotals("Cleaning seasons", "seasons", seasonTotals);
+			printTotals("Cleaning teams", "teams", teamTotals);
+			System.out.println("Preview computed in " + (System.nanoTime() - start) / 1000000
+					+ " ms. Nothing was deleted.");
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static void printTotals(String title, String kind, long[] totals) {
+		System.out.println(title + " would delete " + totals[0] + " " + kind + ", cascading to "
+				+ totals[1] + " Team, " + totals[2] + " PlaysFor, " + totals[3] + " HasTeams, "
+				+ totals[4] + " Registers and " + totals[5] + " Creates rows.");
+	}
+}
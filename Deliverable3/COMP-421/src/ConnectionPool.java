@@ -0,0 +1,420 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Pool of reusable connections to the JAM database. A single pool can be shared
+ * by several front desk sessions (DatabaseUI) and cleaning jobs (CleanDatabase)
+ * so that they no longer each depend on one static connection.
+ *
+ * The pool keeps between a minimum and a maximum number of physical connections
+ * open. Connections are validated before they are handed out, connections that
+ * sit idle for too long are closed, and connections that are borrowed for longer
+ * than the leak threshold are reported together with the place they were
+ * borrowed from.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ConnectionPool {
+
+	// Query used to check that a connection is still alive before lending it.
+	// SYSIBM.SYSDUMMY1 exists on DB2 as well as on Derby for local testing.
+	public static final String DEFAULT_VALIDATION_QUERY = "SELECT 1 FROM SYSIBM.SYSDUMMY1";
+
+	// Database which the connections are made to.
+	private final String dburl;
+	private final String username;
+	private final String password;
+
+	// Bounds on the number of physical connections.
+	private final int minSize;
+	private final int maxSize;
+
+	// Time a connection can stay idle before it is closed (ms).
+	private long idleTimeout = 5 * 60 * 1000;
+	// Time a connection can be borrowed before it is reported as leaked (ms).
+	private long leakThreshold = 60 * 1000;
+	// Time a caller waits for a free connection before giving up (ms).
+	private long borrowTimeout = 30 * 1000;
+	// Query used to validate a connection on borrow.
+	private String validationQuery = DEFAULT_VALIDATION_QUERY;
+	// Number of prepared statements cached on each connection.
+	private int statementCacheSize = 32;
+
+	// Idle connections, most recently used first.
+	private final LinkedList<PhysicalConnection> idle = new LinkedList<PhysicalConnection>();
+	// Connections currently lent out, by the handle of their borrow, with the point at which they were borrowed.
+	private final Map<PooledConnection, Throwable> borrowed = new HashMap<PooledConnection, Throwable>();
+	// Number of physical connections open or being opened.
+	private int totalCount = 0;
+	private boolean closed = false;
+	// Background task that evicts idle connections and looks for leaks.
+	private final Timer housekeeper;
+
+	// Statistics on the usage of the pool.
+	private long borrowCount = 0;
+	private long totalWaitNanos = 0;
+	private long maxWaitNanos = 0;
+	private long timeoutCount = 0;
+	private long invalidCount = 0;
+	private long evictedCount = 0;
+	private long leakCount = 0;
+	private int peakActive = 0;
+	// Statement cache lookups of connections that have since been closed.
+	private long closedStatementHits = 0;
+	private long closedStatementMisses = 0;
+
+	/**
+	 * Creates the pool and opens the minimum number of connections right away so
+	 * that bad credentials are reported immediately.
+	 * @param url - Database URL.
+	 * @param uname - Username to connect with.
+	 * @param pword - Password to connect with.
+	 * @param min - Number of connections kept open even when idle.
+	 * @param max - Largest number of connections open at once.
+	 * @throws SQLException if the initial connections cannot be opened.
+	 */
+	public ConnectionPool(String url, String uname, String pword, int min, int max) throws SQLException {
+		if (min < 0 || max < 1 || min > max) {
+			throw new IllegalArgumentException("Invalid pool bounds: min=" + min + ", max=" + max);
+		}
+		dburl = url;
+		username = uname;
+		password = pword;
+		minSize = min;
+		maxSize = max;
+
+		try {
+			for (int i = 0; i < minSize; i++) {
+				idle.add(new PhysicalConnection(openConnection(), statementCacheSize));
+				totalCount++;
+			}
+		} catch (SQLException e) {
+			closeAll(idle);
+			throw e;
+		}
+
+		housekeeper = new Timer("ConnectionPool housekeeper", true);
+		housekeeper.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				evictIdle();
+				detectLeaks();
+			}
+		}, 10 * 1000, 10 * 1000);
+	}
+
+	/**
+	 * Lends a connection from the pool, opening a new one if none are idle and the
+	 * maximum has not been reached. Otherwise waits until one is released.
+	 * The connection must be given back with PooledConnection.close().
+	 * @return A validated connection, in a PooledConnection of its own for this borrow.
+	 * @throws SQLException if no connection became available in time or one could not be opened.
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + borrowTimeout * 1000000L;
+
+		while (true) {
+			PhysicalConnection candidate = null;
+
+			synchronized (this) {
+				while (!closed && idle.isEmpty() && totalCount >= maxSize) {
+					long remaining = (deadline - System.nanoTime()) / 1000000L;
+					if (remaining <= 0) {
+						timeoutCount++;
+						throw new SQLException("Timed out waiting for a database connection after "
+								+ borrowTimeout + " ms.", "08001");
+					}
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection.", "08001");
+					}
+				}
+				if (closed) {
+					throw new SQLException("The connection pool has been closed.", "08003");
+				}
+				if (!idle.isEmpty()) {
+					candidate = idle.removeFirst();
+				} else {
+					// Reserve the slot now, open the connection outside the lock.
+					totalCount++;
+				}
+			}
+
+			if (candidate == null) {
+				try {
+					candidate = new PhysicalConnection(openConnection(), statementCacheSize);
+				} catch (SQLException e) {
+					synchronized (this) {
+						totalCount--;
+						notifyAll();
+					}
+					throw e;
+				}
+			} else if (!isValid(candidate)) {
+				synchronized (this) {
+					invalidCount++;
+				}
+				discard(candidate);
+				continue;
+			}
+
+			long waited = System.nanoTime() - start;
+			PooledConnection handle = new PooledConnection(this, candidate);
+			synchronized (this) {
+				borrowed.put(handle, new Throwable("Connection borrowed by " + Thread.currentThread().getName()));
+				borrowCount++;
+				totalWaitNanos += waited;
+				if (waited > maxWaitNanos) {
+					maxWaitNanos = waited;
+				}
+				if (borrowed.size() > peakActive) {
+					peakActive = borrowed.size();
+				}
+			}
+			return handle;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool. Called from PooledConnection.close(),
+	 * once for each borrow.
+	 * Outstanding work is rolled back and auto-commit is restored so the next
+	 * borrower always gets a connection in the same state.
+	 * @param handle - The connection being returned, closed by its first call to close().
+	 */
+	void release(PooledConnection handle) {
+		synchronized (this) {
+			if (borrowed.remove(handle) == null) {
+				return;
+			}
+		}
+		PhysicalConnection pc = handle.getPhysical();
+		boolean healthy = pc.reset();
+		boolean keep;
+		synchronized (this) {
+			keep = healthy && !closed;
+			if (keep) {
+				idle.addFirst(pc);
+				notifyAll();
+			}
+		}
+		if (!keep) {
+			discard(pc);
+		}
+	}
+
+	/**
+	 * Checks that a connection still responds before lending it out.
+	 */
+	private boolean isValid(PhysicalConnection pc) {
+		try {
+			return pc.validate(validationQuery);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes a physical connection and frees its slot in the pool.
+	 */
+	private void discard(PhysicalConnection pc) {
+		pc.closePhysical();
+		synchronized (this) {
+			closedStatementHits += pc.getStatementCache().getHits();
+			closedStatementMisses += pc.getStatementCache().getMisses();
+			totalCount--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Opens a new physical connection to the database.
+	 */
+	private Connection openConnection() throws SQLException {
+		return DriverManager.getConnection(dburl, username, password);
+	}
+
+	/**
+	 * Closes connections which have been idle longer than the idle timeout, never
+	 * going below the minimum size.
+	 */
+	private void evictIdle() {
+		List<PhysicalConnection> expired = new ArrayList<PhysicalConnection>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Iterator<PhysicalConnection> it = idle.descendingIterator();
+			while (it.hasNext() && totalCount - expired.size() > minSize) {
+				PhysicalConnection pc = it.next();
+				if (now - pc.getLastUsed() > idleTimeout) {
+					it.remove();
+					expired.add(pc);
+				}
+			}
+			evictedCount += expired.size();
+		}
+		for (PhysicalConnection pc : expired) {
+			discard(pc);
+		}
+	}
+
+	/**
+	 * Reports connections that have been borrowed for longer than the leak threshold.
+	 * Each connection is reported once per borrow.
+	 */
+	private void detectLeaks() {
+		List<Throwable> leaks = new ArrayList<Throwable>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			for (Map.Entry<PooledConnection, Throwable> entry : borrowed.entrySet()) {
+				PooledConnection pc = entry.getKey();
+				if (!pc.isLeakReported() && now - pc.getBorrowedAt() > leakThreshold) {
+					pc.setLeakReported();
+					leakCount++;
+					leaks.add(entry.getValue());
+				}
+			}
+		}
+		for (Throwable origin : leaks) {
+			System.err.println("Possible connection leak: a connection has been borrowed for more than "
+					+ leakThreshold + " ms.");
+			origin.printStackTrace();
+		}
+	}
+
+	/**
+	 * Closes every idle connection and stops lending new ones. Connections still
+	 * borrowed are closed as they are returned.
+	 */
+	public void close() {
+		List<PhysicalConnection> toClose;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			toClose = new ArrayList<PhysicalConnection>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		housekeeper.cancel();
+		for (PhysicalConnection pc : toClose) {
+			discard(pc);
+		}
+	}
+
+	private static void closeAll(List<PhysicalConnection> connections) {
+		for (PhysicalConnection pc : connections) {
+			pc.closePhysical();
+		}
+		connections.clear();
+	}
+
+	public synchronized void setIdleTimeout(long millis) {
+		idleTimeout = millis;
+	}
+
+	public synchronized void setLeakThreshold(long millis) {
+		leakThreshold = millis;
+	}
+
+	public synchronized void setBorrowTimeout(long millis) {
+		borrowTimeout = millis;
+	}
+
+	public synchronized void setValidationQuery(String query) {
+		validationQuery = query;
+	}
+
+	/**
+	 * Sets the number of prepared statements cached per connection. Only applies
+	 * to connections opened afterwards.
+	 */
+	public synchronized void setStatementCacheSize(int size) {
+		statementCacheSize = size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Number of connections currently borrowed.
+	 */
+	public synchronized int getActiveCount() {
+		return borrowed.size();
+	}
+
+	/**
+	 * @return Number of open connections waiting to be borrowed.
+	 */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return Largest number of connections that were borrowed at the same time.
+	 */
+	public synchronized int getPeakActiveCount() {
+		return peakActive;
+	}
+
+	public synchronized long getBorrowCount() {
+		return borrowCount;
+	}
+
+	/**
+	 * @return Average time spent waiting in borrow() in milliseconds.
+	 */
+	public synchronized double getAverageWaitMillis() {
+		return borrowCount == 0 ? 0 : totalWaitNanos / (borrowCount * 1000000.0);
+	}
+
+	/**
+	 * @return Longest time spent waiting in borrow() in milliseconds.
+	 */
+	public synchronized double getMaxWaitMillis() {
+		return maxWaitNanos / 1000000.0;
+	}
+
+	/**
+	 * @return Fraction of prepared statement lookups served from the statement caches.
+	 */
+	public synchronized double getStatementCacheHitRate() {
+		long hits = closedStatementHits;
+		long misses = closedStatementMisses;
+		for (PhysicalConnection pc : idle) {
+			hits += pc.getStatementCache().getHits();
+			misses += pc.getStatementCache().getMisses();
+		}
+		for (PooledConnection handle : borrowed.keySet()) {
+			hits += handle.getPhysical().getStatementCache().getHits();
+			misses += handle.getPhysical().getStatementCache().getMisses();
+		}
+		return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+	}
+
+	/**
+	 * @return A one line summary of the pool usage.
+	 */
+	public synchronized String getStatistics() {
+		return String.format("Pool: %d active (peak %d), %d idle, %d open [%d-%d] | "
+				+ "%d borrows, wait avg %.3f ms max %.3f ms | "
+				+ "%d timeouts, %d invalid, %d evicted, %d leaks | statement cache hit rate %.1f%%",
+				borrowed.size(), peakActive, idle.size(), totalCount, minSize, maxSize,
+				borrowCount, getAverageWaitMillis(), getMaxWaitMillis(),
+				timeoutCount, invalidCount, evictedCount, leakCount,
+				getStatementCacheHitRate() * 100);
+	}
+}
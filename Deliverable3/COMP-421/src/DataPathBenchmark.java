@@ -0,0 +1,435 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times the data paths of the front desk and cleaning applications on
+ * generated data: the player lookup by each field, entering players, officials
+ * and coordinators, promoting a player to captain, changing a salary, moving
+ * and deleting a game, and both implementations of the clean procedure. Every
+ * case runs the statements of the application through FrontDeskOperations,
+ * using the same connection pool, and the number of statements each case
+ * sends to the database per run is printed.
+ *
+ * Usage: java DataPathBenchmark url username password [scale] [iterations] [output]
+ *
+ * The tables are created from the DDL of the second deliverable if they do not
+ * exist, without their check constraints for scales with more than
+ * LeagueDataGenerator.MAX_PLAYERS players, and filled by LeagueDataGenerator at
+ * the given scale. Each case is run a few times untimed and then timed for the
+ * given number of iterations. The results are printed and written to
+ * output.csv and output.json. Properties:
+ *   bench.ddl - DDL file, SchemaLoader.DEFAULT_DDL by default.
+ *   bench.warmup - Untimed runs of each case, 20 by default.
+ *   bench.cleanWarmup - Untimed runs of each clean procedure, 1 by default.
+ *   bench.cleanRuns - Timed runs of each clean procedure, 5 by default. Every
+ *                     run is on freshly generated leagues.
+ *   bench.baseline - CSV of an earlier run. A case whose median is more than
+ *                    bench.threshold (1.25 by default) times the earlier median
+ *                    is reported and the benchmark exits with status 2.
+ *
+ * The generated data and the rows added by the cases are removed afterwards,
+ * but the cursor clean procedure looks at every season in the database, so
+ * this should be run against a scratch copy of the schema.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class DataPathBenchmark {
+
+	// Seed of the generated data, so that every run uses the same rows.
+	private static final long SEED = 421;
+	private static final int DEFAULT_ITERATIONS = 200;
+	private static final int WARMUP = Integer.getInteger("bench.warmup", 20);
+	// A single clean takes long and varies a lot, so its median needs a few runs to be compared.
+	private static final int CLEAN_WARMUP = Integer.getInteger("bench.cleanWarmup", 1);
+	private static final int CLEAN_RUNS = Integer.getInteger("bench.cleanRuns", 5);
+	private static final double THRESHOLD = Double.parseDouble(System.getProperty("bench.threshold", "1.25"));
+	// Announcements sent by the game cases have ids from here, a range of MSGIDS_PER_CASE
+	// for each case, below the 2000000 limit.
+	private static final int FIRST_MSGID = 1980001;
+	private static final int MSGIDS_PER_CASE = 5000;
+
+	/**
+	 * One run of a benchmark case.
+	 */
+	private interface Operation {
+		/**
+		 * @param i - Number of the run, from 0, so that every run can use different rows.
+		 */
+		void run(int i) throws SQLException;
+	}
+
+	/**
+	 * Times taken by the runs of one case.
+	 */
+	public static class Result {
+		private final String name;
+		// Nanoseconds of every timed run, in ascending order.
+		private final long[] nanos;
+
+		Result(String name, long[] nanos) {
+			this.name = name;
+			this.nanos = nanos.clone();
+			Arrays.sort(this.nanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getSamples() {
+			return nanos.length;
+		}
+
+		public double getMeanMillis() {
+			long total = 0;
+			for (long n : nanos) {
+				total += n;
+			}
+			return total / 1e6 / nanos.length;
+		}
+
+		/**
+		 * @param fraction - Fraction of the runs that were at least as fast, such as 0.99.
+		 */
+		public double getPercentileMillis(double fraction) {
+			int index = (int) Math.ceil(fraction * nanos.length) - 1;
+			return nanos[Math.max(0, Math.min(nanos.length - 1, index))] / 1e6;
+		}
+
+		public double getMaxMillis() {
+			return nanos[nanos.length - 1] / 1e6;
+		}
+
+		public double getOpsPerSecond() {
+			return 1000 / Math.max(getMeanMillis(), 1e-6);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java DataPathBenchmark url username password [scale] [iterations] [output]");
+			System.exit(1);
+		}
+		double scale = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+		int iterations = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_ITERATIONS;
+		String output = args.length > 5 ? args[5] : "benchmark";
+
+		LeagueDataGenerator generator = new LeagueDataGenerator(scale, SEED);
+		checkRoom(generator, WARMUP + iterations);
+
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		Connection con = DriverManager.getConnection(args[0], args[1], args[2]);
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, 1);
+		List<Result> results = new ArrayList<Result>();
+		try {
+			int tables = SchemaLoader.createSchema(con,
+					new File(System.getProperty("bench.ddl", SchemaLoader.DEFAULT_DDL)), generator.fitsChecks());
+			System.out.println("Created " + tables + " tables.");
+			createProcedure(con, CleanDatabase.CURSOR_PROCEDURE);
+			createProcedure(con, CleanDatabase.SET_PROCEDURE);
+
+			removeData(con, generator, WARMUP + iterations);
+			long start = System.nanoTime();
+			generator.generate(con);
+			System.out.println(String.format("Generated %d players, %d officials, %d coordinators, %d seasons and "
+					+ "%d games at scale %s in %d ms", generator.getPlayers(), generator.getOfficials(),
+					generator.getCoordinators(), generator.getSeasons(), generator.getGames(), args.length > 3 ? args[3]
+							: "1", (System.nanoTime() - start) / 1000000));
+
+			results.addAll(runDataPaths(pool, generator, iterations));
+			results.addAll(runCleans(con, generator, WARMUP + iterations));
+		} finally {
+			try {
+				removeData(con, generator, WARMUP + iterations);
+			} finally {
+				pool.close();
+				con.close();
+			}
+		}
+
+		System.out.println(String.format("%-24s %8s %10s %10s %10s %10s %10s", "CASE", "RUNS", "MEAN MS", "P50 MS",
+				"P99 MS", "MAX MS", "OPS/S"));
+		for (Result result : results) {
+			System.out.println(String.format("%-24s %8d %10.3f %10.3f %10.3f %10.3f %10.1f", result.getName(),
+					result.getSamples(), result.getMeanMillis(), result.getPercentileMillis(0.5),
+					result.getPercentileMillis(0.99), result.getMaxMillis(), result.getOpsPerSecond()));
+		}
+		writeCsv(new File(output + ".csv"), results);
+		writeJson(new File(output + ".json"), results, scale, iterations);
+		System.out.println("Results written to " + output + ".csv and " + output + ".json");
+
+		String baseline = System.getProperty("bench.baseline");
+		if (baseline != null && compare(new File(baseline), results) > 0) {
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Times the lookup, entry, promotion, salary and game cases.
+	 */
+	private static List<Result> runDataPaths(ConnectionPool pool, final LeagueDataGenerator generator,
+			int iterations) throws SQLException {
+		List<Result> results = new ArrayList<Result>();
+		final FrontDeskOperations operations = new FrontDeskOperations(pool);
+		final int players = generator.getPlayers();
+
+		for (int c = 0; c < IndexAdvisor.COLUMNS.length; c++) {
+			final int column = c;
+			results.add(measure("lookup." + IndexAdvisor.COLUMNS[c].toLowerCase(), iterations, new Operation() {
+				@Override
+				public void run(int i) throws SQLException {
+					Object value = generator.playerRow(new Random(SEED + i).nextInt(players))[column];
+					operations.lookup(1 << column, new Object[] { value });
+				}
+			}));
+		}
+
+		// Entered people have positions after the generated ones.
+		results.add(measure("insert.player", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.addRecord(RecordType.PLAYER, generator.playerRow(players + i));
+			}
+		}));
+		results.add(measure("insert.official", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.addRecord(RecordType.OFFICIAL, generator.officialRow(generator.getOfficials() + i));
+			}
+		}));
+		results.add(measure("insert.coordinator", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.addRecord(RecordType.COORDINATOR, generator.coordinatorRow(generator.getCoordinators() + i));
+			}
+		}));
+		// The players just entered are not captains yet.
+		results.add(measure("promote.captain", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.promoteCaptain(generator.getFirstPid() + players + i);
+			}
+		}));
+
+		results.add(measure("salary.official", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.changeSalary(false, LeagueDataGenerator.FIRST_OID + i % generator.getOfficials(), 1);
+			}
+		}));
+		results.add(measure("salary.coordinator", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.changeSalary(true, LeagueDataGenerator.FIRST_CID + i % generator.getCoordinators(), 1);
+			}
+		}));
+
+		// Games are moved from the first and deleted from the last, so no game is
+		// used twice. Moves keep the date of the game.
+		results.add(measure("game.move", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.moveGame(generator.game(i), LeagueDataGenerator.movedTime(i), FIRST_MSGID + i);
+			}
+		}));
+		results.add(measure("game.delete", iterations, new Operation() {
+			@Override
+			public void run(int i) throws SQLException {
+				operations.deleteGame(generator.game(generator.getGames() - 1 - i), FIRST_MSGID + MSGIDS_PER_CASE + i);
+			}
+		}));
+		return results;
+	}
+
+	/**
+	 * Times both clean procedures on seasons and on teams, after CLEAN_WARMUP
+	 * untimed runs. Cleaning deletes the rows it looks at, so the leagues are
+	 * generated again before every run.
+	 * @param runs - Runs of every data path case, whose ids are after the generated ones.
+	 */
+	private static List<Result> runCleans(Connection con, LeagueDataGenerator generator, int runs)
+			throws SQLException, IOException {
+		List<Result> results = new ArrayList<Result>();
+		String[] options = { "season", "team" };
+		String[] procedures = { "clean", "cleanset" };
+		String[] labels = { "cursor", "set" };
+		for (String option : options) {
+			for (int p = 0; p < procedures.length; p++) {
+				long[] nanos = new long[CLEAN_RUNS];
+				for (int run = -CLEAN_WARMUP; run < CLEAN_RUNS; run++) {
+					generator.removeLeagues(con, runs);
+					con.setAutoCommit(false);
+					try {
+						generator.generateLeagues(con);
+					} finally {
+						con.setAutoCommit(true);
+					}
+					long start = System.nanoTime();
+					Statement statement = con.createStatement();
+					try {
+						statement.execute("call " + procedures[p] + "('" + option + "')");
+					} finally {
+						statement.close();
+					}
+					if (run >= 0) {
+						nanos[run] = System.nanoTime() - start;
+					}
+				}
+				String name = "clean." + option + "." + labels[p];
+				System.out.println(String.format("  %s: %d runs", name, CLEAN_RUNS));
+				results.add(new Result(name, nanos));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a case untimed WARMUP times and then timed the given number of times.
+	 * Prints the statements sent per run, which are round trips to the database
+	 * not counting commits.
+	 */
+	private static Result measure(String name, int iterations, Operation operation) throws SQLException {
+		long statements = DatabaseMetrics.getDefault().getStatementCount();
+		for (int i = 0; i < WARMUP; i++) {
+			operation.run(i);
+		}
+		long[] nanos = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			operation.run(WARMUP + i);
+			nanos[i] = System.nanoTime() - start;
+		}
+		statements = DatabaseMetrics.getDefault().getStatementCount() - statements;
+		System.out.println(String.format("  %s: %d runs, %.1f statements per run", name, iterations, statements
+				/ (double) (WARMUP + iterations)));
+		return new Result(name, nanos);
+	}
+
+	/**
+	 * Makes sure the ids used by the cases are free and allowed by the check constraints.
+	 */
+	private static void checkRoom(LeagueDataGenerator generator, int runs) {
+		if ((generator.fitsChecks() && LeagueDataGenerator.FIRST_PID + generator.getPlayers() + runs >= 260500000)
+				|| LeagueDataGenerator.FIRST_OID + generator.getOfficials() + runs >= 400000
+				|| LeagueDataGenerator.FIRST_CID + generator.getCoordinators() + runs >= 550000
+				|| runs > MSGIDS_PER_CASE || runs * 2 > generator.getGames()) {
+			throw new IllegalArgumentException("Too many iterations for this scale.");
+		}
+	}
+
+	/**
+	 * Removes the generated data, the people entered by the cases and the
+	 * announcements sent by the game cases.
+	 * @param runs - Runs of every case, untimed and timed.
+	 */
+	private static void removeData(Connection con, LeagueDataGenerator generator, int runs) throws SQLException {
+		generator.remove(con, runs);
+		Statement statement = con.createStatement();
+		try {
+			statement.executeUpdate("delete from Announcement where msgid between " + FIRST_MSGID + " and "
+					+ (FIRST_MSGID + 2 * MSGIDS_PER_CASE - 1));
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Creates a procedure, ignoring the error if it already exists.
+	 */
+	private static void createProcedure(Connection con, String ddl) {
+		try {
+			Statement stmt = con.createStatement();
+			try {
+				stmt.execute(ddl);
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			// Already created.
+		}
+	}
+
+	private static void writeCsv(File file, List<Result> results) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("case,runs,mean_ms,p50_ms,p99_ms,max_ms,ops_per_s");
+			for (Result result : results) {
+				out.println(String.format(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.2f", result.getName(),
+						result.getSamples(), result.getMeanMillis(), result.getPercentileMillis(0.5),
+						result.getPercentileMillis(0.99), result.getMaxMillis(), result.getOpsPerSecond()));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeJson(File file, List<Result> results, double scale, int iterations) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println(String.format(Locale.ROOT, "{\"scale\": %s, \"iterations\": %d, \"warmup\": %d, \"results\": [",
+					scale, iterations, WARMUP));
+			for (int i = 0; i < results.size(); i++) {
+				Result result = results.get(i);
+				out.println(String.format(Locale.ROOT, "  {\"case\": \"%s\", \"runs\": %d, \"mean_ms\": %.4f, "
+						+ "\"p50_ms\": %.4f, \"p99_ms\": %.4f, \"max_ms\": %.4f, \"ops_per_s\": %.2f}%s",
+						result.getName(), result.getSamples(), result.getMeanMillis(), result.getPercentileMillis(0.5),
+						result.getPercentileMillis(0.99), result.getMaxMillis(), result.getOpsPerSecond(),
+						i + 1 < results.size() ? "," : ""));
+			}
+			out.println("]}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Compares the medians with those of an earlier run and prints the cases that got slower.
+	 * @param baseline - CSV written by an earlier run.
+	 * @return Number of cases slower than THRESHOLD times their earlier median.
+	 */
+	static int compare(File baseline, List<Result> results) throws IOException {
+		Map<String, Double> medians = new HashMap<String, Double>();
+		BufferedReader reader = new BufferedReader(new FileReader(baseline));
+		try {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				if (fields.length >= 4) {
+					medians.put(fields[0], Double.parseDouble(fields[3]));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		int regressions = 0;
+		for (Result result : results) {
+			Double before = medians.get(result.getName());
+			double after = result.getPercentileMillis(0.5);
+			if (before != null && after > before * THRESHOLD) {
+				System.out.println(String.format("REGRESSION %s: median %.3f ms, was %.3f ms (%.2fx)",
+						result.getName(), after, before, after / Math.max(before, 1e-6)));
+				regressions++;
+			}
+		}
+		if (regressions == 0) {
+			System.out.println("No case is more than " + THRESHOLD + " times slower than in " + baseline);
+		}
+		return regressions;
+	}
+}
@@ -0,0 +1,378 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency, row and error counts of every database call, and counts of every
+ * menu operation, readable over JMX under COMP421:type=DatabaseMetrics and
+ * written to a file at regular intervals.
+ *
+ * Callers look up an Operation once and keep it in a field, so that recording
+ * a call only updates a histogram and a few counters without locking or
+ * allocating. Statements are counted by their SQL text, which is the same for
+ * every call as values are bound to placeholders.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class DatabaseMetrics implements DatabaseMetricsMBean {
+
+	// Name the metrics are registered under with JMX.
+	public static final String OBJECT_NAME = "COMP421:type=DatabaseMetrics";
+	// Most distinct statements counted, later statements are counted as OTHER_STATEMENTS.
+	private static final int MAX_STATEMENTS = 1000;
+	private static final String OTHER_STATEMENTS = "(other statements)";
+	// Statements shown in the report.
+	private static final int REPORT_STATEMENTS = 10;
+	// SQLSTATE of errors thrown without one.
+	private static final String UNKNOWN_STATE = "?????";
+
+	private static final DatabaseMetrics DEFAULT = new DatabaseMetrics();
+
+	private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+	private final ConcurrentMap<String, AtomicLong> statements = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong statementCount = new AtomicLong();
+	private Timer dumpTimer;
+
+	/**
+	 * @return The metrics shared by the whole application.
+	 */
+	public static DatabaseMetrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Calls of one operation.
+	 */
+	public static class Operation {
+
+		private final DatabaseMetrics metrics;
+		private final String name;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		// Calls, timed or only counted.
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+
+		private Operation(DatabaseMetrics metrics, String name) {
+			this.metrics = metrics;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Records a call which succeeded.
+		 * @param startNanos - System.nanoTime() when the call started.
+		 * @param rowCount - Rows read or changed by the call.
+		 */
+		public void record(long startNanos, long rowCount) {
+			latency.record(System.nanoTime() - startNanos);
+			count(rowCount);
+		}
+
+		/**
+		 * Counts a call which succeeded without timing it, for calls whose time
+		 * is not the database's, such as menu options waiting on the user.
+		 * @param rowCount - Rows read or changed by the call.
+		 */
+		public void count(long rowCount) {
+			calls.incrementAndGet();
+			if (rowCount > 0) {
+				rows.addAndGet(rowCount);
+			}
+		}
+
+		/**
+		 * Records a call which failed, counting the SQLSTATE of the error.
+		 * @param startNanos - System.nanoTime() when the call started.
+		 * @param e - The error.
+		 */
+		public void recordError(long startNanos, SQLException e) {
+			latency.record(System.nanoTime() - startNanos);
+			countError(e);
+		}
+
+		/**
+		 * Counts a call which failed without timing it, counting the SQLSTATE of the error.
+		 * @param e - The error.
+		 */
+		public void countError(SQLException e) {
+			calls.incrementAndGet();
+			errors.incrementAndGet();
+			metrics.countError(e);
+		}
+
+		public long getCount() {
+			return calls.get();
+		}
+
+		public long getRows() {
+			return rows.get();
+		}
+
+		public long getErrors() {
+			return errors.get();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		private void reset() {
+			latency.reset();
+			calls.set(0);
+			rows.set(0);
+			errors.set(0);
+		}
+	}
+
+	/**
+	 * @param name - Name of the operation, such as sql.query or menu.lookup.
+	 * @return The operation, created the first time it is asked for.
+	 */
+	public Operation operation(String name) {
+		Operation operation = operations.get(name);
+		if (operation == null) {
+			Operation created = new Operation(this, name);
+			operation = operations.putIfAbsent(name, created);
+			if (operation == null) {
+				operation = created;
+			}
+		}
+		return operation;
+	}
+
+	/**
+	 * Counts a statement run.
+	 * @param sql - The statement, with placeholders for its values.
+	 */
+	public void countStatement(String sql) {
+		statementCount.incrementAndGet();
+		AtomicLong count = statements.get(sql);
+		if (count == null) {
+			count = increment(statements, statements.size() < MAX_STATEMENTS ? sql : OTHER_STATEMENTS);
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Counts an error by its SQLSTATE. Errors recorded by an Operation are already counted.
+	 * @param e - The error.
+	 */
+	public void countError(SQLException e) {
+		String state = e.getSQLState();
+		increment(errors, state == null ? UNKNOWN_STATE : state).incrementAndGet();
+	}
+
+	/**
+	 * @return The counter of a key, created at 0 the first time.
+	 */
+	private static AtomicLong increment(ConcurrentMap<String, AtomicLong> counts, String key) {
+		AtomicLong count = counts.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = counts.putIfAbsent(key, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public String[] getOperationNames() {
+		List<String> names = new ArrayList<String>(operations.keySet());
+		Collections.sort(names);
+		return names.toArray(new String[names.size()]);
+	}
+
+	@Override
+	public long getStatementCount() {
+		return statementCount.get();
+	}
+
+	@Override
+	public long getRowCount() {
+		long rows = 0;
+		for (Operation operation : operations.values()) {
+			// Menu operations run the sql operations, count those only once.
+			if (operation.getName().startsWith("sql.")) {
+				rows += operation.getRows();
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	public long getErrorCount() {
+		long count = 0;
+		for (AtomicLong errorCount : errors.values()) {
+			count += errorCount.get();
+		}
+		return count;
+	}
+
+	@Override
+	public String[] getErrorsBySqlState() {
+		Map<String, AtomicLong> sorted = new TreeMap<String, AtomicLong>(errors);
+		String[] states = new String[sorted.size()];
+		int i = 0;
+		for (Map.Entry<String, AtomicLong> entry : sorted.entrySet()) {
+			states[i++] = entry.getKey() + "=" + entry.getValue().get();
+		}
+		return states;
+	}
+
+	@Override
+	public long getCount(String operation) {
+		Operation found = operations.get(operation);
+		return found == null ? 0 : found.getCount();
+	}
+
+	@Override
+	public double getPercentileMillis(String operation, double fraction) {
+		Operation found = operations.get(operation);
+		return found == null ? 0 : found.getLatency().getPercentile(fraction) / 1e6;
+	}
+
+	@Override
+	public void reset() {
+		for (Operation operation : operations.values()) {
+			operation.reset();
+		}
+		statements.clear();
+		errors.clear();
+		statementCount.set(0);
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-22s %9s %10s %7s %9s %9s %9s %9s %9s%n", "OPERATION", "COUNT", "ROWS", "ERRORS",
+				"MEAN ms", "P50 ms", "P99 ms", "P999 ms", "MAX ms"));
+		for (String name : getOperationNames()) {
+			Operation operation = operations.get(name);
+			LatencyHistogram latency = operation.getLatency();
+			if (latency.getCount() == 0) {
+				// Only counted, so there are no times to show.
+				report.append(String.format("%-22s %9d %10d %7d %9s %9s %9s %9s %9s%n", name, operation.getCount(),
+						operation.getRows(), operation.getErrors(), "-", "-", "-", "-", "-"));
+				continue;
+			}
+			report.append(String.format("%-22s %9d %10d %7d %9.3f %9.3f %9.3f %9.3f %9.3f%n", name,
+					operation.getCount(), operation.getRows(), operation.getErrors(), latency.getMean() / 1e6,
+					latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6,
+					latency.getPercentile(0.999) / 1e6, latency.getMax() / 1e6));
+		}
+
+		report.append(String.format("Statements: %d  Rows: %d  Errors: %d%n", getStatementCount(), getRowCount(),
+				getErrorCount()));
+		for (String state : getErrorsBySqlState()) {
+			report.append("  sqlState ").append(state).append(String.format("%n"));
+		}
+
+		List<Map.Entry<String, AtomicLong>> counts = new ArrayList<Map.Entry<String, AtomicLong>>(statements.entrySet());
+		Collections.sort(counts, new Comparator<Map.Entry<String, AtomicLong>>() {
+			@Override
+			public int compare(Map.Entry<String, AtomicLong> a, Map.Entry<String, AtomicLong> b) {
+				long x = a.getValue().get();
+				long y = b.getValue().get();
+				return x > y ? -1 : x < y ? 1 : 0;
+			}
+		});
+		if (!counts.isEmpty()) {
+			report.append(String.format("Most run statements:%n"));
+		}
+		for (int i = 0; i < Math.min(REPORT_STATEMENTS, counts.size()); i++) {
+			report.append(String.format("%9d  %s%n", counts.get(i).getValue().get(), counts.get(i).getKey()));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, if they are not already.
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// Registered by another session of the same process.
+		} catch (JMException e) {
+			System.err.println("Could not register the database metrics with JMX: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends the report to a file at regular intervals, from a background thread,
+	 * replacing any earlier schedule.
+	 * @param file - File the reports are appended to.
+	 * @param periodMillis - Milliseconds between reports.
+	 */
+	public synchronized void startDump(final File file, long periodMillis) {
+		stopDump();
+		dumpTimer = new Timer("database-metrics", true);
+		dumpTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					dump(file);
+				} catch (IOException e) {
+					System.err.println("Could not write the database metrics to " + file + ": " + e.getMessage());
+					cancel();
+				}
+			}
+		}, periodMillis, periodMillis);
+	}
+
+	/**
+	 * Stops the reports started by startDump.
+	 */
+	public synchronized void stopDump() {
+		if (dumpTimer != null) {
+			dumpTimer.cancel();
+			dumpTimer = null;
+		}
+	}
+
+	/**
+	 * Appends the report to a file, after the time it was taken.
+	 * @param file - File the report is appended to.
+	 * @throws IOException
+	 */
+	public void dump(File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+		try {
+			out.write("=== " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + " ===");
+			out.write(String.format("%n"));
+			out.write(getReport());
+			out.write(String.format("%n"));
+		} finally {
+			out.close();
+		}
+	}
+}
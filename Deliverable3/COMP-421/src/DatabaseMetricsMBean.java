@@ -0,0 +1,56 @@
+/**
+ * Management interface of DatabaseMetrics, for reading the metrics with JMX
+ * tools such as jconsole while the application runs.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public interface DatabaseMetricsMBean {
+
+	/**
+	 * @return Names of every operation recorded so far.
+	 */
+	String[] getOperationNames();
+
+	/**
+	 * @return Number of statements run.
+	 */
+	long getStatementCount();
+
+	/**
+	 * @return Number of rows read or changed by every operation.
+	 */
+	long getRowCount();
+
+	/**
+	 * @return Number of calls that failed.
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return The number of errors of every SQLSTATE, as SQLSTATE=count.
+	 */
+	String[] getErrorsBySqlState();
+
+	/**
+	 * @return Every metric as a text table.
+	 */
+	String getReport();
+
+	/**
+	 * @param operation - Name of an operation.
+	 * @return Number of calls of the operation.
+	 */
+	long getCount(String operation);
+
+	/**
+	 * @param operation - Name of an operation.
+	 * @param fraction - Fraction of the calls that were at least as fast, such as 0.99.
+	 * @return The latency in milliseconds.
+	 */
+	double getPercentileMillis(String operation, double fraction);
+
+	/**
+	 * Forgets every value recorded.
+	 */
+	void reset();
+}
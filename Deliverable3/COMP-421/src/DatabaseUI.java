@@ -1,16 +1,25 @@
-import java.sql.Connection;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.*;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
 /**
  * User-friendly application program for the sports/recreation center database.
  * 
@@ -25,8 +34,60 @@ public class DatabaseUI {
 	private String password;
 	// URL at which the database can be accessed.
 	private String dburl;
-	// The connection which establishes queries.
-	private static Connection con;
+	// Pool from which every query borrows its connection.
+	private static ConnectionPool pool;
+	// Number of connections the pool keeps open and the most it will open.
+	private static final int POOL_MIN_SIZE = 1;
+	private static final int POOL_MAX_SIZE = 8;
+	// Creates the disconnected result sets handed back by executeQuery.
+	private static RowSetFactory rowSetFactory;
+	// Players shown per page of a lookup, and rows the driver fetches per round trip.
+	// Set with -Dlookup.pageSize and -Dlookup.fetchSize.
+	private static final int LOOKUP_PAGE_SIZE = Integer.getInteger("lookup.pageSize", 20);
+	private static final int LOOKUP_FETCH_SIZE = Integer.getInteger("lookup.fetchSize", 20);
+	// Largest number of players in a date range that are read by PID from the date index.
+	private static final int LOOKUP_MAX_CANDIDATES = Integer.getInteger("lookup.maxCandidates", 1000);
+	// Rows read by id, shared like the pool. Every change made here invalidates the id it wrote.
+	private static RowCache playerCache;
+	private static RowCache captainCache;
+	private static RowCache coordinatorCache;
+	private static RowCache officialCache;
+	// Rows each cache keeps and milliseconds a row is used for before it is read again.
+	private static final int CACHE_SIZE = 10000;
+	private static final long CACHE_TIME_TO_LIVE = 5 * 60 * 1000;
+	// Players by the start of their names, email and phone number, for the type-ahead search.
+	private static PlayerSearchIndex searchIndex;
+	// Most players suggested by one type-ahead search.
+	private static final int TYPE_AHEAD_LIMIT = 10;
+	// Players by the trigrams of their names and address, for suggestions when an exact lookup finds nothing.
+	private static PlayerFuzzyIndex fuzzyIndex;
+	// Most players suggested for a misspelled name or address.
+	private static final int FUZZY_LIMIT = 10;
+	// Players by birthday and by creation date, for date range lookups.
+	private static PlayerDateIndex dateIndex;
+	// Records the fields lookups search by and recommends indexes for them.
+	private static IndexAdvisor advisor;
+	// Moves games with their teams and officials in one transaction.
+	private static GameRescheduler rescheduler;
+	// When every team and official plays, to check a move for clashes before making it.
+	private static BookingIndex bookings;
+	// Latency, rows and errors of every statement and counts of every menu option, also readable over JMX.
+	private static final DatabaseMetrics metrics = DatabaseMetrics.getDefault();
+	private static final DatabaseMetrics.Operation QUERY_METRICS = metrics.operation("sql.query");
+	private static final DatabaseMetrics.Operation UPDATE_METRICS = metrics.operation("sql.update");
+	private static final DatabaseMetrics.Operation[] MENU_METRICS = {
+		null,
+		metrics.operation("menu.lookup"),
+		metrics.operation("menu.add"),
+		metrics.operation("menu.promote"),
+		metrics.operation("menu.game"),
+		metrics.operation("menu.salary"),
+		metrics.operation("menu.advisor")
+	};
+	// File the metrics are appended to and seconds between writes, 0 to not write them.
+	// Set with -Dmetrics.dump and -Dmetrics.interval.
+	private static final String METRICS_DUMP = System.getProperty("metrics.dump", "metrics.log");
+	private static final int METRICS_INTERVAL = Integer.getInteger("metrics.interval", 60);
 	
 	/**
 	 * Constructor for the DatabaseUI.
@@ -41,7 +102,12 @@ public class DatabaseUI {
 		
 		// Given the input from the user attempt to establish the connection otherwise catch the error.
 		try {
-			con = connectDatabase();
+			pool = connectDatabase();
+			rowSetFactory = RowSetProvider.newFactory();
+			createCaches();
+			loadSearchIndex();
+			loadBookings();
+			startMetrics();
 		} catch (SQLException sqle) {
 			System.err.println("Could not establish connection to "+ dburl+ ". Please check login credentials.");
 			System.exit(0);
@@ -50,11 +116,101 @@ public class DatabaseUI {
 	}
 	
 	/**
-	 * Establishes the connection to the DB2 database using the user inputs.
-	 * @return Connection to the database which if successful will be used as the global variable con
+	 * Constructor for a DatabaseUI which shares an existing pool, for example with
+	 * other front desk sessions or with the cleaning system.
+	 * @param sharedPool - Pool to borrow connections from.
 	 * @throws SQLException
 	 */
-	private Connection connectDatabase() throws SQLException {
+	public DatabaseUI(ConnectionPool sharedPool) throws SQLException{
+		pool = sharedPool;
+		rowSetFactory = RowSetProvider.newFactory();
+		createCaches();
+		loadSearchIndex();
+		loadBookings();
+		startMetrics();
+	}
+	
+	/**
+	 * Creates the caches of the rows looked up by id, reading through the pool.
+	 */
+	private static void createCaches(){
+		playerCache = new RowCache(pool, "Player", "pid", CACHE_SIZE, CACHE_TIME_TO_LIVE);
+		captainCache = new RowCache(pool, "Captain", "cptnid", CACHE_SIZE, CACHE_TIME_TO_LIVE);
+		coordinatorCache = new RowCache(pool, "Coordinator", "cid", CACHE_SIZE, CACHE_TIME_TO_LIVE);
+		officialCache = new RowCache(pool, "Official", "oid", CACHE_SIZE, CACHE_TIME_TO_LIVE);
+		advisor = new IndexAdvisor(pool);
+		rescheduler = new GameRescheduler(pool);
+	}
+	
+	/**
+	 * Registers the metrics with JMX and starts writing them to the dump file.
+	 */
+	private static void startMetrics(){
+		metrics.register();
+		if(METRICS_INTERVAL > 0){
+			metrics.startDump(new File(METRICS_DUMP), METRICS_INTERVAL * 1000L);
+		}
+	}
+	
+	/**
+	 * Loads every player into the type-ahead, misspelling and date range search indexes,
+	 * reading the Player table once for all three.
+	 * If this fails the searches only find players entered from now on.
+	 */
+	private static void loadSearchIndex(){
+		PlayerSearchIndex search = new PlayerSearchIndex();
+		PlayerFuzzyIndex fuzzy = new PlayerFuzzyIndex();
+		PlayerDateIndex dates = new PlayerDateIndex();
+		long start = System.currentTimeMillis();
+		try {
+			int players = PlayerIndexLoader.load(pool, null, search, fuzzy, dates);
+			System.out.println("Indexed " + players + " players for search in " + (System.currentTimeMillis() - start) + " ms.");
+		} catch (SQLException sqlE) {
+			System.err.println("Could not load the player search index. sqlState: " + sqlE.getSQLState());
+			search = new PlayerSearchIndex();
+			fuzzy = new PlayerFuzzyIndex();
+			dates = new PlayerDateIndex();
+		}
+		searchIndex = search;
+		fuzzyIndex = fuzzy;
+		dateIndex = dates;
+	}
+	
+	/**
+	 * Adds the players created by an import to the search indexes, without reading the
+	 * rest of the Player table again.
+	 * If this fails the imported players are found again after the next restart.
+	 * @param since - Date the import started, YYYY-MM-DD.
+	 */
+	private static void indexImportedPlayers(String since){
+		try {
+			int players = PlayerIndexLoader.load(pool, since, searchIndex, fuzzyIndex, dateIndex);
+			System.out.println("Indexed " + players + " imported players for search.");
+		} catch (SQLException sqlE) {
+			System.err.println("Could not index the imported players. sqlState: " + sqlE.getSQLState());
+		}
+	}
+	
+	/**
+	 * Loads the games of every team and official into the booking index.
+	 * If this fails moves are only checked by the database when they are made.
+	 */
+	private static void loadBookings(){
+		bookings = new BookingIndex();
+		try {
+			int games = bookings.load(pool);
+			System.out.println("Indexed the bookings of " + games + " games.");
+		} catch (SQLException sqlE) {
+			System.err.println("Could not load the game bookings. sqlState: " + sqlE.getSQLState());
+		}
+	}
+	
+	/**
+	 * Establishes the pool of connections to the DB2 database using the user inputs.
+	 * @return Pool of connections to the database which if successful will be used as the global variable pool
+	 * @throws SQLException
+	 */
+	private ConnectionPool connectDatabase() throws SQLException {
 		/* Register the driver.
 		 * If you are on the Trottier labs, this should not be a problem, otherwise, must VPN to SOCS
 		 */
@@ -65,7 +221,7 @@ public class DatabaseUI {
 			System.out.println("Class not found");
 		}
 
-		return DriverManager.getConnection(dburl, username, password);
+		return new ConnectionPool(dburl, username, password, POOL_MIN_SIZE, POOL_MAX_SIZE);
 		
 	}
 
@@ -97,7 +253,8 @@ public class DatabaseUI {
 			System.out.println("3 - Promote player to captain");
 			System.out.println("4 - Cancel/Reschedule an upcoming game");
 			System.out.println("5 - Alter employee salary");
-			System.out.println("6 - Exit Application");
+			System.out.println("6 - Index advisor for player lookups");
+			System.out.println("7 - Exit Application");
 			System.out.println("===================================");
 
 			/*
@@ -117,13 +274,15 @@ public class DatabaseUI {
 
 		}
 		
-		// Now that we know that the user would like to quit, we close the connection and exit.
-		try {
-			con.close();
-		} catch (SQLException e) {
-			System.err.println("Something went wrong with closing the connection. Were you connected to begin with?");
-			System.exit(-1);
-		}
+		// Now that we know that the user would like to quit, we close the connections and exit.
+		System.out.println(pool.getStatistics());
+		System.out.println(playerCache.getStatistics());
+		System.out.println(captainCache.getStatistics());
+		System.out.println(coordinatorCache.getStatistics());
+		System.out.println(officialCache.getStatistics());
+		System.out.print(metrics.getReport());
+		metrics.stopDump();
+		pool.close();
 		System.out.println("Exiting Now. Thank you for using JAM.");
 		System.exit(0);
 	}
@@ -136,85 +295,174 @@ public class DatabaseUI {
 	 * @throws SQLException
 	 */
 	private boolean processMenu(int pUserInput) throws SQLException {
-		switch (pUserInput) {
-		case 1: playerLookup();
-			break;
-		case 2: addNewRecord();
-			break;
-		case 3: promoteCaptain();
-			break;
-		case 4: deleteMoveGame();
-			break;
-		case 5: alterSalary();
-			break;
-		case 6:
-			return true;
-		default:
-			System.out.print("That was an incorrect selection. Please try again");
-			break;
+		try {
+			switch (pUserInput) {
+			case 1: playerLookup();
+				break;
+			case 2: addNewRecord();
+				break;
+			case 3: promoteCaptain();
+				break;
+			case 4: deleteMoveGame();
+				break;
+			case 5: alterSalary();
+				break;
+			case 6: adviseIndexes();
+				break;
+			case 7:
+				return true;
+			default:
+				System.out.print("That was an incorrect selection. Please try again");
+				return false;
 
+			}
+		} catch (SQLException sqlE) {
+			MENU_METRICS[pUserInput].countError(sqlE);
+			throw sqlE;
 		}
+		// Only counted, as the statements are run between prompts and the time would be
+		// mostly the user's. Their own time is in sql.query and sql.update.
+		MENU_METRICS[pUserInput].count(0);
 		return false;
 	}
 	
+	/**
+	 * Shows how long the lookups by each combination of fields have taken and the indexes
+	 * which would speed them up, and optionally creates the indexes and measures the speedup.
+	 */
+	private void adviseIndexes(){
+		Scanner input = new Scanner(System.in);
+		System.out.println("\n===================================");
+		System.out.println("Index Advisor");
+		System.out.println("===================================");
+		System.out.print(advisor.getReport());
+		
+		List<IndexAdvisor.Recommendation> recommendations = advisor.getRecommendations();
+		if(recommendations.isEmpty()){
+			System.out.println("\nNo indexes to recommend. Combinations need to be looked up at least twice, lookups by PID already use the key.");
+			return;
+		}
+		System.out.println("\nRecommended indexes:");
+		for(IndexAdvisor.Recommendation recommendation : recommendations){
+			System.out.println(String.format("%s;    -- serves %.1f ms of lookups", recommendation.getCreateSql(), recommendation.getNanos() / 1e6));
+		}
+		
+		System.out.println("\nCreate these indexes and measure the speedup? This locks the Player table, use a test database. [y/n]: ");
+		if(!input.nextLine().trim().equalsIgnoreCase("y")){
+			return;
+		}
+		try {
+			List<IndexAdvisor.Recommendation> created = advisor.measure(recommendations);
+			if(created.isEmpty()){
+				return;
+			}
+			System.out.println("Keep the " + created.size() + " indexes created? [y/n]: ");
+			if(!input.nextLine().trim().equalsIgnoreCase("y")){
+				advisor.drop(created);
+				System.out.println("Dropped the indexes.");
+			}
+		} catch (SQLException sqlE) {
+			System.err.println("Could not create or drop the indexes, any created were dropped. sqlState: " + sqlE.getSQLState());
+		}
+	}
+	
 	/**
 	 * Given a statement to update a table in the form of a String, the query is either performed with the
 	 * appropriate response or tables returned or an exception is thrown.
-	 * @param querySQL
+	 * 
+	 * Values are passed separately and bound to the ? placeholders of the statement, so the
+	 * statement is prepared once per connection and reused from the statement cache.
+	 * @param querySQL - SQL with a ? for every value.
+	 * @param params - Values for the placeholders, in order.
 	 * @throws SQLException
 	 */
-	private boolean executeUpdate(String querySQL) throws SQLException{
-		Statement statement = con.createStatement();
+	private boolean executeUpdate(String querySQL, Object... params) throws SQLException{
+		long start = System.nanoTime();
+		metrics.countStatement(querySQL);
+		PooledConnection connection = pool.borrow();
 		int sqlCode;
 		String sqlState = "00000";
 		
 		// Querying a table
 		try {
-			statement.executeUpdate(querySQL);
+			PreparedStatement statement = connection.prepare(querySQL);
+			bindParameters(statement, params);
+			UPDATE_METRICS.record(start, statement.executeUpdate());
 			return true;
 			
 		} catch (SQLException e) {
+			UPDATE_METRICS.recordError(start, e);
 			sqlCode = e.getErrorCode(); // Get SQLCODE
 			sqlState = e.getSQLState(); // Get SQLSTATE
 
 			if(sqlState.equals("23505")){
 				System.out.println("A record already exists with this ID...");
 			}
+		} finally {
+			connection.close();
 		}
 		
-		statement.close();
 		return false;
 	}
 	
 	/**
 	 * Given a statement to execute in the form of a String, the query is either performed with the
 	 * appropriate response or tables returned or an exception is thrown.
-	 * @param querySQL
+	 * 
+	 * The rows are copied into a disconnected result set so that the connection can go straight
+	 * back to the pool instead of being held while the caller reads the response.
+	 * @param querySQL - SQL with a ? for every value.
+	 * @param params - Values for the placeholders, in order.
 	 * @throws SQLException
 	 */
-	private ResultSet executeQuery(String querySQL) throws SQLException{
-		Statement statement = con.createStatement();
-		ResultSet sqlResponse = null;
+	private ResultSet executeQuery(String querySQL, Object... params) throws SQLException{
+		long start = System.nanoTime();
+		metrics.countStatement(querySQL);
+		PooledConnection connection = pool.borrow();
+		CachedRowSet sqlResponse = null;
 		int sqlCode = 0;
 		String sqlState = "00000";
 		
 		// Querying a table
 		try {
-			sqlResponse = statement.executeQuery(querySQL);
-			return sqlResponse;
+			PreparedStatement statement = connection.prepare(querySQL);
+			bindParameters(statement, params);
+			ResultSet rows = statement.executeQuery();
+			try {
+				sqlResponse = rowSetFactory.createCachedRowSet();
+				sqlResponse.populate(rows);
+				QUERY_METRICS.record(start, sqlResponse.size());
+				return sqlResponse;
+			} finally {
+				rows.close();
+			}
 			
 		} catch (SQLException e) {
+			QUERY_METRICS.recordError(start, e);
 			sqlCode = e.getErrorCode(); // Get SQLCODE
 			sqlState = e.getSQLState(); // Get SQLSTATE
 
 			// Your code to handle errors comes here;
 			// something more meaningful than a print would be good
 			System.out.println("Code: " + sqlCode + "  sqlState: " + sqlState);
+		} finally {
+			connection.close();
 		}
 		
-		statement.close();
 		return null;
 	}
+	
+	/**
+	 * Binds the values to the placeholders of a prepared statement in order.
+	 * @param statement - The statement to bind to.
+	 * @param params - The values, a null value is bound as SQL NULL.
+	 * @throws SQLException
+	 */
+	private static void bindParameters(PreparedStatement statement, Object[] params) throws SQLException{
+		for(int i = 0; i < params.length; i++){
+			statement.setObject(i + 1, params[i]);
+		}
+	}
 
 	/**
 	 * Player lookup has the function of querying the database for a specific player or players
@@ -227,10 +475,10 @@ public class DatabaseUI {
 		int userInput = 0;
 		// Each query will have a spot in the array in case there are multiples
 		String[] qSearch = new String[9];
-		// The SQL query which will be executed.
-		String sqlQuery = "";
-		// The response to be received.
-		ResultSet sqlResponse = null;
+		// The value searched for by each query, bound to its placeholder
+		String[] qValues = new String[9];
+		// The first and last day of a date range searched for, by field, searched in memory
+		int[][] qRanges = new int[9][];
 		// The response makes sense
 		boolean validResponse = true;
 		
@@ -248,6 +496,7 @@ public class DatabaseUI {
 		System.out.println("8 - Birthday");
 		System.out.println("9 - Date Created");
 		System.out.println("**For a combination write a sequence of the above (ex. 34 for Last Name and First Name)");
+		System.out.println("0 - Type-ahead search by the start of a name, email or phone number");
 		
 		// We make sure that the user puts the correct input ex. 1 number
 		System.out.print("Make your selection: ");
@@ -255,6 +504,12 @@ public class DatabaseUI {
 			userInput = input.nextInt();
 		} catch (InputMismatchException inputE) {
 			System.out.println("Please enter the menu item as an integer.");
+			userInput = -1;
+		}
+		
+		if(userInput == 0){
+			typeAheadSearch();
+			return;
 		}
 		
 		// To make it easier to execute in order parse in a string, so we know the length
@@ -272,65 +527,86 @@ public class DatabaseUI {
 			switch (execute) {
 			case 1: System.out.println("Enter a PID to search: ");
 					if(qSearch[0] == null || qSearch[0].isEmpty()){
-					qSearch[0] = "PID = " + input.nextLine();
+					qSearch[0] = "PID = ?";
+					qValues[0] = input.nextLine();
 					}else{
 						System.out.println("You can't search for two values for the same attribute, using "+qSearch[0]);
 					}
 				break;
 			case 2: System.out.println("Enter a Gender to search: ");
 			if(qSearch[1] == null || qSearch[1].isEmpty()){
-				qSearch[1] = "Gender = '" + input.nextLine() +"'";
+				qSearch[1] = "Gender = ?";
+					qValues[1] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[1]);
 				}
 				break;
 			case 3: System.out.println("Enter a Last Name to search: ");
 			if(qSearch[2] == null || qSearch[2].isEmpty()){
-				qSearch[2] = "Lname = '" + input.nextLine() +"'";
+				qSearch[2] = "Lname = ?";
+					qValues[2] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[2]);
 				}
 				break;
 			case 4: System.out.println("Enter a First Name to search: ");
 			if(qSearch[3] == null || qSearch[3].isEmpty()){
-				qSearch[3] = "Fname = '" + input.nextLine() +"'";
+				qSearch[3] = "Fname = ?";
+					qValues[3] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[3]);
 				}
 				break;
 			case 5: System.out.println("Enter an Address to search: ");
 			if(qSearch[4] == null || qSearch[4].isEmpty()){
-				qSearch[4] = "Address = '" + input.nextLine() +"'";
+				qSearch[4] = "Address = ?";
+					qValues[4] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[4]);
 				}
 				break;
 			case 6: System.out.println("Enter a Phone Number to search: ");
 			if(qSearch[5] == null || qSearch[5].isEmpty()){
-				qSearch[5] = "Phonenumber = '" + input.nextLine() +"'";
+				qSearch[5] = "Phonenumber = ?";
+					qValues[5] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[5]);
 				}
 				break;
 			case 7: System.out.println("Enter a Email to search: ");
 			if(qSearch[6] == null || qSearch[6].isEmpty()){
-				qSearch[6] = "Email = '" + input.nextLine() +"'";
+				qSearch[6] = "Email = ?";
+					qValues[6] = input.nextLine();
 				}else{
 					System.out.println("You can't search for two values for the same attribute, using "+qSearch[6]);
 				}
 				break;
-			case 8: System.out.println("Enter a birthday to search (YYYY-MM-DD): ");
-			if(qSearch[7] == null || qSearch[7].isEmpty()){
-				qSearch[7] = "Birthday = '" + input.nextLine() +"'";
+			case 8: System.out.println("Enter a birthday to search (YYYY-MM-DD, or a range YYYY-MM-DD..YYYY-MM-DD with either end left out): ");
+			if((qSearch[7] == null || qSearch[7].isEmpty()) && qRanges[7] == null){
+				String dateInput = input.nextLine();
+				if(dateInput.contains("..")){
+					qRanges[7] = parseDateRange(dateInput);
+					validResponse = validResponse && qRanges[7] != null;
+				}else{
+					qSearch[7] = "Birthday = ?";
+					qValues[7] = dateInput;
+				}
 				}else{
-					System.out.println("You can't search for two values for the same attribute, using "+qSearch[7]);
+					System.out.println("You can't search for two values for the same attribute, using "+(qSearch[7] != null ? qSearch[7] : "the range"));
 				}
 				break;
-			case 9: System.out.println("Enter a date created to search (YYYY-MM-DD): ");
-			if(qSearch[8] == null || qSearch[8].isEmpty()){
-				qSearch[8] = "Datecreated = '" + input.nextLine() +"'";
+			case 9: System.out.println("Enter a date created to search (YYYY-MM-DD, or a range YYYY-MM-DD..YYYY-MM-DD with either end left out): ");
+			if((qSearch[8] == null || qSearch[8].isEmpty()) && qRanges[8] == null){
+				String dateInput = input.nextLine();
+				if(dateInput.contains("..")){
+					qRanges[8] = parseDateRange(dateInput);
+					validResponse = validResponse && qRanges[8] != null;
+				}else{
+					qSearch[8] = "Datecreated = ?";
+					qValues[8] = dateInput;
+				}
 				}else{
-					System.out.println("You can't search for two values for the same attribute, using "+qSearch[8]);
+					System.out.println("You can't search for two values for the same attribute, using "+(qSearch[8] != null ? qSearch[8] : "the range"));
 				}
 				break;
 			default:
@@ -345,60 +621,216 @@ public class DatabaseUI {
 		// Now that we have our executions, we can now perform the queries.
 		// We concatenate all that needs to be sent to the database.
 		if(validResponse){
-		sqlQuery = ""+"SELECT * FROM Player WHERE ";
-		int sqlCount = 0;
+		String condition = null;
+		ArrayList<Object> sqlValues = new ArrayList<Object>();
 		for(int i = 0; i<qSearch.length; i++){
-			if(qSearch[i] != null && sqlCount == 0){
-				sqlQuery +="(" + qSearch[i];
-				sqlCount++;
+			if(qSearch[i] != null && condition == null){
+				condition = qSearch[i];
+				sqlValues.add(qValues[i]);
 			}
-			else if(qSearch[i] != null && sqlCount > 0){
-				sqlQuery +=" AND " + qSearch[i];
+			else if(qSearch[i] != null){
+				condition +=" AND " + qSearch[i];
+				sqlValues.add(qValues[i]);
 			}
 		}
-		sqlQuery += ")";
 		
-		// Gather the response from the SQL Query and being to output to user.
+		// A date range searched alone is found in the in-memory index, and only those players
+		// are read. With another field, or when the range holds many players, reading them by
+		// PID could take a query for every few candidates, so the range goes in the condition
+		// instead and the database finds the matches in one pass.
+		int[] candidates = null;
+		boolean ranged = qRanges[7] != null || qRanges[8] != null;
+		if(ranged && condition == null){
+			if(qRanges[7] != null){
+				candidates = dateIndex.range(PlayerDateIndex.Field.BIRTHDAY, qRanges[7][0], qRanges[7][1]);
+			}
+			if(qRanges[8] != null){
+				int[] created = dateIndex.range(PlayerDateIndex.Field.CREATED, qRanges[8][0], qRanges[8][1]);
+				candidates = candidates == null ? created : PlayerDateIndex.intersect(candidates, created);
+			}
+		}
+		if(ranged && (candidates == null || candidates.length > LOOKUP_MAX_CANDIDATES)){
+			candidates = null;
+			String[] columns = {"Birthday", "Datecreated"};
+			for(int i = 7; i<=8; i++){
+				String range = qRanges[i] == null ? null : rangeCondition(columns[i - 7], qRanges[i], sqlValues);
+				if(range != null){
+					condition = condition == null ? range : condition + " AND " + range;
+				}
+			}
+		}
+		
+		// A lookup by PID alone is answered from the cache.
+		if("PID = ?".equals(condition) && candidates == null && qValues[0].trim().matches("\\d{1,9}")){
+			try {
+				String[] player = playerCache.get(Integer.parseInt(qValues[0].trim()));
+				if(player == null){
+					System.out.println("No records exist for your specifications. Try again with a coarser search.");
+					System.out.println("Perhaps your input was incorrect in some way?");
+				}
+				else{
+					Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+					PlayerPager.writePlayer(out, player);
+					out.flush();
+				}
+			} catch (SQLException sqlE) {
+				System.err.println("Cannot execute the query please try again.");
+			} catch (IOException ioE) {
+				System.err.println("Could not show the results: " + ioE.getMessage());
+			}
+			return;
+		}
+		
+		// Show the matches a page at a time so that a coarse search does not print the whole table.
+		PlayerPager pager = new PlayerPager(pool, condition, sqlValues.toArray(), candidates, LOOKUP_PAGE_SIZE, LOOKUP_FETCH_SIZE);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
 		try {
-			sqlResponse = executeQuery(sqlQuery);
+			long start = System.nanoTime();
+			int rows = pager.nextPage(out);
+			// Record which fields were searched in the database, for the index advisor.
+			if(!ranged){
+				int mask = 0;
+				for(int i = 0; i<qSearch.length; i++){
+					if(qSearch[i] != null){
+						mask |= 1 << i;
+					}
+				}
+				advisor.record(mask, sqlValues.toArray(), System.nanoTime() - start);
+			}
+			while(rows > 0 && pager.hasMore()){
+				System.out.println("Showing players 1 to " + pager.getShown() + ". Press Enter for more, or q to stop: ");
+				if(input.nextLine().trim().equalsIgnoreCase("q")){
+					break;
+				}
+				rows = pager.nextPage(out);
+			}
 			
 			// If we didn't return any records, it means non exist.
-			if(!sqlResponse.next() || sqlResponse == null){
+			if(pager.getShown() == 0){
 				System.out.println("No records exist for your specifications. Try again with a coarser search.");
 				System.out.println("Perhaps your input was incorrect in some way?");
-			}	
-			// Otherwise we show the user what the records return.
-			else{
-				do{
-				int pid = sqlResponse.getInt(1);
-				String gender = sqlResponse.getString(2);
-				String lname = sqlResponse.getString(3);
-				String fname = sqlResponse.getString(4);
-				String addr = sqlResponse.getString(5);
-				String phone = sqlResponse.getString(6);
-				String email = sqlResponse.getString(7);
-				String birthday = sqlResponse.getString(8);
-				String created = sqlResponse.getString(9);
-				
-				System.out.println("PID :" + pid);
-				System.out.println("Gender :" + gender);
-				System.out.println("Last Name :" + lname);
-				System.out.println("First Name :" + fname);
-				System.out.println("Address :" + addr);
-				System.out.println("Phone Number :" + phone);
-				System.out.println("Email :" + email);
-				System.out.println("Birthday :" + birthday);
-				System.out.println("Created :" + created);
-				System.out.println("-----");
-			}while(sqlResponse.next());
+				if(!ranged){
+					suggestSimilar(condition, qValues);
+				}
 			}
 		// If something didn't work along the way, we catch it.
 		} catch (SQLException sqlE) {
 			System.err.println("Cannot execute the query please try again.");
+		} catch (IOException ioE) {
+			System.err.println("Could not show the results: " + ioE.getMessage());
 		}
 		}
 	}
 	
+	/**
+	 * Reads a date range typed as FROM..TO, where either date may be left out for a
+	 * range without a start or an end.
+	 * @param text - The range typed by the user.
+	 * @return The first and last day of the range in days since 1970-01-01, or null if it is not valid.
+	 */
+	private static int[] parseDateRange(String text){
+		String[] ends = text.trim().split("\\.\\.", -1);
+		try {
+			if(ends.length != 2){
+				throw new IllegalArgumentException();
+			}
+			int from = ends[0].trim().isEmpty() ? Integer.MIN_VALUE : PlayerDateIndex.epochDay(ends[0]);
+			int to = ends[1].trim().isEmpty() ? Integer.MAX_VALUE : PlayerDateIndex.epochDay(ends[1]);
+			return new int[] { from, to };
+		} catch (IllegalArgumentException e) {
+			System.out.println("The range must be YYYY-MM-DD..YYYY-MM-DD, with either date left out for no limit.");
+			return null;
+		}
+	}
+	
+	/**
+	 * Turns a date range into a condition on a column.
+	 * @param column - The date column.
+	 * @param range - First and last day of the range, as returned by parseDateRange().
+	 * @param values - Values of the condition, to which the dates are added.
+	 * @return The condition, or null if the range has neither a start nor an end.
+	 */
+	private static String rangeCondition(String column, int[] range, List<Object> values){
+		boolean from = range[0] != Integer.MIN_VALUE;
+		boolean to = range[1] != Integer.MAX_VALUE;
+		if(from){
+			values.add(PlayerDateIndex.toDate(range[0]));
+		}
+		if(to){
+			values.add(PlayerDateIndex.toDate(range[1]));
+		}
+		if(from && to){
+			return column + " BETWEEN ? AND ?";
+		}
+		return from ? column + " >= ?" : to ? column + " <= ?" : null;
+	}
+	
+	/**
+	 * After a lookup by last name, first name or address alone found nothing, shows the
+	 * players whose value is closest to what was typed, in case it was misspelled.
+	 * @param condition - The search condition of the lookup.
+	 * @param qValues - The values searched for, by field.
+	 */
+	private void suggestSimilar(String condition, String[] qValues){
+		PlayerFuzzyIndex.Field field;
+		String value;
+		if("Lname = ?".equals(condition)){
+			field = PlayerFuzzyIndex.Field.LAST_NAME;
+			value = qValues[2];
+		}
+		else if("Fname = ?".equals(condition)){
+			field = PlayerFuzzyIndex.Field.FIRST_NAME;
+			value = qValues[3];
+		}
+		else if("Address = ?".equals(condition)){
+			field = PlayerFuzzyIndex.Field.ADDRESS;
+			value = qValues[4];
+		}
+		else{
+			return;
+		}
+		
+		List<PlayerFuzzyIndex.Match> matches = fuzzyIndex.search(field, value, FUZZY_LIMIT);
+		if(!matches.isEmpty()){
+			System.out.println("Did you mean one of these players?");
+			System.out.println("PID        NAME                                ADDRESS");
+			for(PlayerFuzzyIndex.Match match : matches){
+				System.out.println(String.format("%-10d %-35s %s", match.getPid(),
+						match.getFirstName() + " " + match.getLastName(), match.getAddress()));
+			}
+		}
+	}
+	
+	/**
+	 * Suggests players as the user types the start of a last name, first name, email or
+	 * phone number, from the in-memory search index. Each entry narrows or changes the
+	 * search until an empty line is entered.
+	 */
+	private void typeAheadSearch(){
+		Scanner input = new Scanner(System.in);
+		System.out.println("Type the start of a last name, first name, email or phone number (empty line to stop): ");
+		String prefix = input.nextLine();
+		while(!prefix.trim().isEmpty()){
+			long start = System.nanoTime();
+			List<Integer> pids = searchIndex.search(prefix, TYPE_AHEAD_LIMIT);
+			long micros = (System.nanoTime() - start) / 1000;
+			
+			if(pids.isEmpty()){
+				System.out.println("No players start with \"" + prefix.trim() + "\".");
+			}
+			else{
+				System.out.println("PID        NAME                                EMAIL                                              PHONE");
+				for(int pid : pids){
+					String[] player = searchIndex.getPlayer(pid);
+					System.out.println(String.format("%-10d %-35s %-50s %s", pid, player[1] + " " + player[0], player[2], player[3]));
+				}
+			}
+			System.out.println("(" + pids.size() + " shown in " + micros + " us, use option 1 with a PID for the full record)");
+			System.out.println("Refine the search (empty line to stop): ");
+			prefix = input.nextLine();
+		}
+	}
+	
 	/**
 	 * Adds a new record to the database based on the user's choice of either the Player, Coordinator
 	 * or Official category.
@@ -425,6 +857,7 @@ public class DatabaseUI {
 				System.out.println("1 - Player");
 				System.out.println("2 - Official");
 				System.out.println("3 - Coordinator");
+				System.out.println("4 - Bulk import from a CSV file");
 				
 				// We make sure that the user puts the correct input - an integer
 				System.out.print("Make your selection: ");
@@ -565,12 +998,14 @@ public class DatabaseUI {
 						newPlayer[8] = "" + dateFormat.format(date);
 						
 						
-						sqlQuery = "INSERT INTO Player VALUES ("+ Integer.parseInt(newPlayer[0]) +
-								",'"+newPlayer[1]+"','"+newPlayer[2]+"','"+newPlayer[3]+"','"+newPlayer[4]+
-								"','"+newPlayer[5]+"','"+newPlayer[6]+"','"+newPlayer[7]+"','"+newPlayer[8]+
-								"')";
+						sqlQuery = "INSERT INTO Player VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 						
-						if(executeUpdate(sqlQuery)){
+						if(executeUpdate(sqlQuery, Integer.parseInt(newPlayer[0]), newPlayer[1], newPlayer[2],
+								newPlayer[3], newPlayer[4], newPlayer[5], newPlayer[6], newPlayer[7], newPlayer[8])){
+							playerCache.invalidate(Integer.parseInt(newPlayer[0]));
+							searchIndex.add(Integer.parseInt(newPlayer[0]), newPlayer[2], newPlayer[3], newPlayer[6], newPlayer[5]);
+							fuzzyIndex.add(Integer.parseInt(newPlayer[0]), newPlayer[2], newPlayer[3], newPlayer[4]);
+							dateIndex.add(Integer.parseInt(newPlayer[0]), newPlayer[7], newPlayer[8]);
 							System.out.println("Entered a new Player successfully.");
 						}
 						else{
@@ -726,12 +1161,12 @@ public class DatabaseUI {
 						newOfficial[8] = "" + dateFormat.format(date);
 					
 						
-						sqlQuery = "INSERT INTO Official VALUES ("+ Integer.parseInt(newOfficial[0]) +
-								",'"+newOfficial[1]+"','"+newOfficial[2]+"','"+newOfficial[3]+"','"+newOfficial[4]+
-								"','"+newOfficial[5]+"','"+newOfficial[6]+"','"+newOfficial[7]+"','"+newOfficial[8]+
-								"',"+newOfficial[9]+")";
+						sqlQuery = "INSERT INTO Official VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 						
-						if(executeUpdate(sqlQuery)){
+						if(executeUpdate(sqlQuery, Integer.parseInt(newOfficial[0]), newOfficial[1], newOfficial[2],
+								newOfficial[3], newOfficial[4], newOfficial[5], newOfficial[6], newOfficial[7], newOfficial[8],
+								Integer.parseInt(newOfficial[9]))){
+							officialCache.invalidate(Integer.parseInt(newOfficial[0]));
 							System.out.println("Entered a new Official successfully.");
 						}
 						else{
@@ -884,12 +1319,12 @@ public class DatabaseUI {
 						newCoordinator[8] = "" + dateFormat.format(date);
 					
 						
-						sqlQuery = "INSERT INTO Coordinator VALUES ("+ Integer.parseInt(newCoordinator[0]) +
-								",'"+newCoordinator[1]+"','"+newCoordinator[2]+"','"+newCoordinator[3]+"','"+newCoordinator[4]+
-								"','"+newCoordinator[5]+"','"+newCoordinator[6]+"','"+newCoordinator[7]+"','"+newCoordinator[8]+
-								"',"+newCoordinator[9]+")";
+						sqlQuery = "INSERT INTO Coordinator VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 						
-						if(executeUpdate(sqlQuery)){
+						if(executeUpdate(sqlQuery, Integer.parseInt(newCoordinator[0]), newCoordinator[1], newCoordinator[2],
+								newCoordinator[3], newCoordinator[4], newCoordinator[5], newCoordinator[6], newCoordinator[7], newCoordinator[8],
+								Integer.parseInt(newCoordinator[9]))){
+							coordinatorCache.invalidate(Integer.parseInt(newCoordinator[0]));
 							System.out.println("Entered a new Coordinator successfully.");
 						}
 						else{
@@ -898,12 +1333,106 @@ public class DatabaseUI {
 									
 					}
 				}
+				else if(userInput == 4){
+					bulkImport();
+				}
 				else{
 					System.out.println("That was an inappropriate choice. Please try again.");
 				}
 				//input.close();
 	}
 	
+	/**
+	 * Imports many players, officials or coordinators at once from a CSV file with one
+	 * record per line. Lines that are not valid or whose ID already exists are written to a
+	 * reject file instead of stopping the import.
+	 */
+	private void bulkImport(){
+		Scanner input = new Scanner(System.in);
+		RecordType type;
+		
+		System.out.println("What type of records does the file contain?");
+		System.out.println("1 - Player");
+		System.out.println("2 - Official");
+		System.out.println("3 - Coordinator");
+		System.out.print("Make your selection: ");
+		try {
+			int selection = input.nextInt();
+			if(selection < 1 || selection > 3){
+				System.out.println("That was an inappropriate choice. Back to main menu.");
+				return;
+			}
+			type = RecordType.values()[selection - 1];
+		} catch (InputMismatchException inputE) {
+			System.out.println("Please enter the menu item as an integer. Back to main menu.");
+			return;
+		}
+		
+		input = new Scanner(System.in);
+		System.out.println("Each line holds: ID, gender, last name, first name, address, phone number, email, birthday"
+				+ (type == RecordType.PLAYER ? "" : ", salary"));
+		System.out.println("Enter the path of the CSV file: ");
+		File file = new File(input.nextLine().trim());
+		if(!file.isFile()){
+			System.out.println("The file " + file.getPath() + " does not exist. Back to main menu.");
+			return;
+		}
+		
+		System.out.println("Commit after how many records? [5000]: ");
+		int commitInterval = 5000;
+		String textInput = input.nextLine().trim();
+		if(!textInput.isEmpty()){
+			try {
+				commitInterval = Integer.parseInt(textInput);
+			} catch (NumberFormatException e) {
+				System.out.println("Not valid input. Using 5000.");
+			}
+			if(commitInterval < 1){
+				commitInterval = 5000;
+			}
+		}
+		
+		System.out.println("Use the multi-threaded pipeline for a large file? [y/n]: ");
+		boolean pipelined = input.nextLine().trim().equalsIgnoreCase("y");
+		
+		File rejects = new File(file.getPath() + ".rejects.csv");
+		// The importers stamp the players with the date they start on.
+		String since = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+		try {
+			if(pipelined){
+				new ImportPipeline(pool, type, commitInterval).importFile(file, rejects);
+			}
+			else{
+				new BulkImporter(pool, type, commitInterval).importFile(file, rejects);
+			}
+		} catch (IOException ioE) {
+			System.err.println("Could not read or write the files: " + ioE.getMessage());
+		} catch (SQLException sqlE) {
+			System.err.println("The import stopped, records committed so far were kept. sqlState: " + sqlE.getSQLState());
+		} finally {
+			// Any of the ids may now exist, including ones cached as missing.
+			recordCache(type).clear();
+			if(type == RecordType.PLAYER){
+				indexImportedPlayers(since);
+			}
+		}
+	}
+	
+
+	/**
+	 * @param type - Kind of record.
+	 * @return The cache of the rows of that kind.
+	 */
+	private static RowCache recordCache(RecordType type){
+		switch (type) {
+		case OFFICIAL:
+			return officialCache;
+		case COORDINATOR:
+			return coordinatorCache;
+		default:
+			return playerCache;
+		}
+	}
 
 	/**
 	 * Presents the user with all of the upcoming games and allows the user to
@@ -919,6 +1448,8 @@ public class DatabaseUI {
 		Scanner input = new Scanner(System.in);
 		// Each query will have a spot in the array in case there are multiples
 		ArrayList<String> Dates = new ArrayList<String>();
+		// Time, date, sport, level and teams of each game listed, in the same order as Dates.
+		ArrayList<String[]> games = new ArrayList<String[]>();
 		// The SQL query which will be executed.
 		String sqlQuery = "";
 		// The response to be received.
@@ -939,12 +1470,11 @@ public class DatabaseUI {
 		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 		Date date = new Date();
 
-		sqlQuery += "Select gdate, gtime, sport, llevel, name1, name2 from HasTeams where gdate > '"
-				+ dateFormat.format(date) + "'";
+		sqlQuery += "Select gdate, gtime, sport, llevel, name1, name2 from HasTeams where gdate > ?";
 
 		// Gather the response from the SQL Query and being to output to user.
 		try {
-			sqlResponse = executeQuery(sqlQuery);
+			sqlResponse = executeQuery(sqlQuery, dateFormat.format(date));
 
 			// If we didn't return any records, it means non exist.
 			if (!sqlResponse.next()) {
@@ -966,6 +1496,7 @@ public class DatabaseUI {
 					String level = sqlResponse.getString(4);
 					team1 = sqlResponse.getString(5);
 					team2 = sqlResponse.getString(6);
+					games.add(new String[] { gameTime, gameDate, sport, level, team1, team2 });
 
 					// Begin output to use, since we know that there must be at
 					// least one game.
@@ -994,6 +1525,7 @@ public class DatabaseUI {
 					.println("Would you like to delete or move an existing game from above?");
 			System.out.println("1 - Delete Game");
 			System.out.println("2 - Move Game");
+			System.out.println("3 - Move every game in a date range");
 			System.out.println("Make your selection: ");
 
 			try {
@@ -1011,12 +1543,16 @@ public class DatabaseUI {
 					// If the date is valid continue
 					if (Dates.contains(dateInput)) {
 
-						sqlQuery = "Delete from Game where gdate = '"
-								+ dateInput + "'";
+						sqlQuery = "Delete from Game where gdate = ?";
 
 						// Try to do the deletion and report
-						if (executeUpdate(sqlQuery)) {
+						if (executeUpdate(sqlQuery, dateInput)) {
 							System.out.println("Deleted game successfully.");
+							for (String[] deleted : games) {
+								if (deleted[1].equals(dateInput)) {
+									bookings.remove(deleted);
+								}
+							}
 
 							int messageID = 0;
 
@@ -1048,15 +1584,14 @@ public class DatabaseUI {
 												+ team2
 												+ " was cancelled.");
 
-								sqlQuery = "Insert into Announcement values ("
-										+ messageID
-										+ ",'Captains, your upcoming game for "
-										+ gameDate + " between " + team1
-										+ " and " + team2
-										+ " was cancelled', '"
-										+ dateFormat.format(date) + "')";
+								sqlQuery = "Insert into Announcement values (?, ?, ?)";
 
-								if (executeUpdate(sqlQuery)) {
+								if (executeUpdate(sqlQuery, messageID,
+										"Captains, your upcoming game for "
+												+ gameDate + " between " + team1
+												+ " and " + team2
+												+ " was cancelled",
+										dateFormat.format(date))) {
 									System.out
 											.println("Message sent successfully.");
 								}
@@ -1111,198 +1646,71 @@ public class DatabaseUI {
 							// If it matches the time format, carry on
 							if (matcher2.matches()) {
 
-								sqlQuery = "Select * from hasteams where gdate = '"
-										+ dateInput + "'";
+								// The first game listed on that date is moved.
+								String[] game = games.get(Dates.indexOf(dateInput));
 
-								try {
-									ResultSet a = executeQuery(sqlQuery);
-
-									if (!a.next() || a == null) {
-										System.out
-												.println("Couldn't load the information on the game...");
+								// Let the user try other slots until one is free for the league,
+								// the teams and the officials.
+								List<String> conflicts = bookings.conflicts(game, newDate, newTime + ":00");
+								while (!conflicts.isEmpty()) {
+									System.out.println("The game cannot move to " + newDate + " at " + newTime + ":");
+									for (String conflict : conflicts) {
+										System.out.println("  " + conflict);
+									}
+									System.out
+											.println("Enter another date to reschedule the game (YYYY-MM-DD), or leave empty to return to main: ");
+									String otherDate = input.nextLine().trim();
+									if (otherDate.isEmpty()) {
+										return;
+									}
+									System.out
+											.println("Enter another time to reschedule the game (HH:MM): ");
+									String otherTime = input.nextLine().trim();
+									if (pattern.matcher(otherDate).matches() && pattern2.matcher(otherTime).matches()) {
+										newDate = otherDate;
+										newTime = otherTime;
+										conflicts = bookings.conflicts(game, newDate, newTime + ":00");
 									} else {
+										System.out.println("The date or time is not valid.");
+									}
+								}
 
-										String Sport = a.getString(3);
-										String Llevel = a.getString(4);
-										String Name1 = a.getString(5);
-										String Syear1 = a.getString(6);
-										String Sport1 = a.getString(7);
-										String Llevel1 = a.getString(8);
-										String Name2 = a.getString(9);
-										String Syear2 = a.getString(10);
-										String Sport2 = a.getString(11);
-										String Llevel2 = a.getString(12);
-
-										// We construct the insert for game
-										// based on what we got from the
-										// hasteams table
-										sqlQuery = "Insert into Game values ('"
-												+ newTime + ":00', '" + newDate
-												+ "', '" + Sport + "' , '"
-												+ Llevel + "')";
-
-										if (executeUpdate(sqlQuery)) {
-											System.out
-													.println("Added new game successfully to Games.");
-
-										} else {
-											System.out
-													.println("Could not add new game to Games.");
-										}
-
-										// Insert the new game into hasteams
-										sqlQuery = "Insert into HasTeams values ('"
-												+ newTime
-												+ ":00', '"
-												+ newDate
-												+ "', '"
-												+ Sport
-												+ "','"
-												+ Llevel
-												+ "', '"
-												+ Name1
-												+ "', "
-												+ Syear1
-												+ ", '"
-												+ Sport1
-												+ "', '"
-												+ Llevel1
-												+ "', '"
-												+ Name2
-												+ "', "
-												+ Syear2
-												+ ", '"
-												+ Sport2
-												+ "', '" + Llevel2 + "') ";
-
-										if (executeUpdate(sqlQuery)) {
-											System.out
-													.println("Added teams and new game successfully to HasTeams.");
-
-											// We would like to assign the same
-											// official to the new game, giving
-											// him/her the same role
-											sqlQuery = "Select * from Officiates where gdate = '"
-													+ a.getString(2)
-													+ "' and gtime = '"
-													+ a.getString(1) + "'";
-											ResultSet b = executeQuery(sqlQuery);
-
-											if (!b.next() || b == null) {
-												System.out
-														.println("Couldn't load the information on the officials...");
-											} else {
-
-												String oid = b.getString(1);
-												String ofSport = b.getString(4);
-												String ofLevel = b.getString(5);
-												String role = b.getString(6);
-
-												sqlQuery = "Insert into Officiates values ("
-														+ oid
-														+ ", '"
-														+ newTime
-														+ ":00' , '"
-														+ newDate
-														+ "', '"
-														+ ofSport
-														+ "', '"
-														+ ofLevel
-														+ "', '" + role + "')";
-
-												if (executeUpdate(sqlQuery)) {
-													System.out
-															.println("Added new official information to new game. ");
-
-													System.out
-															.println("Moved game to "
-																	+ newDate
-																	+ " at "
-																	+ newTime);
-
-													sqlQuery = "Delete from Game where gdate = '"
-															+ dateInput + "'";
-													if (executeUpdate(sqlQuery)) {
-														System.out
-																.println("Deleted old game successfully.");
-
-														int messageID = 0;
-
-														input = new Scanner(
-																System.in);
-														System.out
-																.println("Input a message ID [between 1000000 and 2000000]: ");
-														try {
-															int tempMsgID = input
-																	.nextInt();
-															if (tempMsgID > 1000000
-																	&& tempInput < 2000000) {
-																messageID = tempMsgID;
-															} else {
-																System.out
-																		.println("Not valid input. Back to main menu.");
-															}
-														} catch (InputMismatchException inputE) {
-															System.out
-																	.println("Not valid input. Message id's are integers only. Back to main menu.");
-														}
-
-														if (messageID > 0) {
-															System.out
-																	.println("The following message was sent:");
-															System.out
-																	.println("Captains, your upcoming game for "
-																			+ gameDate
-																			+ " between "
-																			+ team1
-																			+ " and "
-																			+ team2
-																			+ " was cancelled.");
-
-															sqlQuery = "Insert into Announcement values ("
-																	+ messageID
-																	+ ",'Captains, your upcoming game for "
-																	+ gameDate
-																	+ " between "
-																	+ team1
-																	+ " and "
-																	+ team2
-																	+ " was moved to "
-																	+ newDate
-																	+ " at "
-																	+ newTime
-																	+ ".' , '"
-																	+ dateFormat
-																			.format(date)
-																	+ "')";
-
-															if (executeUpdate(sqlQuery)) {
-																System.out
-																		.println("Message sent successfully.");
-															}
-														}
-													} else {
-														System.out
-																.println("Could not delete old game.");
-													}
-
-												} else {
-													System.out
-															.println("Could not add new official information.");
-												}
-
-											}
+								int messageID = 0;
+								System.out
+										.println("Input a message ID [between 1000000 and 2000000]: ");
+								try {
+									int tempMsgID = Integer.parseInt(input.nextLine().trim());
+									if (tempMsgID > 1000000 && tempMsgID < 2000000) {
+										messageID = tempMsgID;
+									} else {
+										System.out
+												.println("Not valid input. Back to main menu.");
+									}
+								} catch (NumberFormatException numberE) {
+									System.out
+											.println("Not valid input. Message id's are integers only. Back to main menu.");
+								}
 
-										} else {
+								if (messageID > 0) {
+									// The game, its teams and officials and the announcement are
+									// changed together, or not at all.
+									try {
+										int officials = rescheduler.move(game, newDate, newTime + ":00", messageID);
+										bookings.move(game, newDate, newTime + ":00");
+										System.out.println("Moved game to " + newDate + " at " + newTime
+												+ " with its teams and " + officials + " officials.");
+										System.out.println("The following message was sent:");
+										System.out.println("Captains, your upcoming game for " + game[1]
+												+ " between " + game[4] + " and " + game[5]
+												+ " was moved to " + newDate + " at " + newTime + ":00.");
+									} catch (SQLException sqlE) {
+										if ("23505".equals(sqlE.getSQLState())) {
 											System.out
-													.println("Could not add new game to HasTeams.");
+													.println("Another game of this league is already at that time, or the message ID is taken.");
 										}
-
+										System.out.println("Could not move the game, nothing was changed. sqlState: "
+												+ sqlE.getSQLState());
 									}
-								} catch (SQLException sqlE) {
-									System.err
-											.println("Cannot execute the query please try again.");
-									System.out.println(sqlE.toString());
 								}
 
 							} else {
@@ -1319,6 +1727,8 @@ public class DatabaseUI {
 								.println("That wasn't one of the upcoming games. Back to main menu.");
 					}
 
+				} else if (tempInput == 3) {
+					shiftGames();
 				} else {
 					System.out.println("Not valid input. Back to main menu.");
 				}
@@ -1330,6 +1740,75 @@ public class DatabaseUI {
 
 	}
 	
+	/**
+	 * Moves every game between two dates, of every league or of one league only, by a number
+	 * of days, to another time, or both, and tells every captain playing in them.
+	 */
+	private void shiftGames(){
+		Scanner input = new Scanner(System.in);
+		final Pattern datePattern = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}$");
+		final Pattern timePattern = Pattern.compile("([01]?[0-9]|2[0-3]):[0-5][0-9]");
+		
+		System.out.println("First date of the games to move (YYYY-MM-DD): ");
+		String from = input.nextLine().trim();
+		System.out.println("Last date of the games to move (YYYY-MM-DD): ");
+		String to = input.nextLine().trim();
+		if(!datePattern.matcher(from).matches() || !datePattern.matcher(to).matches()){
+			System.out.println("The date is not valid. Returning to main.");
+			return;
+		}
+		System.out.println("Sport of the games to move, leave empty for every sport: ");
+		String sport = input.nextLine().trim();
+		System.out.println("League level of the games to move, leave empty for every level: ");
+		String level = input.nextLine().trim();
+		
+		int days;
+		int firstMsgid;
+		try {
+			System.out.println("Days to move the games by, negative for earlier, 0 to keep their dates: ");
+			days = Integer.parseInt(input.nextLine().trim());
+			System.out.println("Time to move the games to (HH:MM), leave empty to keep their times: ");
+			String time = input.nextLine().trim();
+			if(!time.isEmpty() && !timePattern.matcher(time).matches()){
+				System.out.println("The time is not valid. Returning to main.");
+				return;
+			}
+			if(days == 0 && time.isEmpty()){
+				System.out.println("The games would not move. Returning to main.");
+				return;
+			}
+			System.out.println("First message ID, one is used for each captain [between 1000000 and 2000000]: ");
+			firstMsgid = Integer.parseInt(input.nextLine().trim());
+			if(firstMsgid <= 1000000 || firstMsgid >= 2000000){
+				System.out.println("Not valid input. Back to main menu.");
+				return;
+			}
+			
+			GameRescheduler.Shift shift = rescheduler.shift(from, to, sport.isEmpty() ? null : sport,
+					level.isEmpty() ? null : level, days, time.isEmpty() ? null : time + ":00", firstMsgid);
+			if(shift.getGames() == 0){
+				System.out.println("There are no games to move in that range.");
+			} else {
+				loadBookings();
+				System.out.println("Moved " + shift.getGames() + " games with their teams and officials.");
+				if(shift.getAnnouncements() > 0){
+					System.out.println("Sent " + shift.getAnnouncements() + " announcements to the captains, message IDs "
+							+ firstMsgid + " to " + (firstMsgid + shift.getAnnouncements() - 1) + ".");
+				}
+			}
+		} catch (NumberFormatException numberE) {
+			System.out.println("Not valid input. Integers only. Back to main menu.");
+		} catch (SQLException sqlE) {
+			if("23505".equals(sqlE.getSQLState()) || "23513".equals(sqlE.getSQLState())
+					|| "42727".equals(sqlE.getSQLState())){
+				// Made by the rescheduler to name the slot taken, the message IDs needed or the tablespace missing.
+				System.out.println(sqlE.getMessage() + " No games were moved.");
+			} else {
+				System.out.println("Could not move the games, nothing was changed. sqlState: " + sqlE.getSQLState());
+			}
+		}
+	}
+	
 	/**Searches for a player to promote to captain
 	 * 
 	 */
@@ -1371,8 +1850,7 @@ public class DatabaseUI {
 				try
 				{
 					do{
-					sqlResponse = executeQuery("SELECT P.pid FROM Player P WHERE P.pid=" + userInput +" AND P.pid not in (SELECT C.cptnid FROM Captain C)");
-					validSelection = sqlResponse.next();
+					validSelection = playerCache.get(userInput) != null && captainCache.get(userInput) == null;
 					
 						if(!validSelection && userInput != 0)
 						{
@@ -1443,9 +1921,10 @@ public class DatabaseUI {
 						}
 						cptnInfo[5] = textInput;
 						
-						sqlQuery = ("INSERT INTO Captain VALUES (" + cptnInfo[0] + ", '" + cptnInfo[1] + "', '" +
-									cptnInfo[2] + "', '" + cptnInfo[3] + "', '" + cptnInfo[4] + "', '" + cptnInfo[5] + "')");
-						if(executeUpdate(sqlQuery)){
+						sqlQuery = "INSERT INTO Captain VALUES (?, ?, ?, ?, ?, ?)";
+						if(executeUpdate(sqlQuery, Integer.parseInt(cptnInfo[0]), cptnInfo[1], cptnInfo[2], cptnInfo[3],
+								cptnInfo[4], cptnInfo[5])){
+							captainCache.invalidate(userInput);
 							System.out.println("Player successfully promoted.");
 						}
 						else{
@@ -1514,9 +1993,7 @@ public class DatabaseUI {
 				try
 				{
 					do{
-					sqlResponse = executeQuery("SELECT cid FROM Coordinator  WHERE cid=" + userInput);
-					sqlResponse2 = executeQuery("SELECT oid FROM Official WHERE oid=" + userInput);
-					validSelection = sqlResponse.next() || sqlResponse2.next();
+					validSelection = coordinatorCache.get(userInput) != null || officialCache.get(userInput) != null;
 					
 						if(!validSelection && userInput != 0)
 						{
@@ -1598,58 +2075,35 @@ public class DatabaseUI {
 							doubInput = input.nextDouble();
 						}
 
-						if(coord)
+						// The change is applied to the salary stored at the time of the update, never to a
+						// cached copy, so that a change made elsewhere in the meantime is not lost.
+						String column = coord ? "yearlysal" : "hourlysal";
+						String update = "UPDATE " + (coord ? "Coordinator" : "Official") + " SET " + column + " = " + column;
+						String key = coord ? " WHERE cid = ?" : " WHERE oid = ?";
+						String sign = increase ? " + " : " - ";
+						if(flat)
 						{
-							sqlResponse = executeQuery("SELECT yearlysal FROM Coordinator WHERE cid =" + id);
-							sqlResponse.next();
-							salary = sqlResponse.getInt(1);
+							execution = executeUpdate(update + sign + "?" + key,
+									(int)Math.round(doubInput), id);
 						}
 						else
 						{
-							sqlResponse2 = executeQuery("SELECT hourlysal FROM Official WHERE oid =" + id);
-							sqlResponse2.next();
-							salary = sqlResponse2.getInt(1);
-						}
-						
-						if(flat)
-						{
-							if(increase)
-							{
-								salary = salary + (int)Math.round(doubInput);
-								if(coord)
-									execution = executeUpdate("UPDATE Coordinator SET yearlysal =" + salary + " WHERE cid = " + id);
-								else
-									execution = executeUpdate("UPDATE Official SET hourlysal =" + salary + " WHERE oid = " + id);
-							}
-							else
-							{
-								salary = salary - (int)Math.round(doubInput);
-								if(coord)
-									execution = executeUpdate("UPDATE Coordinator SET yearlysal =" + salary + " WHERE cid = " + id);
-								else
-									execution = executeUpdate("UPDATE Official SET hourlysal =" + salary + " WHERE oid = " + id);
-							}
+							execution = executeUpdate(update + sign + "CAST(ROUND(" + column
+									+ " * CAST(? AS DOUBLE), 0) AS INTEGER)" + key, doubInput/100, id);
 						}
+						//Determines if the update was successful or not.
+						if(coord)
+							coordinatorCache.invalidate(id);
 						else
+							officialCache.invalidate(id);
+						String[] employee = coord ? coordinatorCache.get(id) : officialCache.get(id);
+						if(employee == null)
 						{
-							if(increase)
-							{
-								salary = salary + (int)Math.round(salary * (doubInput/100));
-								if(coord)
-									execution = executeUpdate("UPDATE Coordinator SET yearlysal =" + salary + " WHERE cid = " + id);
-								else
-									execution = executeUpdate("UPDATE Official SET hourlysal =" + salary + " WHERE oid = " + id);
-							}
-							else
-							{
-								salary = salary - (int)Math.round(salary * (doubInput/100));
-								if(coord)
-									execution = executeUpdate("UPDATE Coordinator SET yearlysal =" + salary + " WHERE cid = " + id);
-								else
-									execution = executeUpdate("UPDATE Official SET hourlysal =" + salary + " WHERE oid = " + id);
-							}
+							System.out.println("This employee no longer exists.");
+							return;
 						}
-						//Determines if the update was successful or not.
+						salary = Integer.parseInt(employee[9].trim());
+						
 						if(execution){
 							if(coord)
 								System.out.println("Salary successfully updated. New salary = $" + salary + "/year");
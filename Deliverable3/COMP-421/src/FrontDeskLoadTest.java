@@ -0,0 +1,432 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates many front desk clerks working at once. Each session repeatedly
+ * picks one of the menu options 1 to 5 of DatabaseUI at random, according to
+ * a mix of weights, and runs its statements through FrontDeskOperations, with
+ * all sessions sharing one connection pool as the clerks of one application
+ * would. The sessions start one after another over the ramp-up and then run
+ * for the duration; only operations started after the ramp-up are measured.
+ * The throughput and the p50, p99 and p999 latency of each option are printed
+ * at the end.
+ *
+ * Usage: java FrontDeskLoadTest url username password [sessions] [duration] [ramp-up] [output]
+ *
+ * The duration and ramp-up are in seconds, 60 and 10 by default, with 50
+ * sessions. The results are also written to output as CSV if it is given.
+ * Properties:
+ *   load.mix - Weights of the options, "lookup=50,add=15,promote=5,game=10,salary=20" by default.
+ *   load.scale - Scale of the data generated by LeagueDataGenerator before the run, 1 by default.
+ *   load.generate - Whether to generate the data, true by default. Otherwise it
+ *                   must have been generated at the same scale.
+ *   load.keep - Whether to keep the data afterwards, false by default.
+ *   load.think - Milliseconds a session waits between operations, 0 by default.
+ *   load.connections - Size of the connection pool, the number of sessions by default.
+ *   load.entered - Most people of each kind the sessions enter, 2000 by default.
+ *                  Once they are all used, adding a record does nothing.
+ *
+ * Each session has its own thread. Entered people, moved and deleted games and
+ * announcements all get ids no other session uses, so sessions only compete
+ * for the database, not for keys. This should be run against a scratch copy of
+ * the schema.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class FrontDeskLoadTest {
+
+	/**
+	 * The options of the front desk menu that are simulated, in menu order.
+	 */
+	enum Operation {
+		LOOKUP("lookup"), ADD_RECORD("add"), PROMOTE_CAPTAIN("promote"), MOVE_DELETE_GAME("game"), ALTER_SALARY(
+				"salary");
+
+		private final String label;
+
+		private Operation(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	// Seed of the generated data and of the choices of every session.
+	private static final long SEED = 421;
+	private static final String DEFAULT_MIX = "lookup=50,add=15,promote=5,game=10,salary=20";
+	// Announcements sent by the sessions have ids in this range.
+	private static final int FIRST_MSGID = 1900001;
+	private static final int LAST_MSGID = 1999999;
+	// Most people of each kind entered by the sessions, after the generated ones.
+	private static final int MAX_ENTERED = Integer.getInteger("load.entered", 2000);
+	// Milliseconds between progress reports.
+	private static final long REPORT_INTERVAL = 10000;
+
+	private final FrontDeskOperations operations;
+	private final LeagueDataGenerator generator;
+	// Weight of every operation, by ordinal, and their sum.
+	private final int[] weights;
+	private final int totalWeight;
+	private final long thinkMillis;
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+	private final AtomicLong[] errors = new AtomicLong[Operation.values().length];
+	// Operations run so far, measured or not, for the progress reports.
+	private final AtomicLong finished = new AtomicLong();
+
+	// Next position of an entered person, after the generated ones.
+	private final AtomicInteger nextPlayer = new AtomicInteger();
+	private final AtomicInteger nextOfficial = new AtomicInteger();
+	private final AtomicInteger nextCoordinator = new AtomicInteger();
+	// Players entered by the sessions and not promoted yet.
+	private final ConcurrentLinkedQueue<Integer> promotable = new ConcurrentLinkedQueue<Integer>();
+	// Games are moved from the first generated game up and deleted from the last down.
+	private final AtomicInteger movedGames = new AtomicInteger();
+	private final AtomicInteger deletedGames = new AtomicInteger();
+	private final AtomicInteger nextMsgid = new AtomicInteger(FIRST_MSGID);
+
+	/**
+	 * @param pool - Pool shared by the sessions.
+	 * @param generator - Generator of the data in the database.
+	 * @param mix - Weights of the operations, such as "lookup=50,add=15".
+	 * @param thinkMillis - Milliseconds a session waits between operations.
+	 */
+	public FrontDeskLoadTest(ConnectionPool pool, LeagueDataGenerator generator, String mix, long thinkMillis) {
+		if ((generator.fitsChecks() && generator.getFirstPid() + generator.getPlayers() + MAX_ENTERED >= 260500000)
+				|| LeagueDataGenerator.FIRST_OID + generator.getOfficials() + MAX_ENTERED >= 400000
+				|| LeagueDataGenerator.FIRST_CID + generator.getCoordinators() + MAX_ENTERED >= 550000) {
+			throw new IllegalArgumentException("Too many people entered for this scale.");
+		}
+		this.operations = new FrontDeskOperations(pool);
+		this.generator = generator;
+		this.weights = parseMix(mix);
+		int sum = 0;
+		for (int weight : weights) {
+			sum += weight;
+		}
+		if (sum == 0) {
+			throw new IllegalArgumentException("The mix must give some operation a weight.");
+		}
+		this.totalWeight = sum;
+		this.thinkMillis = thinkMillis;
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+			errors[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Runs the sessions and waits for them to finish, printing the progress.
+	 * @param sessions - Number of clerks working at once.
+	 * @param durationMillis - How long every session runs once all have started.
+	 * @param rampUpMillis - Time over which the sessions start.
+	 * @throws InterruptedException
+	 */
+	public void run(final int sessions, long durationMillis, final long rampUpMillis) throws InterruptedException {
+		final long start = System.nanoTime();
+		final long measureFrom = start + rampUpMillis * 1000000;
+		final long end = measureFrom + durationMillis * 1000000;
+		ExecutorService executor = Executors.newFixedThreadPool(sessions);
+		for (int s = 0; s < sessions; s++) {
+			final int session = s;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(rampUpMillis * session / sessions);
+						runSession(new Random(SEED + session), measureFrom, end);
+					} catch (InterruptedException e) {
+						// Stopped early.
+					}
+				}
+			});
+		}
+		executor.shutdown();
+
+		long lastFinished = 0;
+		while (!executor.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+			long done = finished.get();
+			System.out.println(String.format("  %4d s: %d operations, %.1f/s", (System.nanoTime() - start)
+					/ 1000000000, done, (done - lastFinished) * 1000.0 / REPORT_INTERVAL));
+			lastFinished = done;
+		}
+	}
+
+	/**
+	 * Runs operations until the end, recording those started from measureFrom on.
+	 */
+	private void runSession(Random random, long measureFrom, long end) throws InterruptedException {
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			Operation operation = pick(random);
+			try {
+				run(operation, random);
+				if (now >= measureFrom) {
+					latencies[operation.ordinal()].record(System.nanoTime() - now);
+				}
+			} catch (SQLException e) {
+				if (now >= measureFrom) {
+					errors[operation.ordinal()].incrementAndGet();
+				}
+			}
+			finished.incrementAndGet();
+			if (thinkMillis > 0) {
+				Thread.sleep(thinkMillis);
+			}
+		}
+	}
+
+	private Operation pick(Random random) {
+		int choice = random.nextInt(totalWeight);
+		for (Operation operation : Operation.values()) {
+			choice -= weights[operation.ordinal()];
+			if (choice < 0) {
+				return operation;
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Runs the statements of one menu option with values chosen at random.
+	 */
+	private void run(Operation operation, Random random) throws SQLException {
+		switch (operation) {
+		case LOOKUP:
+			int column = random.nextInt(IndexAdvisor.COLUMNS.length);
+			Object value = generator.playerRow(random.nextInt(generator.getPlayers()))[column];
+			operations.lookup(1 << column, new Object[] { value });
+			break;
+		case ADD_RECORD:
+			int kind = random.nextInt(3);
+			if (kind == 0) {
+				int entered = claimEntered(nextPlayer);
+				if (entered >= 0) {
+					int i = generator.getPlayers() + entered;
+					operations.addRecord(RecordType.PLAYER, generator.playerRow(i));
+					promotable.add(generator.getFirstPid() + i);
+				}
+			} else if (kind == 1) {
+				int entered = claimEntered(nextOfficial);
+				if (entered >= 0) {
+					operations.addRecord(RecordType.OFFICIAL, generator.officialRow(generator.getOfficials() + entered));
+				}
+			} else {
+				int entered = claimEntered(nextCoordinator);
+				if (entered >= 0) {
+					operations.addRecord(RecordType.COORDINATOR,
+							generator.coordinatorRow(generator.getCoordinators() + entered));
+				}
+			}
+			break;
+		case PROMOTE_CAPTAIN:
+			operations.listPromotable();
+			Integer pid = promotable.poll();
+			if (pid != null) {
+				operations.promoteCaptain(pid);
+			}
+			break;
+		case MOVE_DELETE_GAME:
+			operations.listUpcomingGames();
+			boolean move = random.nextBoolean();
+			int game = claimGame(move);
+			if (game >= 0) {
+				if (move) {
+					operations.moveGame(generator.game(game), LeagueDataGenerator.movedTime(game),
+							nextMsgid.getAndIncrement());
+				} else {
+					operations.deleteGame(generator.game(game), nextMsgid.getAndIncrement());
+				}
+			}
+			break;
+		case ALTER_SALARY:
+			operations.listStaff();
+			if (random.nextBoolean()) {
+				operations.changeSalary(true, LeagueDataGenerator.FIRST_CID + random.nextInt(generator.getCoordinators()),
+						1);
+			} else {
+				operations.changeSalary(false, LeagueDataGenerator.FIRST_OID + random.nextInt(generator.getOfficials()),
+						1);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Takes the next position of an entered person, if fewer than MAX_ENTERED were entered.
+	 * @return Position after the generated people, or -1.
+	 */
+	private static int claimEntered(AtomicInteger next) {
+		int entered = next.getAndIncrement();
+		return entered < MAX_ENTERED ? entered : -1;
+	}
+
+	/**
+	 * Takes a generated game that no session has moved or deleted, if any are left
+	 * and there is an announcement id for it.
+	 * @return Position of the game, or -1.
+	 */
+	private int claimGame(boolean move) {
+		synchronized (movedGames) {
+			if (movedGames.get() + deletedGames.get() >= generator.getGames() || nextMsgid.get() > LAST_MSGID) {
+				return -1;
+			}
+			return move ? movedGames.getAndIncrement() : generator.getGames() - 1 - deletedGames.getAndIncrement();
+		}
+	}
+
+	/**
+	 * Prints the throughput and latencies of every operation and of all of them together.
+	 * @param durationMillis - Measured time.
+	 * @param output - CSV file for the results, or null.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void report(long durationMillis, File output) throws IOException {
+		LatencyHistogram all = new LatencyHistogram();
+		long allErrors = 0;
+		String[] lines = new String[Operation.values().length + 1];
+		for (Operation operation : Operation.values()) {
+			LatencyHistogram latency = latencies[operation.ordinal()];
+			all.add(latency);
+			allErrors += errors[operation.ordinal()].get();
+			lines[operation.ordinal()] = line(operation.toString(), latency, errors[operation.ordinal()].get(),
+					durationMillis);
+		}
+		lines[lines.length - 1] = line("all", all, allErrors, durationMillis);
+
+		System.out.println(String.format("%-10s %10s %10s %10s %10s %10s %10s %8s", "OPERATION", "COUNT", "OPS/S",
+				"P50 MS", "P99 MS", "P999 MS", "MAX MS", "ERRORS"));
+		for (String line : lines) {
+			String[] fields = line.split(",");
+			System.out.println(String.format("%-10s %10s %10s %10s %10s %10s %10s %8s", (Object[]) fields));
+		}
+		String[] states = DatabaseMetrics.getDefault().getErrorsBySqlState();
+		if (states.length > 0) {
+			System.out.println("Statement errors by sqlState, including the ramp-up: " + Arrays.toString(states));
+		}
+		if (output != null) {
+			PrintWriter out = new PrintWriter(new FileWriter(output));
+			try {
+				out.println("operation,count,ops_per_s,p50_ms,p99_ms,p999_ms,max_ms,errors");
+				for (String line : lines) {
+					out.println(line);
+				}
+			} finally {
+				out.close();
+			}
+			System.out.println("Results written to " + output);
+		}
+	}
+
+	private static String line(String name, LatencyHistogram latency, long errors, long durationMillis) {
+		return String.format(Locale.ROOT, "%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d", name, latency.getCount(),
+				latency.getCount() * 1000.0 / Math.max(durationMillis, 1), latency.getPercentile(0.5) / 1e6,
+				latency.getPercentile(0.99) / 1e6, latency.getPercentile(0.999) / 1e6, latency.getMax() / 1e6, errors);
+	}
+
+	/**
+	 * @param mix - Weights such as "lookup=50,add=15", operations left out have weight 0.
+	 * @return The weight of every operation, by ordinal.
+	 */
+	static int[] parseMix(String mix) {
+		int[] weights = new int[Operation.values().length];
+		for (String part : mix.split(",")) {
+			String[] pair = part.trim().split("=");
+			Operation found = null;
+			for (Operation operation : Operation.values()) {
+				if (pair.length == 2 && operation.toString().equals(pair[0].trim())) {
+					found = operation;
+					weights[operation.ordinal()] = Integer.parseInt(pair[1].trim());
+				}
+			}
+			if (found == null || weights[found.ordinal()] < 0) {
+				throw new IllegalArgumentException("Not an operation weight: " + part);
+			}
+		}
+		return weights;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java FrontDeskLoadTest url username password [sessions] [duration] "
+					+ "[ramp-up] [output]");
+			System.exit(1);
+		}
+		int sessions = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+		long duration = (args.length > 4 ? Long.parseLong(args[4]) : 60) * 1000;
+		long rampUp = (args.length > 5 ? Long.parseLong(args[5]) : 10) * 1000;
+		File output = args.length > 6 ? new File(args[6]) : null;
+		LeagueDataGenerator generator = new LeagueDataGenerator(Double.parseDouble(System.getProperty("load.scale",
+				"1")), SEED);
+		int connections = Integer.getInteger("load.connections", sessions);
+
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, connections);
+		try {
+			if (Boolean.parseBoolean(System.getProperty("load.generate", "true"))) {
+				PooledConnection connection = pool.borrow();
+				try {
+					SchemaLoader.createSchema(connection.getConnection(), new File(System.getProperty("load.ddl",
+							SchemaLoader.DEFAULT_DDL)), generator.fitsChecks());
+					removeData(connection, generator);
+				} finally {
+					connection.close();
+				}
+				long start = System.nanoTime();
+				long rows = generator.generate(pool, Math.min(connections, Runtime.getRuntime().availableProcessors()));
+				System.out.println("Generated " + rows + " rows in " + (System.nanoTime() - start) / 1000000 + " ms");
+			}
+
+			FrontDeskLoadTest test = new FrontDeskLoadTest(pool, generator, System.getProperty("load.mix",
+					DEFAULT_MIX), Long.getLong("load.think", 0));
+			System.out.println(String.format("Running %d sessions for %d s after a ramp-up of %d s", sessions,
+					duration / 1000, rampUp / 1000));
+			test.run(sessions, duration, rampUp);
+			test.report(duration, output);
+		} finally {
+			try {
+				if (!Boolean.parseBoolean(System.getProperty("load.keep", "false"))) {
+					PooledConnection connection = pool.borrow();
+					try {
+						removeData(connection, generator);
+					} finally {
+						connection.close();
+					}
+				}
+			} finally {
+				pool.close();
+			}
+		}
+	}
+
+	/**
+	 * Removes the generated data, the people entered and the announcements sent by the sessions.
+	 */
+	private static void removeData(PooledConnection connection, LeagueDataGenerator generator) throws SQLException {
+		generator.remove(connection.getConnection(), MAX_ENTERED);
+		Statement statement = connection.getConnection().createStatement();
+		try {
+			statement.executeUpdate("delete from Announcement where msgid between " + FIRST_MSGID + " and "
+					+ LAST_MSGID);
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The statements the front desk application runs for each menu option, without
+ * the console, so that benchmarks and load tests can run them with chosen
+ * values. Each method runs the same statements as DatabaseUI, through the same
+ * connection pool, except that games are found by their whole key instead of
+ * by date only. Unlike DatabaseUI, errors are thrown instead of printed. The
+ * operations are shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class FrontDeskOperations {
+
+	// Players shown per page by the lookup, as in DatabaseUI.
+	public static final int PAGE_SIZE = 20;
+
+	// Recorded under the same names as the statements of DatabaseUI.
+	private static final DatabaseMetrics.Operation QUERY_METRICS = DatabaseMetrics.getDefault().operation("sql.query");
+	private static final DatabaseMetrics.Operation UPDATE_METRICS = DatabaseMetrics.getDefault().operation("sql.update");
+
+	private static final String GAME_KEY = "gtime = ? AND gdate = ? AND sport = ? AND llevel = ?";
+
+	private final ConnectionPool pool;
+	private final GameRescheduler rescheduler;
+	private final Writer discard = new NullWriter();
+
+	/**
+	 * @param pool - Pool to borrow a connection from for every statement.
+	 */
+	public FrontDeskOperations(ConnectionPool pool) {
+		this.pool = pool;
+		this.rescheduler = new GameRescheduler(pool);
+	}
+
+	/**
+	 * Reads the first page of a player lookup, as menu option 1 does.
+	 * @param mask - Bit i is set to search by IndexAdvisor.COLUMNS[i].
+	 * @param values - Values searched for, in column order.
+	 * @return Number of players on the page.
+	 * @throws SQLException
+	 */
+	public int lookup(int mask, Object[] values) throws SQLException {
+		try {
+			return new PlayerPager(pool, IndexAdvisor.condition(mask), values, PAGE_SIZE, PAGE_SIZE).nextPage(discard);
+		} catch (IOException e) {
+			// Nothing is written anywhere.
+			return 0;
+		}
+	}
+
+	/**
+	 * Enters a record, as menu option 2 does.
+	 * @param type - Kind of record.
+	 * @param values - Every column of the record, in table order.
+	 * @throws SQLException
+	 */
+	public void addRecord(RecordType type, Object[] values) throws SQLException {
+		update(type.getInsertSql(), values);
+	}
+
+	/**
+	 * Lists the players who are not captains, as menu option 3 does before asking which one to promote.
+	 * @return Number of players listed.
+	 * @throws SQLException
+	 */
+	public int listPromotable() throws SQLException {
+		return query("SELECT P.pid, P.fname, P.lname FROM Player P WHERE P.pid not in (SELECT C.cptnid FROM Captain C)")
+				.size();
+	}
+
+	/**
+	 * Promotes a player to captain with made up card details, as menu option 3 does.
+	 * @param pid - Id of a player who is not a captain.
+	 * @throws SQLException
+	 */
+	public void promoteCaptain(int pid) throws SQLException {
+		update("INSERT INTO Captain VALUES (?, ?, ?, ?, ?, ?)", pid, "845 Sherbrooke, Montreal",
+				String.format("4%015d", Math.abs(pid % 1000000000L)), "Card Holder " + pid, "2030-01-01", "Visa");
+	}
+
+	/**
+	 * Lists the coordinators and officials, as menu option 5 does before asking whose salary to change.
+	 * @return Number of people listed.
+	 * @throws SQLException
+	 */
+	public int listStaff() throws SQLException {
+		return query("SELECT cid, fname, lname, yearlysal FROM Coordinator").size()
+				+ query("SELECT oid, fname, lname, hourlysal FROM Official").size();
+	}
+
+	/**
+	 * Reads a salary and changes it by an amount, as menu option 5 does.
+	 * @param coordinator - True for a coordinator, false for an official.
+	 * @param id - Id of the coordinator or official.
+	 * @param change - Amount added to the salary.
+	 * @return False if there is no such person.
+	 * @throws SQLException
+	 */
+	public boolean changeSalary(boolean coordinator, int id, int change) throws SQLException {
+		List<Object[]> rows = query(coordinator ? "SELECT * FROM Coordinator WHERE cid = ?"
+				: "SELECT * FROM Official WHERE oid = ?", id);
+		if (rows.isEmpty()) {
+			return false;
+		}
+		int salary = ((Number) rows.get(0)[9]).intValue() + change;
+		update(coordinator ? "UPDATE Coordinator SET yearlysal = ? WHERE cid = ?"
+				: "UPDATE Official SET hourlysal = ? WHERE oid = ?", salary, id);
+		return true;
+	}
+
+	/**
+	 * Lists the games after today, as menu option 4 does before asking which one to move or delete.
+	 * @return Number of games listed.
+	 * @throws SQLException
+	 */
+	public int listUpcomingGames() throws SQLException {
+		return query("Select gdate, gtime, sport, llevel, name1, name2 from HasTeams where gdate > ?", today()).size();
+	}
+
+	/**
+	 * Moves a game to another time on the same day with GameRescheduler, as
+	 * menu option 4 does: the game, its teams and its officials are moved and
+	 * the captains are told in one transaction.
+	 * @param game - Time, date, sport and level of the game.
+	 * @param time - New time of the game, HH:MM:SS.
+	 * @param msgid - Id of the announcement.
+	 * @return Number of officials moved with the game.
+	 * @throws SQLException
+	 */
+	public int moveGame(String[] game, String time, int msgid) throws SQLException {
+		return rescheduler.move(game, game[1], time, msgid);
+	}
+
+	/**
+	 * Deletes a game and tells the captains, as menu option 4 does.
+	 * @param game - Time, date, sport and level of the game.
+	 * @param msgid - Id of the announcement.
+	 * @throws SQLException
+	 */
+	public void deleteGame(String[] game, int msgid) throws SQLException {
+		update("DELETE FROM Game WHERE " + GAME_KEY, (Object[]) game);
+		update("INSERT INTO Announcement VALUES (?, ?, ?)", msgid, "Captains, your upcoming game for " + game[1]
+				+ " was cancelled.", today());
+	}
+
+	/**
+	 * Runs an insert, update or delete.
+	 * @return Number of rows changed.
+	 */
+	int update(String sql, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare(sql);
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+			int rows = statement.executeUpdate();
+			UPDATE_METRICS.record(start, rows);
+			return rows;
+		} catch (SQLException e) {
+			UPDATE_METRICS.recordError(start, e);
+			throw e;
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Runs a query.
+	 * @return Every column of every row returned.
+	 */
+	List<Object[]> query(String sql, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		DatabaseMetrics.getDefault().countStatement(sql);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare(sql);
+			for (int i = 0; i < params.length; i++) {
+				statement.setObject(i + 1, params[i]);
+			}
+			ResultSet rs = statement.executeQuery();
+			try {
+				int columns = rs.getMetaData().getColumnCount();
+				while (rs.next()) {
+					Object[] row = new Object[columns];
+					for (int i = 0; i < columns; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					rows.add(row);
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			QUERY_METRICS.recordError(start, e);
+			throw e;
+		} finally {
+			connection.close();
+		}
+		QUERY_METRICS.record(start, rows.size());
+		return rows;
+	}
+
+	private static String today() {
+		return new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+	}
+}
@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the memory and query time of the trigram index of PlayerFuzzyIndex
+ * on generated players, and how often the misspelled name or address finds the
+ * player it was taken from.
+ *
+ * Usage: java FuzzySearchBenchmark [players] [queries]
+ *
+ * The players are generated in memory from syllables and street names, so no
+ * database is needed. Every query is the last name or address of a random
+ * player with one or two typing mistakes: a letter dropped, doubled, replaced or
+ * swapped with the next. Run with enough heap for the index, for example
+ * -Xmx2g for the default of a million players.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class FuzzySearchBenchmark {
+
+	private static final String[] SYLLABLES = { "ba", "ber", "bo", "ca", "chen", "da", "del", "do", "fer", "ga",
+			"gor", "ha", "kov", "la", "li", "lo", "ma", "mac", "mi", "mo", "na", "ni", "no", "pa", "pe", "ri", "ro",
+			"sa", "shi", "son", "ta", "ti", "to", "va", "vi", "wa", "wel", "ya", "zi" };
+	private static final String[] FIRST_NAMES = { "Andrew", "Anna", "Chloe", "David", "Emma", "Felix", "James",
+			"Julie", "Liam", "Maria", "Maxim", "Noah", "Olivia", "Sarah", "Thomas", "Zoe" };
+	private static final String[] STREETS = { "Sherbrooke", "Saint-Catherine", "University", "Peel", "Milton",
+			"Durocher", "Aylmer", "Prince Arthur", "Saint-Laurent", "Saint-Denis", "Rachel", "Mont-Royal" };
+	private static final String[] STREET_TYPES = { "Street", "Avenue", "Boulevard" };
+	// Players returned per query.
+	private static final int K = 10;
+	// Seed so that every run generates the same players and queries.
+	private static final long SEED = 421;
+
+	public static void main(String[] args) {
+		int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		Random random = new Random(SEED);
+
+		String[][] generated = new String[players][];
+		for (int i = 0; i < players; i++) {
+			generated[i] = new String[] { lastName(random), FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+					address(random) };
+		}
+
+		long before = usedMemory();
+		long start = System.nanoTime();
+		PlayerFuzzyIndex index = new PlayerFuzzyIndex();
+		for (int i = 0; i < players; i++) {
+			index.add(i + 1, generated[i][0], generated[i][1], generated[i][2]);
+		}
+		long build = System.nanoTime() - start;
+		long after = usedMemory();
+		System.out.println(String.format("Indexed %d players in %d ms. Heap grew by %.1f MB, index estimate %.1f MB.",
+				index.size(), build / 1000000, (after - before) / 1048576.0, index.estimateMemory() / 1048576.0));
+
+		run(index, generated, PlayerFuzzyIndex.Field.LAST_NAME, queries, random);
+		run(index, generated, PlayerFuzzyIndex.Field.ADDRESS, queries, random);
+	}
+
+	/**
+	 * Searches the field of random players with typing mistakes and prints the
+	 * latency percentiles and how often the player was among the results.
+	 */
+	private static void run(PlayerFuzzyIndex index, String[][] generated, PlayerFuzzyIndex.Field field,
+			int queries, Random random) {
+		int column = field == PlayerFuzzyIndex.Field.LAST_NAME ? 0 : 2;
+		// Warm up so that the timings are of compiled code.
+		for (int i = 0; i < Math.min(queries, 200); i++) {
+			index.search(field, misspell(generated[random.nextInt(generated.length)][column], random), K);
+		}
+
+		long[] times = new long[queries];
+		int found = 0;
+		int empty = 0;
+		for (int i = 0; i < queries; i++) {
+			int player = random.nextInt(generated.length);
+			String query = misspell(generated[player][column], random);
+			long start = System.nanoTime();
+			List<PlayerFuzzyIndex.Match> matches = index.search(field, query, K);
+			times[i] = System.nanoTime() - start;
+			if (matches.isEmpty()) {
+				empty++;
+			}
+			for (PlayerFuzzyIndex.Match match : matches) {
+				// Several players may share the value, any of them counts as found.
+				if (match.getPid() == player + 1 || value(match, field).equals(generated[player][column])) {
+					found++;
+					break;
+				}
+			}
+		}
+		Arrays.sort(times);
+		System.out.println(String.format("%s: %d queries, p50 %.3f ms, p99 %.3f ms, max %.3f ms, "
+				+ "original value in top %d for %.1f%%, no result for %.1f%%.", field, queries,
+				times[queries / 2] / 1e6, times[Math.min(queries - 1, queries * 99 / 100)] / 1e6,
+				times[queries - 1] / 1e6, K, found * 100.0 / queries, empty * 100.0 / queries));
+	}
+
+	private static String value(PlayerFuzzyIndex.Match match, PlayerFuzzyIndex.Field field) {
+		return field == PlayerFuzzyIndex.Field.LAST_NAME ? match.getLastName() : match.getAddress();
+	}
+
+	private static String lastName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int syllables = 2 + random.nextInt(3);
+		for (int i = 0; i < syllables; i++) {
+			name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.toString();
+	}
+
+	private static String address(Random random) {
+		return (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)] + " "
+				+ STREET_TYPES[random.nextInt(STREET_TYPES.length)] + ", Montreal";
+	}
+
+	/**
+	 * Makes one or two typing mistakes in the value.
+	 */
+	private static String misspell(String value, Random random) {
+		List<Character> chars = new ArrayList<Character>();
+		for (char c : value.toCharArray()) {
+			chars.add(c);
+		}
+		int mistakes = 1 + random.nextInt(2);
+		for (int m = 0; m < mistakes && chars.size() > 2; m++) {
+			int at = 1 + random.nextInt(chars.size() - 2);
+			switch (random.nextInt(4)) {
+			case 0:
+				chars.remove(at);
+				break;
+			case 1:
+				chars.add(at, chars.get(at));
+				break;
+			case 2:
+				chars.set(at, (char) ('a' + random.nextInt(26)));
+				break;
+			default:
+				chars.add(at + 1, chars.remove(at));
+				break;
+			}
+		}
+		StringBuilder misspelled = new StringBuilder();
+		for (char c : chars) {
+			misspelled.append(c);
+		}
+		return misspelled.toString();
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
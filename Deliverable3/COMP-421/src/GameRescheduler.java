@@ -0,0 +1,472 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves a game to another date and time in a single transaction: the game, its
+ * teams and all of its officials are copied to the new slot, the old game is
+ * deleted along with its teams and officials, and the announcement for the
+ * captains is entered, with one commit at the end.
+ *
+ * Every step is one INSERT ... SELECT or DELETE run in the database, so no rows
+ * are read back into the application between steps, and the number of
+ * statements does not depend on the number of officials. If any step fails
+ * the whole move is rolled back and the game stays where it was.
+ *
+ * Every game in a date range, optionally of one league only, can be shifted at
+ * once the same way, for example when a facility closes. Each of its captains
+ * then gets an announcement of their own. A shift stages the moved games, teams
+ * and officials in declared temporary tables, so that a game may move into the
+ * old slot of another moved game; this needs a user temporary tablespace, such
+ * as one made with CREATE USER TEMPORARY TABLESPACE usertemp.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class GameRescheduler {
+
+	// Highest announcement id allowed by the schema.
+	public static final int MAX_MSGID = 1999999;
+
+	private static final String GAME_KEY = "gtime = ? AND gdate = ? AND sport = ? AND llevel = ?";
+	// Parameter markers in a select list need a type in DB2.
+	private static final String COPY_GAME = "INSERT INTO Game SELECT CAST(? AS TIME), CAST(? AS DATE), sport, llevel "
+			+ "FROM Game WHERE " + GAME_KEY;
+	private static final String COPY_TEAMS = "INSERT INTO HasTeams SELECT CAST(? AS TIME), CAST(? AS DATE), sport, llevel, "
+			+ "name1, syear1, sport1, llevel1, name2, syear2, sport2, llevel2 FROM HasTeams WHERE " + GAME_KEY;
+	private static final String COPY_OFFICIALS = "INSERT INTO Officiates SELECT oid, CAST(? AS TIME), CAST(? AS DATE), "
+			+ "sport, llevel, role FROM Officiates WHERE " + GAME_KEY;
+	// Names the teams of the moved game, read from its new slot.
+	private static final String ANNOUNCE = "INSERT INTO Announcement SELECT CAST(? AS INTEGER), "
+			+ "CAST(? AS VARCHAR(200)) || name1 || ' and ' || name2 || CAST(? AS VARCHAR(200)), CURRENT DATE "
+			+ "FROM HasTeams WHERE " + GAME_KEY + " FETCH FIRST 1 ROW ONLY";
+	// Also deletes the teams and officials of the old game, by cascade.
+	private static final String DELETE_GAME = "DELETE FROM Game WHERE " + GAME_KEY;
+
+	// Captains of both teams of a game, the game's columns being those of H.
+	private static final String CAPTAINS = "SELECT DISTINCT R.cptnid FROM HasTeams H, Registers R WHERE "
+			+ "((R.name = H.name1 AND R.syear = H.syear1 AND R.sport = H.sport1 AND R.llevel = H.llevel1) OR "
+			+ "(R.name = H.name2 AND R.syear = H.syear2 AND R.sport = H.sport2 AND R.llevel = H.llevel2))";
+
+	// Temporary tables a shift stages its games in, emptied by every commit and rollback.
+	private static final String[] STAGING = {
+		"DECLARE GLOBAL TEMPORARY TABLE SESSION.ShiftGame LIKE Game ON COMMIT DELETE ROWS NOT LOGGED WITH REPLACE",
+		"DECLARE GLOBAL TEMPORARY TABLE SESSION.ShiftTeams LIKE HasTeams ON COMMIT DELETE ROWS NOT LOGGED WITH REPLACE",
+		"DECLARE GLOBAL TEMPORARY TABLE SESSION.ShiftOfficials LIKE Officiates ON COMMIT DELETE ROWS NOT LOGGED "
+				+ "WITH REPLACE"
+	};
+	// SQLSTATE of a database without a user temporary tablespace.
+	private static final String NO_TEMP_SPACE = "42727";
+
+	private static final DatabaseMetrics.Operation METRICS = DatabaseMetrics.getDefault().operation("sql.reschedule");
+	private static final DatabaseMetrics.Operation SHIFT_METRICS = DatabaseMetrics.getDefault().operation("sql.shift");
+
+	/**
+	 * Games moved by a shift and announcements sent for it.
+	 */
+	public static class Shift {
+		private final int games;
+		private final int announcements;
+
+		Shift(int games, int announcements) {
+			this.games = games;
+			this.announcements = announcements;
+		}
+
+		public int getGames() {
+			return games;
+		}
+
+		/**
+		 * @return Number of captains told, one announcement each with consecutive ids.
+		 */
+		public int getAnnouncements() {
+			return announcements;
+		}
+	}
+
+	private final ConnectionPool pool;
+
+	/**
+	 * @param pool - Pool to borrow a connection from for every move.
+	 */
+	public GameRescheduler(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Moves a game with its teams and officials and tells its captains.
+	 * @param game - Time, date, sport and level of the game.
+	 * @param date - New date of the game, YYYY-MM-DD.
+	 * @param time - New time of the game, HH:MM:SS.
+	 * @param msgid - Id of the announcement.
+	 * @return Number of officials moved with the game.
+	 * @throws SQLException if the game does not exist, the new slot is taken or
+	 *             any statement fails. Nothing is changed.
+	 */
+	public int move(String[] game, String date, String time, int msgid) throws SQLException {
+		long start = System.nanoTime();
+		PooledConnection connection = pool.borrow();
+		try {
+			Connection con = connection.getConnection();
+			con.setAutoCommit(false);
+			try {
+				if (run(connection, COPY_GAME, date, time, game) == 0) {
+					throw new SQLException("No such game: " + game[1] + " " + game[0] + " " + game[2] + " " + game[3],
+							"02000");
+				}
+				run(connection, COPY_TEAMS, date, time, game);
+				int officials = run(connection, COPY_OFFICIALS, date, time, game);
+				run(connection, DELETE_GAME, null, null, game);
+				announce(connection, msgid, game, date, time);
+				con.commit();
+				METRICS.record(start, officials);
+				return officials;
+			} catch (SQLException e) {
+				con.rollback();
+				METRICS.recordError(start, e);
+				throw e;
+			}
+		} finally {
+			// The pool turns auto-commit back on.
+			connection.close();
+		}
+	}
+
+	/**
+	 * Moves every game in a date range by a number of days, to a time of day, or
+	 * both, with its teams and officials, and sends one announcement to every
+	 * captain of a team playing in the games moved. Games already at their new
+	 * date and time are left alone.
+	 *
+	 * The new slots must be free: if a game which is not moved is at the new slot
+	 * of a moved game, or two games would end up at the same slot, nothing is
+	 * changed. A game may take the old slot of another moved game.
+	 * @param from - First date of the games moved, YYYY-MM-DD.
+	 * @param to - Last date of the games moved, YYYY-MM-DD.
+	 * @param sport - Sport of the games moved, or null for every sport.
+	 * @param level - Level of the games moved, or null for every level.
+	 * @param days - Days each game is moved by, negative to move it earlier.
+	 * @param time - New time of every game, HH:MM:SS, or null to keep their times.
+	 * @param firstMsgid - Id of the first announcement, the others follow it.
+	 * @return The games moved and announcements sent.
+	 * @throws SQLException if a new slot is taken (23505), the announcement ids
+	 *             would go past MAX_MSGID (23513) or any statement fails. Nothing is changed.
+	 */
+	public Shift shift(String from, String to, String sport, String level, int days, String time, int firstMsgid)
+			throws SQLException {
+		if (days == 0 && time == null) {
+			throw new IllegalArgumentException("Give a number of days or a time to move the games to.");
+		}
+		long start = System.nanoTime();
+		PooledConnection connection = pool.borrow();
+		try {
+			Connection con = connection.getConnection();
+			con.setAutoCommit(false);
+			try {
+				// Read the games first, as their copies may be in the range as well.
+				List<String[]> games = new ArrayList<String[]>();
+				List<Object> params = new ArrayList<Object>();
+				ResultSet rs = query(connection, "SELECT gtime, gdate, sport, llevel FROM Game G WHERE "
+						+ range("G", from, to, sport, level, days, time, params), params);
+				try {
+					while (rs.next()) {
+						games.add(new String[] { rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4) });
+					}
+				} finally {
+					rs.close();
+				}
+				if (games.isEmpty()) {
+					con.rollback();
+					SHIFT_METRICS.record(start, 0);
+					return new Shift(0, 0);
+				}
+				checkSlots(connection, from, to, sport, level, days, time);
+
+				// Captains are found from the old games, before they are deleted.
+				params.clear();
+				String captains = CAPTAINS + " AND " + range("H", from, to, sport, level, days, time, params);
+				checkMsgids(connection, captains, params, firstMsgid);
+				List<Object> announce = new ArrayList<Object>();
+				announce.add(firstMsgid);
+				announce.add(message(from, to, sport, level, days, time));
+				announce.addAll(params);
+				int announcements = update(connection, "INSERT INTO Announcement SELECT CAST(? AS INTEGER) "
+						+ "+ ROW_NUMBER() OVER (ORDER BY cptnid) - 1, CAST(? AS VARCHAR(1000)), CURRENT DATE FROM ("
+						+ captains + ") AS C", announce);
+				List<Object> receive = new ArrayList<Object>();
+				receive.add(firstMsgid);
+				receive.addAll(params);
+				update(connection, "INSERT INTO Receives SELECT CAST(? AS INTEGER) + ROW_NUMBER() OVER (ORDER BY "
+						+ "cptnid) - 1, cptnid FROM (" + captains + ") AS C", receive);
+
+				// The games are staged at their new slots and the old ones deleted before
+				// they are entered again, so that a game can take the slot another one left.
+				declareStaging(con);
+				params.clear();
+				int staged = stage(con, "INSERT INTO SESSION.ShiftGame SELECT " + slot("G", days, time, params)
+						+ ", sport, llevel FROM Game G WHERE " + range("G", from, to, sport, level, days, time, params),
+						params);
+				if (staged != games.size()) {
+					throw new SQLException("The games changed during the move, please try again.", "40001");
+				}
+				params.clear();
+				stage(con, "INSERT INTO SESSION.ShiftTeams SELECT " + slot("H", days, time, params) + ", sport, "
+						+ "llevel, name1, syear1, sport1, llevel1, name2, syear2, sport2, llevel2 FROM HasTeams H WHERE "
+						+ range("H", from, to, sport, level, days, time, params), params);
+				params.clear();
+				stage(con, "INSERT INTO SESSION.ShiftOfficials SELECT oid, " + slot("O", days, time, params)
+						+ ", sport, llevel, role FROM Officiates O WHERE "
+						+ range("O", from, to, sport, level, days, time, params), params);
+
+				// The old games are deleted by key, in one batch, with their teams and officials.
+				DatabaseMetrics.getDefault().countStatement(DELETE_GAME);
+				PreparedStatement delete = connection.prepare(DELETE_GAME);
+				for (String[] game : games) {
+					for (int i = 0; i < game.length; i++) {
+						delete.setString(i + 1, game[i]);
+					}
+					delete.addBatch();
+				}
+				delete.executeBatch();
+
+				params.clear();
+				stage(con, "INSERT INTO Game SELECT * FROM SESSION.ShiftGame", params);
+				stage(con, "INSERT INTO HasTeams SELECT * FROM SESSION.ShiftTeams", params);
+				stage(con, "INSERT INTO Officiates SELECT * FROM SESSION.ShiftOfficials", params);
+				con.commit();
+				SHIFT_METRICS.record(start, games.size());
+				return new Shift(games.size(), announcements);
+			} catch (SQLException e) {
+				con.rollback();
+				SHIFT_METRICS.recordError(start, e);
+				if (NO_TEMP_SPACE.equals(e.getSQLState())) {
+					throw new SQLException("Shifting games needs a user temporary tablespace, "
+							+ "such as one made with CREATE USER TEMPORARY TABLESPACE usertemp.", NO_TEMP_SPACE, e);
+				}
+				throw e;
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Makes sure there is an announcement id for every captain told, before any is sent.
+	 * @param captains - Query of the captains told.
+	 * @param params - Values of the query.
+	 * @throws SQLException if the ids would go past MAX_MSGID.
+	 */
+	private static void checkMsgids(PooledConnection connection, String captains, List<Object> params, int firstMsgid)
+			throws SQLException {
+		ResultSet rs = query(connection, "SELECT COUNT(*) FROM (" + captains + ") AS C", params);
+		int count;
+		try {
+			rs.next();
+			count = rs.getInt(1);
+		} finally {
+			rs.close();
+		}
+		if ((long) firstMsgid + count - 1 > MAX_MSGID) {
+			throw new SQLException("The " + count + " captains need message IDs " + firstMsgid + " to "
+					+ ((long) firstMsgid + count - 1) + ", but they must be at most " + MAX_MSGID + ".", "23513");
+		}
+	}
+
+	/**
+	 * Declares the temporary tables a shift stages its games in, replacing those
+	 * of an earlier shift on the same connection.
+	 */
+	private static void declareStaging(Connection con) throws SQLException {
+		Statement statement = con.createStatement();
+		try {
+			for (String sql : STAGING) {
+				DatabaseMetrics.getDefault().countStatement(sql);
+				statement.execute(sql);
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Runs a statement on the temporary tables with values bound in order. It is
+	 * not kept in the statement cache, as the tables are declared again by every shift.
+	 * @return Number of rows changed.
+	 */
+	private static int stage(Connection con, String sql, List<Object> params) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = con.prepareStatement(sql);
+		try {
+			for (int i = 0; i < params.size(); i++) {
+				statement.setObject(i + 1, params.get(i));
+			}
+			return statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Makes sure no game which stays is at the new slot of a moved game and no two moved games share a new slot.
+	 * @throws SQLException naming the first slot taken.
+	 */
+	private static void checkSlots(PooledConnection connection, String from, String to, String sport, String level,
+			int days, String time) throws SQLException {
+		List<Object> params = new ArrayList<Object>();
+		StringBuilder sql = new StringBuilder("SELECT T.gdate, T.gtime, T.sport, T.llevel FROM Game G, Game T WHERE ");
+		sql.append(range("G", from, to, sport, level, days, time, params));
+		// A game which is moved as well leaves its slot.
+		sql.append(" AND NOT (");
+		sql.append(range("T", from, to, sport, level, days, time, params));
+		sql.append(") AND T.sport = G.sport AND T.llevel = G.llevel AND T.gtime = ");
+		sql.append(newTime("G", time, params));
+		sql.append(" AND T.gdate = ");
+		sql.append(newDate("G", days, params));
+		sql.append(" UNION ALL SELECT gdate, gtime, sport, llevel FROM (SELECT ");
+		sql.append(slot("G", days, time, params));
+		sql.append(", sport, llevel FROM Game G WHERE ");
+		sql.append(range("G", from, to, sport, level, days, time, params));
+		sql.append(") AS S (gtime, gdate, sport, llevel) GROUP BY gdate, gtime, sport, llevel HAVING COUNT(*) > 1 ");
+		sql.append("FETCH FIRST 1 ROW ONLY");
+		ResultSet rs = query(connection, sql.toString(), params);
+		try {
+			if (rs.next()) {
+				throw new SQLException("A game of " + rs.getString(3).trim() + " " + rs.getString(4).trim()
+						+ " is already at " + rs.getString(1) + " " + rs.getString(2) + ".", "23505");
+			}
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * @return Condition on the games of a table which are moved, adding its values to params.
+	 */
+	private static String range(String alias, String from, String to, String sport, String level, int days,
+			String time, List<Object> params) {
+		StringBuilder condition = new StringBuilder(alias + ".gdate BETWEEN ? AND ?");
+		params.add(from);
+		params.add(to);
+		if (sport != null) {
+			condition.append(" AND " + alias + ".sport = ?");
+			params.add(sport);
+		}
+		if (level != null) {
+			condition.append(" AND " + alias + ".llevel = ?");
+			params.add(level);
+		}
+		if (days == 0) {
+			// Games already at the time stay where they are.
+			condition.append(" AND " + alias + ".gtime <> ?");
+			params.add(time);
+		}
+		return condition.toString();
+	}
+
+	/**
+	 * @return The new time and date of the games of a table, adding their values to params.
+	 */
+	private static String slot(String alias, int days, String time, List<Object> params) {
+		String newTime = newTime(alias, time, params);
+		return newTime + ", " + newDate(alias, days, params);
+	}
+
+	private static String newTime(String alias, String time, List<Object> params) {
+		if (time == null) {
+			return alias + ".gtime";
+		}
+		params.add(time);
+		return "CAST(? AS TIME)";
+	}
+
+	private static String newDate(String alias, int days, List<Object> params) {
+		params.add(days);
+		return alias + ".gdate + CAST(? AS INTEGER) DAYS";
+	}
+
+	/**
+	 * @return The announcement of a shift.
+	 */
+	private static String message(String from, String to, String sport, String level, int days, String time) {
+		StringBuilder message = new StringBuilder("Captains, your upcoming games");
+		if (sport != null) {
+			message.append(" of " + sport + (level == null ? "" : " " + level));
+		} else if (level != null) {
+			message.append(" of level " + level);
+		}
+		message.append(" from " + from + " to " + to + " were moved");
+		if (days != 0) {
+			message.append(" " + Math.abs(days) + (Math.abs(days) == 1 ? " day " : " days ")
+					+ (days > 0 ? "later" : "earlier"));
+		}
+		if (time != null) {
+			message.append((days != 0 ? " and" : "") + " to " + time);
+		}
+		return message.append(".").toString();
+	}
+
+	/**
+	 * Runs an insert, update or delete with values bound in order.
+	 * @return Number of rows changed.
+	 */
+	private static int update(PooledConnection connection, String sql, List<Object> params) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = connection.prepare(sql);
+		for (int i = 0; i < params.size(); i++) {
+			statement.setObject(i + 1, params.get(i));
+		}
+		return statement.executeUpdate();
+	}
+
+	/**
+	 * Runs a query with values bound in order.
+	 */
+	private static ResultSet query(PooledConnection connection, String sql, List<Object> params) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = connection.prepare(sql);
+		for (int i = 0; i < params.size(); i++) {
+			statement.setObject(i + 1, params.get(i));
+		}
+		return statement.executeQuery();
+	}
+
+	/**
+	 * Runs a statement on a game, after the new date and time if there are any.
+	 * @return Number of rows changed.
+	 */
+	private static int run(PooledConnection connection, String sql, String date, String time, String[] game)
+			throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = connection.prepare(sql);
+		int column = 1;
+		if (date != null) {
+			statement.setString(column++, time);
+			statement.setString(column++, date);
+		}
+		for (String value : game) {
+			statement.setString(column++, value);
+		}
+		return statement.executeUpdate();
+	}
+
+	/**
+	 * Enters the announcement of a move, naming the teams of the game at its new slot.
+	 */
+	private static void announce(PooledConnection connection, int msgid, String[] game, String date, String time)
+			throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(ANNOUNCE);
+		PreparedStatement statement = connection.prepare(ANNOUNCE);
+		statement.setInt(1, msgid);
+		statement.setString(2, "Captains, your upcoming game for " + game[1] + " between ");
+		statement.setString(3, " was moved to " + date + " at " + time + ".");
+		statement.setString(4, time);
+		statement.setString(5, date);
+		statement.setString(6, game[2]);
+		statement.setString(7, game[3]);
+		statement.executeUpdate();
+	}
+}
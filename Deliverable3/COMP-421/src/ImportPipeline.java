@@ -0,0 +1,397 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded version of BulkImporter for very large files. The import runs
+ * as a pipeline of stages on separate threads with bounded queues in between:
+ *
+ *   read -> parse -> validate -> write
+ *
+ * One thread reads the file into chunks of lines. Parsing and validation each
+ * run on as many threads as there are processors. A single writer inserts the
+ * valid rows in batches and writes the rejects, so that the JDBC connection
+ * always has work waiting. Lines travel in chunks so the queues are not a
+ * bottleneck, and the bounded queues keep memory use flat when the database is
+ * slower than the parsing.
+ *
+ * Every stage counts the lines it has handled and the depth of its input
+ * queue. These are printed every few seconds, which shows the bottleneck
+ * stage. Rows are not necessarily inserted in file order.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ImportPipeline {
+
+	// Lines handed from one stage to the next at a time.
+	private static final int CHUNK_SIZE = 1000;
+	// Chunks each queue can hold before the stage feeding it waits.
+	private static final int QUEUE_CAPACITY = 64;
+	// Milliseconds between statistics reports.
+	private static final long REPORT_INTERVAL = 2000;
+
+	/**
+	 * Lines of the file moving through the pipeline together.
+	 */
+	private static class Chunk {
+		// Number of the first line in the file.
+		final long firstLine;
+		final List<String> lines;
+		String[][] fields;
+		// Values to insert, null for a rejected line.
+		Object[][] values;
+		// Reason each line was rejected, null for a valid or empty line.
+		String[] errors;
+
+		Chunk(long firstLine, List<String> lines) {
+			this.firstLine = firstLine;
+			this.lines = lines;
+		}
+	}
+
+	// Marks the end of the input on a queue.
+	private static final Chunk END = new Chunk(-1, null);
+
+	/**
+	 * Throughput and queue depth of one stage.
+	 */
+	public static class Stage {
+		private final String name;
+		// Input queue of the stage, null for the reading stage.
+		private final BlockingQueue<Chunk> queue;
+		private final AtomicLong lines = new AtomicLong();
+		private final long start = System.nanoTime();
+
+		Stage(String name, BlockingQueue<Chunk> queue) {
+			this.name = name;
+			this.queue = queue;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getLines() {
+			return lines.get();
+		}
+
+		public int getQueueDepth() {
+			return queue == null ? 0 : queue.size();
+		}
+
+		public double getLinesPerSecond() {
+			return lines.get() / (Math.max(System.nanoTime() - start, 1) / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %d lines (%.0f/s, queue %d)", name, getLines(), getLinesPerSecond(),
+					getQueueDepth());
+		}
+	}
+
+	private final ConnectionPool pool;
+	private final RecordType type;
+	private final int commitInterval;
+	private final int workers;
+
+	private final BlockingQueue<Chunk> toParse = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+	private final BlockingQueue<Chunk> toValidate = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+	private final BlockingQueue<Chunk> toWrite = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+	private final Stage read = new Stage("read", null);
+	private final Stage parse = new Stage("parse", toParse);
+	private final Stage validate = new Stage("validate", toValidate);
+	private final Stage write = new Stage("write", toWrite);
+
+	// First error raised by any stage. Once set, every stage stops.
+	private volatile Exception failure;
+
+	/**
+	 * @param pool - Pool to borrow the writer's connection from.
+	 * @param type - Kind of records in the file.
+	 * @param commitInterval - Rows inserted between commits.
+	 */
+	public ImportPipeline(ConnectionPool pool, RecordType type, int commitInterval) {
+		this.pool = pool;
+		this.type = type;
+		this.commitInterval = commitInterval;
+		this.workers = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return The stages in pipeline order, for monitoring while an import runs.
+	 */
+	public Stage[] getStages() {
+		return new Stage[] { read, parse, validate, write };
+	}
+
+	/**
+	 * Imports every line of the file and prints a summary.
+	 * @param input - CSV file to import, in the format described in BulkImporter.
+	 * @param rejectFile - File the rejected lines are written to.
+	 * @return Number of records inserted.
+	 * @throws IOException if a file cannot be read or written.
+	 * @throws SQLException if the database fails for a reason other than a duplicate id.
+	 */
+	public long importFile(final File input, final File rejectFile) throws IOException, SQLException {
+		final String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+		final long[] result = new long[2];
+		long start = System.nanoTime();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					readFile(input);
+				} catch (Exception e) {
+					fail(e);
+				}
+			}
+		}, "import-read"));
+
+		final AtomicInteger parsers = new AtomicInteger(workers);
+		final AtomicInteger validators = new AtomicInteger(workers);
+		for (int i = 0; i < workers; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						parseChunks(parsers);
+					} catch (Exception e) {
+						fail(e);
+					}
+				}
+			}, "import-parse-" + i));
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						validateChunks(validators, today);
+					} catch (Exception e) {
+						fail(e);
+					}
+				}
+			}, "import-validate-" + i));
+		}
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeChunks(rejectFile, result);
+				} catch (Exception e) {
+					fail(e);
+				}
+			}
+		}, "import-write");
+		threads.add(writer);
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		try {
+			while (writer.isAlive()) {
+				writer.join(REPORT_INTERVAL);
+				if (writer.isAlive()) {
+					System.out.println("  " + read + " | " + parse + " | " + validate + " | " + write);
+				}
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+		}
+
+		if (failure instanceof SQLException) {
+			throw (SQLException) failure;
+		} else if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure != null) {
+			throw new IOException("The import pipeline failed.", failure);
+		}
+
+		double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+		System.out.println(String.format("Imported %d %s records from %d lines in %.2f s (%.0f rows/s) "
+				+ "with %d parse and %d validate threads, %d rejected to %s.", result[0], type, read.getLines(),
+				seconds, result[0] / seconds, workers, workers, result[1], rejectFile.getPath()));
+		return result[0];
+	}
+
+	/**
+	 * Read stage: reads the file into chunks of lines, skipping a header line.
+	 */
+	private void readFile(File input) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		try {
+			long lineNumber = 0;
+			long firstLine = 1;
+			List<String> lines = new ArrayList<String>(CHUNK_SIZE);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (lineNumber == 1 && !line.trim().isEmpty()
+						&& !BulkImporter.parseLine(line)[0].trim().matches("\\d+")) {
+					firstLine = 2;
+					continue;
+				}
+				lines.add(line);
+				if (lines.size() == CHUNK_SIZE) {
+					put(toParse, new Chunk(firstLine, lines));
+					read.lines.addAndGet(lines.size());
+					firstLine = lineNumber + 1;
+					lines = new ArrayList<String>(CHUNK_SIZE);
+				}
+			}
+			if (!lines.isEmpty()) {
+				put(toParse, new Chunk(firstLine, lines));
+				read.lines.addAndGet(lines.size());
+			}
+		} finally {
+			reader.close();
+			for (int i = 0; i < workers; i++) {
+				put(toParse, END);
+			}
+		}
+	}
+
+	/**
+	 * Parse stage: splits every line of a chunk into its fields.
+	 */
+	private void parseChunks(AtomicInteger running) throws InterruptedException {
+		try {
+			Chunk chunk;
+			while ((chunk = take(toParse)) != END) {
+				chunk.fields = new String[chunk.lines.size()][];
+				for (int i = 0; i < chunk.fields.length; i++) {
+					chunk.fields[i] = BulkImporter.parseLine(chunk.lines.get(i));
+				}
+				parse.lines.addAndGet(chunk.fields.length);
+				put(toValidate, chunk);
+			}
+		} finally {
+			// The last parser to finish tells the validators there is no more input.
+			if (running.decrementAndGet() == 0) {
+				for (int i = 0; i < workers; i++) {
+					put(toValidate, END);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Validate stage: checks every line of a chunk and converts the valid ones
+	 * to the values that are inserted.
+	 */
+	private void validateChunks(AtomicInteger running, String today) throws InterruptedException {
+		try {
+			Chunk chunk;
+			while ((chunk = take(toValidate)) != END) {
+				int size = chunk.fields.length;
+				chunk.values = new Object[size][];
+				chunk.errors = new String[size];
+				for (int i = 0; i < size; i++) {
+					if (chunk.lines.get(i).trim().isEmpty()) {
+						continue;
+					}
+					String error = type.validate(chunk.fields[i]);
+					if (error == null) {
+						chunk.values[i] = type.toParameters(chunk.fields[i], today);
+					} else {
+						chunk.errors[i] = "Line " + (chunk.firstLine + i) + ": " + error;
+					}
+				}
+				validate.lines.addAndGet(size);
+				put(toWrite, chunk);
+			}
+		} finally {
+			// The last validator to finish tells the writer there is no more input.
+			if (running.decrementAndGet() == 0) {
+				put(toWrite, END);
+			}
+		}
+	}
+
+	/**
+	 * Write stage: inserts the valid lines in batches and writes the rejected ones.
+	 */
+	private void writeChunks(File rejectFile, long[] result) throws IOException, SQLException,
+			InterruptedException {
+		BufferedWriter rejects = new BufferedWriter(new FileWriter(rejectFile));
+		PooledConnection connection = pool.borrow();
+		try {
+			BatchRecordWriter writer = new BatchRecordWriter(connection, type,
+					Math.min(BulkImporter.DEFAULT_BATCH_SIZE, commitInterval), commitInterval, rejects);
+			Chunk chunk;
+			while ((chunk = take(toWrite)) != END) {
+				for (int i = 0; i < chunk.values.length; i++) {
+					if (chunk.values[i] != null) {
+						writer.add(chunk.values[i], chunk.lines.get(i), chunk.firstLine + i);
+					} else if (chunk.errors[i] != null) {
+						writer.reject(chunk.lines.get(i), chunk.errors[i]);
+					}
+				}
+				write.lines.addAndGet(chunk.values.length);
+			}
+			if (failure == null) {
+				writer.finish();
+			}
+			result[0] = writer.getInserted();
+			result[1] = writer.getRejected();
+		} finally {
+			connection.close();
+			rejects.close();
+		}
+	}
+
+	/**
+	 * Records the first failure so that every stage stops.
+	 */
+	private synchronized void fail(Exception e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Puts a chunk on a queue, waiting for room unless the import has failed.
+	 */
+	private void put(BlockingQueue<Chunk> queue, Chunk chunk) throws InterruptedException {
+		while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+			if (failure != null) {
+				throw new InterruptedException("Import stopped after a failure.");
+			}
+		}
+	}
+
+	/**
+	 * Takes a chunk from a queue, or END if the import has failed.
+	 */
+	private Chunk take(BlockingQueue<Chunk> queue) throws InterruptedException {
+		Chunk chunk;
+		while ((chunk = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+			if (failure != null) {
+				return END;
+			}
+		}
+		return failure != null ? END : chunk;
+	}
+}
@@ -0,0 +1,186 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Cleans seasons incrementally. The latest registration deadline that has
+ * already been processed is stored in the CleanWatermark table, and each run
+ * only looks at seasons whose deadline passed since the previous run. Seasons
+ * whose deadlines passed long ago were already checked and are skipped, so a
+ * repeat run costs next to nothing however much history there is.
+ *
+ * The CleanWatermark table, and indexes on Season(regdeadline) and Team(syear,
+ * sport, llevel) so that only the new seasons and their teams are read, are
+ * not created by a clean: setup() creates them when asked to, printing each
+ * statement it runs.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class IncrementalCleaner {
+
+	// Name under which the season watermark is stored.
+	private static final String TARGET = "season";
+	// Watermark used when no run has happened yet, before any deadline.
+	private static final Date BEGINNING = Date.valueOf("0001-01-01");
+
+	// Statements creating what the incremental mode needs, run by setup().
+	public static final String[] SETUP = {
+			"create table CleanWatermark (target varchar(20) not null primary key, lastdeadline date not null)",
+			"create index season_deadline on Season (regdeadline)",
+			"create index team_season on Team (syear, sport, llevel)" };
+
+	// Deletes the under-filled seasons with a deadline inside the window
+	// (watermark, as of). Only teams of seasons in the window are counted.
+	private static final String DELETE_SQL = "delete from season s "
+			+ "where s.regdeadline > ? and s.regdeadline < ? "
+			+ "and (s.syear, s.sport, s.llevel) not in "
+			+ "(select t.syear, t.sport, t.llevel "
+			+ "from team t join season w on w.syear = t.syear and w.sport = t.sport and w.llevel = t.llevel "
+			+ "join league l on l.sport = t.sport and l.llevel = t.llevel "
+			+ "where w.regdeadline > ? and w.regdeadline < ? "
+			+ "group by t.syear, t.sport, t.llevel, l.minteams "
+			+ "having count(*) >= l.minteams)";
+
+	private static final String READ_SQL = "select lastdeadline from CleanWatermark where target = ?";
+
+	private static final String SAVE_SQL = "merge into CleanWatermark w "
+			+ "using (values (cast(? as varchar(20)), cast(? as date))) as n (target, lastdeadline) "
+			+ "on w.target = n.target "
+			+ "when matched then update set w.lastdeadline = n.lastdeadline "
+			+ "when not matched then insert (target, lastdeadline) values (n.target, n.lastdeadline)";
+
+	// Pool from which the cleaning connection is borrowed.
+	private final ConnectionPool pool;
+
+	public IncrementalCleaner(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Cleans the seasons whose deadline passed since the last run, as of today.
+	 * @return Number of seasons deleted.
+	 * @throws SQLException
+	 */
+	public int clean() throws SQLException {
+		return clean(new Date(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Cleans the seasons whose deadline passed since the last run and before
+	 * the given date, then moves the watermark up to the day before that date.
+	 * The deletes and the new watermark are committed together.
+	 * @param asOf - Deadlines before this date are processed.
+	 * @return Number of seasons deleted.
+	 * @throws SQLException
+	 */
+	public int clean(Date asOf) throws SQLException {
+		PooledConnection connection = pool.borrow();
+		Connection con = connection.getConnection();
+		try {
+			long start = System.nanoTime();
+			con.setAutoCommit(false);
+
+			Date watermark = readWatermark(connection);
+			if (!watermark.before(asOf)) {
+				System.out.println("Seasons are already cleaned up to " + watermark + ".");
+				return 0;
+			}
+
+			PreparedStatement delete = connection.prepare(DELETE_SQL);
+			delete.setDate(1, watermark);
+			delete.setDate(2, asOf);
+			delete.setDate(3, watermark);
+			delete.setDate(4, asOf);
+			int deleted = delete.executeUpdate();
+
+			PreparedStatement save = connection.prepare(SAVE_SQL);
+			save.setString(1, TARGET);
+			save.setDate(2, new Date(asOf.getTime() - 24L * 60 * 60 * 1000));
+			save.executeUpdate();
+			con.commit();
+
+			System.out.println("Deleted " + deleted + " seasons with deadlines after " + watermark
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+			return deleted;
+		} catch (SQLException e) {
+			con.rollback();
+			throw e;
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Forgets the watermark so that the next run looks at every season again.
+	 * @throws SQLException
+	 */
+	public void reset() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement delete = connection.prepare("delete from CleanWatermark where target = ?");
+			delete.setString(1, TARGET);
+			delete.executeUpdate();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Creates the watermark table and the indexes that do not exist yet,
+	 * printing every statement and whether it created something.
+	 * @throws SQLException
+	 */
+	public void setup() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		try {
+			Statement stmt = connection.getConnection().createStatement();
+			try {
+				for (String ddl : SETUP) {
+					System.out.println(ddl);
+					try {
+						stmt.execute(ddl);
+						System.out.println("  created.");
+					} catch (SQLException e) {
+						// 42710: the table or index already exists.
+						if (!"42710".equals(e.getSQLState())) {
+							throw e;
+						}
+						System.out.println("  already exists.");
+					}
+				}
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * @return The last processed deadline, or a date before any deadline if there was no run yet.
+	 * @throws SQLException if the watermark table was not created with setup().
+	 */
+	private static Date readWatermark(PooledConnection connection) throws SQLException {
+		ResultSet rs;
+		try {
+			PreparedStatement read = connection.prepare(READ_SQL);
+			read.setString(1, TARGET);
+			rs = read.executeQuery();
+		} catch (SQLException e) {
+			// 42704: undefined name.
+			if ("42704".equals(e.getSQLState())) {
+				throw new SQLException("The CleanWatermark table does not exist, run the incremental setup first.",
+						e.getSQLState(), e);
+			}
+			throw e;
+		}
+		try {
+			return rs.next() ? rs.getDate(1) : BEGINNING;
+		} finally {
+			rs.close();
+		}
+	}
+}
@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Watches which combinations of fields the player lookup searches by and how
+ * long they take, and recommends indexes on the Player table for the
+ * combinations that cost the most. Only the primary key is indexed, so every
+ * lookup by other fields reads the whole table.
+ *
+ * A combination is a bit mask of the nine fields of the lookup menu, in menu
+ * order. The columns of a recommended index are the searched columns ordered by
+ * how much lookup time involves them, so that the first columns of one index
+ * serve as many combinations as possible. A combination whose columns start an
+ * index already recommended needs no index of its own. Lookups by PID already
+ * use the primary key and are left out.
+ *
+ * The advisor can create the indexes and run one recorded lookup of every
+ * combination before and after, to show the speedup. This should be done on a
+ * test copy of the database, as creating an index locks the table. The
+ * advisor is shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class IndexAdvisor {
+
+	// Player columns in the order of the lookup menu.
+	public static final String[] COLUMNS = { "PID", "Gender", "Lname", "Fname", "Address", "Phonenumber", "Email",
+			"Birthday", "Datecreated" };
+	// Lookups a combination needs before an index is recommended for it.
+	private static final int MIN_RUNS = 2;
+	// Most indexes recommended at once.
+	private static final int MAX_INDEXES = 5;
+	// Times each recorded lookup is run when measuring, the median is kept.
+	private static final int REPEATS = 5;
+	// Players read by a measured lookup, as for the first page of a lookup.
+	private static final int PAGE_SIZE = 20;
+	// SQLSTATE of an index that already exists.
+	private static final String ALREADY_EXISTS = "42710";
+
+	/**
+	 * Number of runs and time taken by one combination, with the values of its last run.
+	 */
+	private static class Usage {
+		long runs = 0;
+		long totalNanos = 0;
+		long maxNanos = 0;
+		Object[] sample;
+	}
+
+	/**
+	 * An index recommended for the Player table.
+	 */
+	public static class Recommendation {
+		private final List<String> columns;
+		// Lookup time spent by the combinations the index serves.
+		private long nanos;
+
+		Recommendation(List<String> columns, long nanos) {
+			this.columns = columns;
+			this.nanos = nanos;
+		}
+
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public String getName() {
+			StringBuilder name = new StringBuilder("player_lookup");
+			for (String column : columns) {
+				name.append('_').append(column.toLowerCase());
+			}
+			return name.toString();
+		}
+
+		public String getCreateSql() {
+			StringBuilder sql = new StringBuilder("CREATE INDEX " + getName() + " ON Player (");
+			for (int i = 0; i < columns.size(); i++) {
+				sql.append(i == 0 ? "" : ", ").append(columns.get(i));
+			}
+			return sql.append(")").toString();
+		}
+
+		public String getDropSql() {
+			return "DROP INDEX " + getName();
+		}
+
+		/**
+		 * @return Whether the index starts with every column of the combination.
+		 */
+		boolean serves(int mask) {
+			int count = Integer.bitCount(mask);
+			if (count > columns.size()) {
+				return false;
+			}
+			for (int i = 0; i < count; i++) {
+				if ((mask & (1 << Arrays.asList(COLUMNS).indexOf(columns.get(i)))) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final ConnectionPool pool;
+	// Usage of every combination that has run, by bit mask.
+	private final Map<Integer, Usage> usage = new HashMap<Integer, Usage>();
+
+	/**
+	 * @param pool - Pool to borrow connections from when measuring.
+	 */
+	public IndexAdvisor(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Records a lookup that went to the database.
+	 * @param mask - Bit i is set if the lookup searched by COLUMNS[i] for equality.
+	 * @param values - The values searched for, in column order.
+	 * @param nanos - Time taken to read the first page.
+	 */
+	public synchronized void record(int mask, Object[] values, long nanos) {
+		if (mask == 0) {
+			return;
+		}
+		Usage entry = usage.get(mask);
+		if (entry == null) {
+			entry = new Usage();
+			usage.put(mask, entry);
+		}
+		entry.runs++;
+		entry.totalNanos += nanos;
+		entry.maxNanos = Math.max(entry.maxNanos, nanos);
+		entry.sample = values.clone();
+	}
+
+	/**
+	 * @return A table of every combination recorded, the most time consuming first.
+	 */
+	public synchronized String getReport() {
+		List<Integer> masks = sortedMasks();
+		if (masks.isEmpty()) {
+			return "No lookups have been recorded yet.";
+		}
+		StringBuilder report = new StringBuilder(String.format("%-45s %6s %10s %10s %10s%n", "FIELDS", "RUNS",
+				"AVG MS", "MAX MS", "TOTAL MS"));
+		for (int mask : masks) {
+			Usage entry = usage.get(mask);
+			report.append(String.format("%-45s %6d %10.2f %10.2f %10.1f%n", describe(mask), entry.runs,
+					entry.totalNanos / 1e6 / entry.runs, entry.maxNanos / 1e6, entry.totalNanos / 1e6));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * @return The indexes to create, the one serving the most lookup time first.
+	 */
+	public synchronized List<Recommendation> getRecommendations() {
+		// Weigh every column by the lookup time of the combinations using it.
+		final long[] weight = new long[COLUMNS.length];
+		for (Map.Entry<Integer, Usage> entry : usage.entrySet()) {
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if ((entry.getKey() & (1 << i)) != 0) {
+					weight[i] += entry.getValue().totalNanos;
+				}
+			}
+		}
+
+		List<Recommendation> recommendations = new ArrayList<Recommendation>();
+		for (int mask : sortedMasks()) {
+			Usage entry = usage.get(mask);
+			if (entry.runs < MIN_RUNS || (mask & 1) != 0) {
+				continue;
+			}
+			List<Integer> indexes = new ArrayList<Integer>();
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if ((mask & (1 << i)) != 0) {
+					indexes.add(i);
+				}
+			}
+			Collections.sort(indexes, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return weight[a] != weight[b] ? Long.compare(weight[b], weight[a]) : a - b;
+				}
+			});
+			List<String> columns = new ArrayList<String>();
+			for (int i : indexes) {
+				columns.add(COLUMNS[i]);
+			}
+
+			boolean served = false;
+			for (int r = 0; r < recommendations.size() && !served; r++) {
+				Recommendation existing = recommendations.get(r);
+				if (existing.serves(mask)) {
+					existing.nanos += entry.totalNanos;
+					served = true;
+				} else if (columns.size() > existing.columns.size()
+						&& columns.subList(0, existing.columns.size()).equals(existing.columns)) {
+					// The longer index serves both combinations.
+					recommendations.set(r, new Recommendation(columns, existing.nanos + entry.totalNanos));
+					served = true;
+				}
+			}
+			if (!served && recommendations.size() < MAX_INDEXES) {
+				recommendations.add(new Recommendation(columns, entry.totalNanos));
+			}
+		}
+		return recommendations;
+	}
+
+	/**
+	 * Runs one recorded lookup of every combination, creates the indexes, and runs
+	 * the lookups again, printing the time of each before and after. An index
+	 * that already exists is left alone and not counted as created.
+	 * @param recommendations - Indexes to create.
+	 * @return The indexes this call created, for drop().
+	 * @throws SQLException if an index could not be created or a lookup failed.
+	 *             The indexes already created by this call are dropped first.
+	 */
+	public List<Recommendation> measure(List<Recommendation> recommendations) throws SQLException {
+		Map<Integer, Object[]> samples = new HashMap<Integer, Object[]>();
+		synchronized (this) {
+			for (Map.Entry<Integer, Usage> entry : usage.entrySet()) {
+				samples.put(entry.getKey(), entry.getValue().sample);
+			}
+		}
+
+		Map<Integer, Long> before = new HashMap<Integer, Long>();
+		for (Map.Entry<Integer, Object[]> sample : samples.entrySet()) {
+			before.put(sample.getKey(), time(sample.getKey(), sample.getValue()));
+		}
+		List<Recommendation> created = new ArrayList<Recommendation>();
+		boolean measured = false;
+		try {
+			for (Recommendation recommendation : recommendations) {
+				long start = System.nanoTime();
+				if (create(recommendation.getCreateSql())) {
+					created.add(recommendation);
+					System.out.println(String.format("  %s (%d ms)", recommendation.getCreateSql(),
+							(System.nanoTime() - start) / 1000000));
+				} else {
+					System.out.println("  " + recommendation.getCreateSql() + " (already exists, left alone)");
+				}
+			}
+			printTimes(samples, before);
+			measured = true;
+		} finally {
+			if (!measured) {
+				dropQuietly(created);
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Runs the lookups again and prints their times next to the times before the indexes.
+	 */
+	private void printTimes(Map<Integer, Object[]> samples, Map<Integer, Long> before) throws SQLException {
+		System.out.println(String.format("%-45s %10s %10s %8s", "FIELDS", "BEFORE MS", "AFTER MS", "SPEEDUP"));
+		long totalBefore = 0;
+		long totalAfter = 0;
+		for (Map.Entry<Integer, Object[]> sample : samples.entrySet()) {
+			long after = time(sample.getKey(), sample.getValue());
+			long previous = before.get(sample.getKey());
+			totalBefore += previous;
+			totalAfter += after;
+			System.out.println(String.format("%-45s %10.2f %10.2f %7.1fx", describe(sample.getKey()), previous / 1e6,
+					after / 1e6, previous / (double) Math.max(after, 1)));
+		}
+		System.out.println(String.format("%-45s %10.2f %10.2f %7.1fx", "All combinations", totalBefore / 1e6,
+				totalAfter / 1e6, totalBefore / (double) Math.max(totalAfter, 1)));
+	}
+
+	/**
+	 * Drops the indexes created by measure().
+	 * @param created - Indexes returned by measure().
+	 * @throws SQLException
+	 */
+	public void drop(List<Recommendation> created) throws SQLException {
+		for (Recommendation recommendation : created) {
+			execute(recommendation.getDropSql());
+		}
+	}
+
+	/**
+	 * Drops indexes after a failure, going on past any error so that the first one is not hidden.
+	 */
+	private void dropQuietly(List<Recommendation> created) {
+		for (Recommendation recommendation : created) {
+			try {
+				execute(recommendation.getDropSql());
+			} catch (SQLException e) {
+				System.err.println("Could not drop " + recommendation.getDropSql() + ", sqlState: " + e.getSQLState());
+			}
+		}
+	}
+
+	/**
+	 * @return The names of the columns of a combination, joined with +.
+	 */
+	public static String describe(int mask) {
+		StringBuilder fields = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				fields.append(fields.length() == 0 ? "" : " + ").append(COLUMNS[i]);
+			}
+		}
+		return fields.toString();
+	}
+
+	/**
+	 * @return The condition the player lookup builds for a combination.
+	 */
+	public static String condition(int mask) {
+		StringBuilder condition = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				condition.append(condition.length() == 0 ? "" : " AND ").append(COLUMNS[i]).append(" = ?");
+			}
+		}
+		return condition.toString();
+	}
+
+	private List<Integer> sortedMasks() {
+		List<Integer> masks = new ArrayList<Integer>(usage.keySet());
+		Collections.sort(masks, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(usage.get(b).totalNanos, usage.get(a).totalNanos);
+			}
+		});
+		return masks;
+	}
+
+	/**
+	 * Runs the first page of a lookup several times without printing it.
+	 * @return The median time taken.
+	 */
+	private long time(int mask, Object[] values) throws SQLException {
+		Writer discard = new NullWriter();
+		long[] times = new long[REPEATS];
+		for (int i = 0; i < REPEATS; i++) {
+			long start = System.nanoTime();
+			try {
+				new PlayerPager(pool, condition(mask), values, PAGE_SIZE, PAGE_SIZE).nextPage(discard);
+			} catch (IOException e) {
+				// Nothing is written anywhere.
+			}
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		return times[REPEATS / 2];
+	}
+
+	/**
+	 * Creates an index.
+	 * @return False if an index of that name already exists.
+	 */
+	private boolean create(String sql) throws SQLException {
+		try {
+			execute(sql);
+			return true;
+		} catch (SQLException e) {
+			if (!ALREADY_EXISTS.equals(e.getSQLState())) {
+				throw e;
+			}
+			return false;
+		}
+	}
+
+	private void execute(String sql) throws SQLException {
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.getConnection().prepareStatement(sql);
+			try {
+				statement.executeUpdate();
+			} finally {
+				statement.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets so that percentiles such as p99 and p999 can be
+ * read without keeping every value, with any number of threads recording at
+ * once without locking.
+ *
+ * Values below 64 nanoseconds have a bucket each. Above that every power of
+ * two is split into 32 buckets, so a percentile is within about 2% of the true
+ * value whatever its size, and the whole range of a long fits in under 1900
+ * buckets.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class LatencyHistogram {
+
+	// Buckets per power of two, as a number of bits.
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values below this have a bucket each.
+	private static final int LINEAR = SUB_BUCKETS * 2;
+	private static final int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos - A latency in nanoseconds, negative values count as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long previous;
+		while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+			// Another thread raised the maximum, try again.
+		}
+	}
+
+	/**
+	 * Adds every value of another histogram to this one.
+	 * @param other - Histogram to add.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.counts.get(i);
+			if (n > 0) {
+				counts.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		long value = other.max.get();
+		long previous;
+		while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+			// Another thread raised the maximum, try again.
+		}
+	}
+
+	/**
+	 * Forgets every value recorded.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return Mean latency in nanoseconds, 0 if nothing was recorded.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / (double) n;
+	}
+
+	/**
+	 * @return Highest latency recorded, in nanoseconds.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param fraction - Fraction of the values that are at most the result, such as 0.999.
+	 * @return The latency in nanoseconds, 0 if nothing was recorded.
+	 */
+	public long getPercentile(double fraction) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(middle(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return Bucket of a value that is not negative.
+	 */
+	private static int bucket(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return The middle of the values of a bucket.
+	 */
+	private static long middle(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long low = (long) (SUB_BUCKETS + (bucket - LINEAR) % SUB_BUCKETS) << shift;
+		return low + (1L << shift) / 2;
+	}
+}
@@ -0,0 +1,859 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Generates a complete league database for benchmarks and load tests: players,
+ * officials and coordinators, and leagues with their seasons, teams, rosters,
+ * captains, registrations, games and officials for every game. The amount of
+ * data is set by a scale factor, where scale 1 has 5000 players and 18
+ * leagues, and every kind of row grows in proportion to it.
+ *
+ * Every row is computed from the seed and its position only, so the same seed
+ * and scale always give the same data however many threads write it, and a
+ * benchmark can work out the values of any generated row without reading it
+ * back. All foreign keys are respected, and no player is on two teams of the
+ * same season of a league, as required by the oneTeam trigger.
+ *
+ * The rows are written in three steps, each split between the threads: the
+ * people, then the captains, then the leagues with everything in them. Each
+ * thread either inserts its rows in batches on its own connection, or writes
+ * them to delimited files that load.clp loads with the DB2 LOAD command.
+ *
+ * Generated rows use ids and sports set apart for them: players from
+ * FIRST_PID, officials from FIRST_OID, coordinators from FIRST_CID and sports
+ * starting with SPORT_PREFIX. remove() deletes those and the given number of
+ * ids after them, so this should be run against a scratch copy of the schema. The check constraint on Player
+ * only allows MAX_PLAYERS generated players; larger scales number the players
+ * from WIDE_FIRST_PID and need the tables created without their check
+ * constraints.
+ *
+ * Usage: java LeagueDataGenerator scale threads url username password
+ *        java LeagueDataGenerator scale threads -files directory
+ * The seed is set with -Dgen.seed, 421 by default.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class LeagueDataGenerator {
+
+	// First ids of the generated people, inside the ranges allowed by the check
+	// constraints. The generated people take the ids from these up, followed by
+	// the people benchmarks enter.
+	public static final int FIRST_PID = 260410001;
+	public static final int FIRST_OID = 380001;
+	public static final int FIRST_CID = 545001;
+	// Most players numbered from FIRST_PID, leaving room below 260500000 for players added by benchmarks.
+	public static final int MAX_PLAYERS = 85000;
+	// First player id when there are more players than that.
+	public static final int WIDE_FIRST_PID = 1000000000;
+	// Prefix of the generated sports.
+	public static final String SPORT_PREFIX = "PERF-";
+	// Levels of every generated sport.
+	public static final String[] LEVELS = { "A", "B", "C" };
+	// Seasons of every league, one per year from FIRST_YEAR.
+	public static final int FIRST_YEAR = 2024;
+	public static final int YEARS = 5;
+	// Teams per season, and every pair of them plays once.
+	public static final int TEAMS_PER_SEASON = 8;
+	public static final int GAMES_PER_SEASON = TEAMS_PER_SEASON * (TEAMS_PER_SEASON - 1) / 2;
+	// Games are played at these times, one week apart once every time is taken.
+	public static final String[] GAME_TIMES = { "09:00:00", "11:00:00", "13:00:00", "15:00:00" };
+	// Free times games can be moved to on their own day, one for each of GAME_TIMES.
+	public static final String[] MOVED_TIMES = { "17:00:00", "19:00:00", "21:00:00", "23:00:00" };
+	// Script written with the bulk files, which loads them in order.
+	public static final String LOAD_SCRIPT = "load.clp";
+
+	// Amount of each kind of data at scale 1.
+	private static final int PLAYERS_PER_SCALE = 5000;
+	private static final int OFFICIALS_PER_SCALE = 50;
+	private static final int COORDINATORS_PER_SCALE = 10;
+	private static final int SPORTS_PER_SCALE = 6;
+	// Smallest and largest roster of a generated team.
+	private static final int MIN_ROSTER = 6;
+	private static final int MAX_ROSTER = 14;
+	// Rows sent per batch.
+	private static final int BATCH_SIZE = 1000;
+	// Values written to the bulk files without string delimiters.
+	private static final Pattern DATE_OR_TIME = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2}|\\d{2}:\\d{2}:\\d{2})$");
+
+	private static final String[] SYLLABLES = { "ba", "ber", "bo", "ca", "chen", "da", "del", "do", "fer", "ga",
+			"gor", "ha", "kov", "la", "li", "lo", "ma", "mac", "mi", "mo", "na", "ni", "no", "pa", "pe", "ri", "ro",
+			"sa", "shi", "son", "ta", "ti", "to", "va", "vi", "wa", "wel", "ya", "zi" };
+	private static final String[] FIRST_NAMES = { "Andrew", "Anna", "Chloe", "David", "Emma", "Felix", "James",
+			"Julie", "Liam", "Maria", "Maxim", "Noah", "Olivia", "Sarah", "Thomas", "Zoe" };
+	private static final String[] STREETS = { "Sherbrooke", "Saint-Catherine", "University", "Peel", "Milton",
+			"Durocher", "Aylmer", "Prince Arthur", "Saint-Laurent", "Saint-Denis", "Rachel", "Mont-Royal" };
+	private static final String[] TEAM_ADJECTIVES = { "Red", "Blue", "Golden", "Flying", "Mighty", "Silent",
+			"Roaring", "Lucky" };
+	private static final String[] TEAM_NOUNS = { "Falcons", "Otters", "Wolves", "Comets", "Badgers", "Pirates",
+			"Dragons", "Moose", "Herons", "Lynx", "Beavers" };
+	private static final String[] ROLES = { "referee", "timekeeper" };
+
+	// Kinds of rows, each with its own random numbers so that they do not depend on each other.
+	private static final int PLAYER_ROWS = 1;
+	private static final int OFFICIAL_ROWS = 2;
+	private static final int COORDINATOR_ROWS = 3;
+	private static final int LEAGUE_ROWS = 4;
+	private static final int TEAM_ROWS = 5;
+	private static final int CAPTAIN_ROWS = 6;
+
+	/**
+	 * The generated tables, in an order that respects the foreign keys.
+	 */
+	public enum Table {
+		PLAYER("Player", 9), OFFICIAL("Official", 10), COORDINATOR("Coordinator", 10), CAPTAIN("Captain", 6),
+		LEAGUE("League", 5), SEASON("Season", 5), TEAM("Team", 4), PLAYS_FOR("PlaysFor", 5),
+		REGISTERS("Registers", 6), CREATES("Creates", 4), GAME("Game", 4), HAS_TEAMS("HasTeams", 12),
+		OFFICIATES("Officiates", 6);
+
+		private final String name;
+		private final int columns;
+
+		private Table(String name, int columns) {
+			this.name = name;
+			this.columns = columns;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getInsertSql() {
+			StringBuilder sql = new StringBuilder("insert into " + name + " values (");
+			for (int i = 0; i < columns; i++) {
+				sql.append(i == 0 ? "?" : ", ?");
+			}
+			return sql.append(")").toString();
+		}
+	}
+
+	private final long seed;
+	private final int players;
+	private final int officials;
+	private final int coordinators;
+	private final int leagues;
+	private final int firstPid;
+
+	/**
+	 * @param scale - Size of the data, 1 for 5000 players and 18 leagues.
+	 * @param seed - Seed of the random values.
+	 */
+	public LeagueDataGenerator(double scale, long seed) {
+		if (scale <= 0) {
+			throw new IllegalArgumentException("The scale must be positive.");
+		}
+		this.seed = seed;
+		// Every season needs enough players for full rosters without anyone playing twice.
+		this.players = Math.max(TEAMS_PER_SEASON * MAX_ROSTER, (int) Math.round(PLAYERS_PER_SCALE * scale));
+		this.officials = Math.max(ROLES.length, (int) Math.round(OFFICIALS_PER_SCALE * scale));
+		this.coordinators = Math.max(1, (int) Math.round(COORDINATORS_PER_SCALE * scale));
+		this.leagues = Math.max(1, (int) Math.round(SPORTS_PER_SCALE * scale)) * LEVELS.length;
+		if (FIRST_OID + officials >= 400000 || FIRST_CID + coordinators >= 550000
+				|| (long) WIDE_FIRST_PID + players > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The scale is too large for the ids of the schema.");
+		}
+		this.firstPid = players > MAX_PLAYERS ? WIDE_FIRST_PID : FIRST_PID;
+	}
+
+	public int getPlayers() {
+		return players;
+	}
+
+	public int getOfficials() {
+		return officials;
+	}
+
+	public int getCoordinators() {
+		return coordinators;
+	}
+
+	public int getLeagues() {
+		return leagues;
+	}
+
+	public int getSeasons() {
+		return leagues * YEARS;
+	}
+
+	public int getGames() {
+		return getSeasons() * GAMES_PER_SEASON;
+	}
+
+	/**
+	 * @return Id of the first generated player, FIRST_PID unless there are more than MAX_PLAYERS.
+	 */
+	public int getFirstPid() {
+		return firstPid;
+	}
+
+	/**
+	 * @return Whether the players fit the check constraint of the Player table.
+	 */
+	public boolean fitsChecks() {
+		return firstPid == FIRST_PID;
+	}
+
+	/**
+	 * Inserts all of the data on one connection, committing after every batch.
+	 * @param con - Connection to the schema.
+	 * @return Number of rows inserted.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long generate(Connection con) throws SQLException, IOException {
+		boolean autoCommit = con.getAutoCommit();
+		con.setAutoCommit(false);
+		try {
+			JdbcSink sink = new JdbcSink(con);
+			try {
+				writePeople(sink, 0, 1);
+				sink.flush();
+				writeCaptains(sink, captains(), 0, 1);
+				sink.flush();
+				writeLeagues(sink, 0, leagues);
+			} finally {
+				sink.close();
+			}
+			return sink.rows;
+		} finally {
+			con.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Inserts all of the data, each thread on its own connection from the pool.
+	 * @param pool - Pool with room for a connection per thread.
+	 * @param threads - Number of threads inserting.
+	 * @return Number of rows inserted.
+	 * @throws SQLException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long generate(final ConnectionPool pool, int threads) throws SQLException, IOException,
+			InterruptedException {
+		return run(threads, new SinkFactory() {
+			@Override
+			public RowSink open(int part) throws SQLException {
+				final PooledConnection connection = pool.borrow();
+				connection.getConnection().setAutoCommit(false);
+				return new JdbcSink(connection.getConnection()) {
+					@Override
+					void close() throws SQLException {
+						try {
+							super.close();
+							connection.getConnection().setAutoCommit(true);
+						} finally {
+							connection.close();
+						}
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Writes all of the data to delimited files, one per table and thread, and a
+	 * script that loads them in order. After connecting to the database, run it
+	 * with: db2 -tvf load.clp
+	 * @param directory - Directory for the files, created if needed.
+	 * @param threads - Number of threads writing.
+	 * @return Number of rows written.
+	 * @throws SQLException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long writeFiles(final File directory, int threads) throws SQLException, IOException,
+			InterruptedException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		long rows = run(threads, new SinkFactory() {
+			@Override
+			public RowSink open(int part) {
+				return new FileSink(directory, part);
+			}
+		});
+
+		PrintWriter script = new PrintWriter(new FileWriter(new File(directory, LOAD_SCRIPT)));
+		try {
+			for (Table table : Table.values()) {
+				for (int part = 0; part < threads; part++) {
+					File file = FileSink.file(directory, table, part);
+					if (file.isFile()) {
+						script.println("LOAD FROM \"" + file.getAbsolutePath() + "\" OF DEL INSERT INTO "
+								+ table.getName() + ";");
+					}
+				}
+			}
+			// LOAD does not check the constraints, so every table waits for this.
+			for (Table table : Table.values()) {
+				script.println("SET INTEGRITY FOR " + table.getName() + " IMMEDIATE CHECKED;");
+			}
+		} finally {
+			script.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Inserts the leagues and everything in them, with their captains. The
+	 * people must already exist and the captains must not.
+	 * @param con - Connection to the schema, with auto-commit off.
+	 * @return Number of rows inserted.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long generateLeagues(Connection con) throws SQLException, IOException {
+		JdbcSink sink = new JdbcSink(con);
+		try {
+			writeCaptains(sink, captains(), 0, 1);
+			sink.flush();
+			writeLeagues(sink, 0, leagues);
+		} finally {
+			sink.close();
+		}
+		return sink.rows;
+	}
+
+	/**
+	 * Deletes every generated row. Rows which refer to them are deleted by the cascading foreign keys.
+	 * @param con - Connection to the schema.
+	 * @param added - Number of people of each kind entered after the generated ones, such as by a
+	 *        benchmark, which are deleted as well. Ids past those are left alone.
+	 * @return Number of leagues, players, officials and coordinators deleted.
+	 * @throws SQLException
+	 */
+	public int remove(Connection con, int added) throws SQLException {
+		int deleted = 0;
+		Statement statement = con.createStatement();
+		try {
+			deleted += statement.executeUpdate("delete from League where sport like '" + SPORT_PREFIX + "%'");
+			deleted += statement.executeUpdate("delete from Player where " + between("pid", firstPid, players + added));
+			deleted += statement.executeUpdate("delete from Official where "
+					+ between("oid", FIRST_OID, officials + added));
+			deleted += statement.executeUpdate("delete from Coordinator where "
+					+ between("cid", FIRST_CID, coordinators + added));
+		} finally {
+			statement.close();
+		}
+		if (!con.getAutoCommit()) {
+			con.commit();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes the generated leagues and captains, so that generateLeagues() can
+	 * run again on the same people.
+	 * @param con - Connection to the schema.
+	 * @param added - Number of players entered after the generated ones, whose captains are deleted as well.
+	 * @throws SQLException
+	 */
+	public void removeLeagues(Connection con, int added) throws SQLException {
+		Statement statement = con.createStatement();
+		try {
+			statement.executeUpdate("delete from League where sport like '" + SPORT_PREFIX + "%'");
+			statement.executeUpdate("delete from Captain where " + between("cptnid", firstPid, players + added));
+		} finally {
+			statement.close();
+		}
+		if (!con.getAutoCommit()) {
+			con.commit();
+		}
+	}
+
+	/**
+	 * @return A condition on a column for the given number of ids from the first one.
+	 */
+	private static String between(String column, int first, int count) {
+		return column + " between " + first + " and " + ((long) first + count - 1);
+	}
+
+	/**
+	 * @param i - Position of the player, from 0. Positions from getPlayers() up are not inserted.
+	 * @return The columns of the generated player, in table order.
+	 */
+	public Object[] playerRow(int i) {
+		Random random = rowRandom(PLAYER_ROWS, i);
+		String lname = lastName(random);
+		String fname = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+		return new Object[] { firstPid + i, random.nextBoolean() ? "m" : "f", lname, fname, address(random),
+				String.format("514%07d", i % 10000000), email(fname, lname, i),
+				date(1960 + random.nextInt(50), random), date(2015 + random.nextInt(10), random) };
+	}
+
+	/**
+	 * @param i - Position of the official, from 0.
+	 * @return The columns of the generated official, in table order.
+	 */
+	public Object[] officialRow(int i) {
+		return staffRow(OFFICIAL_ROWS, FIRST_OID + i, i, 15 + rowRandom(OFFICIAL_ROWS, -1 - i).nextInt(30));
+	}
+
+	/**
+	 * @param i - Position of the coordinator, from 0.
+	 * @return The columns of the generated coordinator, in table order.
+	 */
+	public Object[] coordinatorRow(int i) {
+		return staffRow(COORDINATOR_ROWS, FIRST_CID + i, i, 35000 + rowRandom(COORDINATOR_ROWS, -1 - i).nextInt(40000));
+	}
+
+	/**
+	 * @param game - Position of the game among every generated game, from 0.
+	 * @return The key of the game: time, date, sport and level.
+	 */
+	public String[] game(int game) {
+		int season = game / GAMES_PER_SEASON;
+		String[] league = league(season / YEARS);
+		String[] slot = gameSlot(FIRST_YEAR + season % YEARS, game % GAMES_PER_SEASON);
+		return new String[] { slot[1], slot[0], league[0], league[1] };
+	}
+
+	/**
+	 * @param game - Position of the game, from 0.
+	 * @return A time on the day of the game at which no generated game is played, and to which
+	 *         no other game of the same day and league is moved.
+	 */
+	public static String movedTime(int game) {
+		return MOVED_TIMES[game % GAMES_PER_SEASON % GAME_TIMES.length];
+	}
+
+	/**
+	 * @param league - Position of the league, from 0.
+	 * @return The sport and level of the league.
+	 */
+	public String[] league(int league) {
+		return new String[] { String.format("%s%04d", SPORT_PREFIX, league / LEVELS.length),
+				LEVELS[league % LEVELS.length] };
+	}
+
+	/**
+	 * @param season - Position of the season within its league, from 0.
+	 * @param team - Position of the team within the season, from 0.
+	 * @return The name of the team.
+	 */
+	public static String teamName(int season, int team) {
+		return TEAM_ADJECTIVES[team] + " " + TEAM_NOUNS[(season + team) % TEAM_NOUNS.length];
+	}
+
+	/**
+	 * @param year - Year of the season.
+	 * @param match - Position of the game in the season, from 0.
+	 * @return The date and time of the game.
+	 */
+	public static String[] gameSlot(int year, int match) {
+		Calendar day = Calendar.getInstance();
+		day.clear();
+		day.set(year, Calendar.SEPTEMBER, 1);
+		day.add(Calendar.DAY_OF_MONTH, 7 * (match / GAME_TIMES.length));
+		return new String[] { new SimpleDateFormat("yyyy-MM-dd").format(day.getTime()),
+				GAME_TIMES[match % GAME_TIMES.length] };
+	}
+
+	/**
+	 * Runs the three steps, each split into one part per thread, waiting for
+	 * every part of a step before the next one starts.
+	 * @return Number of rows written.
+	 */
+	private long run(int threads, final SinkFactory factory) throws SQLException, IOException, InterruptedException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread.");
+		}
+		final int parts = threads;
+		final BitSet captains = captains();
+		final AtomicLong rows = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int step = 0; step < 3; step++) {
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (int p = 0; p < parts; p++) {
+					final int part = p;
+					final int currentStep = step;
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							RowSink sink = factory.open(part);
+							try {
+								if (currentStep == 0) {
+									writePeople(sink, part, parts);
+								} else if (currentStep == 1) {
+									writeCaptains(sink, captains, part, parts);
+								} else {
+									writeLeagues(sink, leagues * part / parts, leagues * (part + 1) / parts);
+								}
+							} finally {
+								sink.close();
+							}
+							rows.addAndGet(sink.rows);
+							return null;
+						}
+					});
+				}
+				for (Future<Void> result : executor.invokeAll(tasks)) {
+					try {
+						result.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof SQLException) {
+							throw (SQLException) e.getCause();
+						} else if (e.getCause() instanceof IOException) {
+							throw (IOException) e.getCause();
+						}
+						throw new RuntimeException(e.getCause());
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return rows.get();
+	}
+
+	/**
+	 * Writes one part of the players, officials and coordinators.
+	 */
+	private void writePeople(RowSink sink, int part, int parts) throws SQLException, IOException {
+		for (int i = (int) ((long) players * part / parts); i < (long) players * (part + 1) / parts; i++) {
+			sink.add(Table.PLAYER, playerRow(i));
+		}
+		for (int i = officials * part / parts; i < officials * (part + 1) / parts; i++) {
+			sink.add(Table.OFFICIAL, officialRow(i));
+		}
+		for (int i = coordinators * part / parts; i < coordinators * (part + 1) / parts; i++) {
+			sink.add(Table.COORDINATOR, coordinatorRow(i));
+		}
+	}
+
+	/**
+	 * Writes one part of the captains, split by player.
+	 */
+	private void writeCaptains(RowSink sink, BitSet captains, int part, int parts) throws SQLException,
+			IOException {
+		int end = (int) ((long) players * (part + 1) / parts);
+		for (int i = captains.nextSetBit((int) ((long) players * part / parts)); i >= 0 && i < end; i = captains
+				.nextSetBit(i + 1)) {
+			sink.add(Table.CAPTAIN, captainRow(firstPid + i));
+		}
+	}
+
+	/**
+	 * @return The positions of the players who captain a team.
+	 */
+	private BitSet captains() {
+		BitSet captains = new BitSet(players);
+		for (int season = 0; season < getSeasons(); season++) {
+			for (int team = 0; team < TEAMS_PER_SEASON; team++) {
+				captains.set(rosterPosition(season, team, 0));
+			}
+		}
+		return captains;
+	}
+
+	/**
+	 * The players of a season are consecutive from a starting point, so no one plays twice.
+	 * @param season - Position of the season among every season, from 0.
+	 * @return Position of the player in a place of a team's roster.
+	 */
+	private int rosterPosition(int season, int team, int slot) {
+		int first = (int) ((season * 7919L) % players);
+		return (first + team * MAX_ROSTER + slot) % players;
+	}
+
+	/**
+	 * Writes the leagues from first up to end, with everything in them.
+	 */
+	private void writeLeagues(RowSink sink, int first, int end) throws SQLException, IOException {
+		for (int league = first; league < end; league++) {
+			String[] key = league(league);
+			String sport = key[0];
+			String level = key[1];
+			Random random = rowRandom(LEAGUE_ROWS, league);
+			int minPlayers = MIN_ROSTER + random.nextInt(MAX_ROSTER - MIN_ROSTER);
+			int minTeams = 4 + random.nextInt(TEAMS_PER_SEASON);
+			sink.add(Table.LEAGUE, new Object[] { sport, level, minPlayers, MAX_ROSTER + 2, minTeams });
+
+			for (int season = 0; season < YEARS; season++) {
+				int year = FIRST_YEAR + season;
+				int seasonIndex = league * YEARS + season;
+				sink.add(Table.SEASON, new Object[] { year, sport, level, year + "-08-15", TEAMS_PER_SEASON + 4 });
+				sink.add(Table.CREATES, new Object[] { FIRST_CID + seasonIndex % coordinators, year, sport, level });
+
+				String[] names = new String[TEAMS_PER_SEASON];
+				for (int team = 0; team < TEAMS_PER_SEASON; team++) {
+					names[team] = teamName(season, team);
+					sink.add(Table.TEAM, new Object[] { names[team], year, sport, level });
+					Random teamRandom = rowRandom(TEAM_ROWS, seasonIndex * TEAMS_PER_SEASON + team);
+					int roster = MIN_ROSTER + teamRandom.nextInt(MAX_ROSTER - MIN_ROSTER + 1);
+					for (int slot = 0; slot < roster; slot++) {
+						int pid = firstPid + rosterPosition(seasonIndex, team, slot);
+						sink.add(Table.PLAYS_FOR, new Object[] { pid, names[team], year, sport, level });
+						if (slot == 0) {
+							sink.add(Table.REGISTERS, new Object[] { pid, names[team], year, sport, level,
+									100 + teamRandom.nextInt(400) });
+						}
+					}
+				}
+
+				int match = 0;
+				for (int home = 0; home < TEAMS_PER_SEASON; home++) {
+					for (int away = home + 1; away < TEAMS_PER_SEASON; away++) {
+						String[] slot = gameSlot(year, match);
+						sink.add(Table.GAME, new Object[] { slot[1], slot[0], sport, level });
+						sink.add(Table.HAS_TEAMS, new Object[] { slot[1], slot[0], sport, level, names[home], year,
+								sport, level, names[away], year, sport, level });
+						int gameIndex = seasonIndex * GAMES_PER_SEASON + match;
+						for (int r = 0; r < ROLES.length; r++) {
+							int oid = FIRST_OID + (gameIndex * ROLES.length + r) % officials;
+							sink.add(Table.OFFICIATES, new Object[] { oid, slot[1], slot[0], sport, level, ROLES[r] });
+						}
+						match++;
+					}
+				}
+			}
+		}
+	}
+
+	private Object[] staffRow(int kind, int id, int i, int salary) {
+		Random random = rowRandom(kind, i);
+		String lname = lastName(random);
+		String fname = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+		return new Object[] { id, random.nextBoolean() ? "m" : "f", lname, fname, address(random),
+				String.format("438%07d", i), email(fname, lname, id), date(1950 + random.nextInt(45), random),
+				date(2010 + random.nextInt(15), random), salary };
+	}
+
+	private Object[] captainRow(int pid) {
+		Random random = rowRandom(CAPTAIN_ROWS, pid);
+		StringBuilder card = new StringBuilder().append(1 + random.nextInt(9));
+		for (int i = 1; i < 16; i++) {
+			card.append(random.nextInt(10));
+		}
+		return new Object[] { pid, address(random), card.toString(), "Card Holder " + pid,
+				(2027 + random.nextInt(5)) + "-" + String.format("%02d", 1 + random.nextInt(12)) + "-01", "Visa" };
+	}
+
+	/**
+	 * Random numbers for one row, the same for every run with the same seed.
+	 */
+	private Random rowRandom(int kind, long position) {
+		return new Random(seed * 31 + kind * 0x9E3779B97F4A7C15L + position * 0xC2B2AE3D27D4EB4FL);
+	}
+
+	private static String lastName(Random random) {
+		StringBuilder name = new StringBuilder();
+		int syllables = 2 + random.nextInt(3);
+		for (int i = 0; i < syllables; i++) {
+			name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.toString();
+	}
+
+	private static String address(Random random) {
+		return (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)] + ", Montreal";
+	}
+
+	private static String email(String fname, String lname, int id) {
+		return (fname + "." + lname).toLowerCase() + id + "@example.com";
+	}
+
+	private static String date(int year, Random random) {
+		return String.format("%d-%02d-%02d", year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean files = args.length == 4 && args[2].equals("-files");
+		if (!files && args.length != 5) {
+			System.err.println("Usage: java LeagueDataGenerator scale threads url username password");
+			System.err.println("       java LeagueDataGenerator scale threads -files directory");
+			System.exit(1);
+		}
+		LeagueDataGenerator generator = new LeagueDataGenerator(Double.parseDouble(args[0]),
+				Long.getLong("gen.seed", 421));
+		int threads = Integer.parseInt(args[1]);
+		System.out.println(String.format("Generating %d players, %d officials, %d coordinators, %d seasons and "
+				+ "%d games with %d threads", generator.getPlayers(), generator.getOfficials(),
+				generator.getCoordinators(), generator.getSeasons(), generator.getGames(), threads));
+
+		long start = System.nanoTime();
+		long rows;
+		if (files) {
+			rows = generator.writeFiles(new File(args[3]), threads);
+		} else {
+			DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+			ConnectionPool pool = new ConnectionPool(args[2], args[3], args[4], 1, threads);
+			try {
+				PooledConnection connection = pool.borrow();
+				try {
+					generator.remove(connection.getConnection(), 0);
+				} finally {
+					connection.close();
+				}
+				rows = generator.generate(pool, threads);
+			} finally {
+				pool.close();
+			}
+		}
+		long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.out.println(String.format("%d rows in %d ms (%d rows/s)", rows, millis, rows * 1000 / millis));
+		if (files) {
+			System.out.println("Load them with: db2 -tvf " + new File(args[3], LOAD_SCRIPT).getPath());
+		}
+	}
+
+	/**
+	 * Where the rows of one part go.
+	 */
+	private abstract static class RowSink {
+		long rows = 0;
+
+		abstract void add(Table table, Object[] values) throws SQLException, IOException;
+
+		abstract void close() throws SQLException, IOException;
+	}
+
+	/**
+	 * Opens the sink of one part of a step.
+	 */
+	private interface SinkFactory {
+		RowSink open(int part) throws SQLException, IOException;
+	}
+
+	/**
+	 * Inserts rows in batches. Every batch sends the waiting rows table by table,
+	 * in the order of Table, and commits, so a row is never sent before a row it
+	 * refers to that was added earlier.
+	 */
+	private static class JdbcSink extends RowSink {
+		private final Connection con;
+		private final PreparedStatement[] inserts = new PreparedStatement[Table.values().length];
+		private final int[] waiting = new int[inserts.length];
+		private int pending = 0;
+
+		JdbcSink(Connection con) {
+			this.con = con;
+		}
+
+		@Override
+		void add(Table table, Object[] values) throws SQLException {
+			PreparedStatement insert = inserts[table.ordinal()];
+			if (insert == null) {
+				insert = con.prepareStatement(table.getInsertSql());
+				inserts[table.ordinal()] = insert;
+			}
+			for (int i = 0; i < values.length; i++) {
+				insert.setObject(i + 1, values[i]);
+			}
+			insert.addBatch();
+			waiting[table.ordinal()]++;
+			rows++;
+			if (++pending >= BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		void flush() throws SQLException {
+			for (int t = 0; t < inserts.length; t++) {
+				if (waiting[t] > 0) {
+					inserts[t].executeBatch();
+					waiting[t] = 0;
+				}
+			}
+			con.commit();
+			pending = 0;
+		}
+
+		@Override
+		void close() throws SQLException {
+			try {
+				flush();
+			} finally {
+				for (PreparedStatement insert : inserts) {
+					if (insert != null) {
+						insert.close();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes rows to one delimited file per table, in the format of the DB2 LOAD
+	 * and IMPORT commands: comma separated, strings in double quotes.
+	 */
+	private static class FileSink extends RowSink {
+		private final File directory;
+		private final int part;
+		private final Writer[] files = new Writer[Table.values().length];
+
+		FileSink(File directory, int part) {
+			this.directory = directory;
+			this.part = part;
+		}
+
+		static File file(File directory, Table table, int part) {
+			return new File(directory, table.getName() + "." + part + ".del");
+		}
+
+		@Override
+		void add(Table table, Object[] values) throws IOException {
+			Writer out = files[table.ordinal()];
+			if (out == null) {
+				out = new BufferedWriter(new FileWriter(file(directory, table, part)), 1 << 16);
+				files[table.ordinal()] = out;
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				String value = values[i].toString();
+				if (values[i] instanceof String && !DATE_OR_TIME.matcher(value).matches()) {
+					out.write('"');
+					out.write(value.replace("\"", "\"\""));
+					out.write('"');
+				} else {
+					out.write(value);
+				}
+			}
+			out.write('\n');
+			rows++;
+		}
+
+		@Override
+		void close() throws IOException {
+			IOException failure = null;
+			for (Writer out : files) {
+				try {
+					if (out != null) {
+						out.close();
+					}
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
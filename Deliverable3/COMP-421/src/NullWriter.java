@@ -0,0 +1,26 @@
+import java.io.Writer;
+
+/**
+ * Writer that discards everything written to it, for timing code that prints
+ * its results without the cost of printing them.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class NullWriter extends Writer {
+
+	@Override
+	public void write(char[] buffer, int offset, int length) {
+	}
+
+	@Override
+	public void write(String text) {
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,360 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Gives officials to the upcoming games of a season so that every game has a
+ * referee and a timekeeper, without booking an official for two games at once.
+ *
+ * The games are taken in order of time, and each missing role goes to the
+ * best free official: the one with the fewest upcoming games to balance the
+ * load, or the one with the lowest hourly salary to keep the cost down. The
+ * officials are kept in a priority queue by that measure, so each role is
+ * filled by taking officials off the queue until one is free, which is checked
+ * against the BookingIndex and the games already given in this plan. Roles
+ * already filled in Officiates are kept. A role no official is free for is
+ * left empty and counted.
+ *
+ * The plan is worked out in memory and written with one batch of inserts and
+ * a single commit.
+ *
+ * Usage: java OfficialAssigner url username password year sport level [balance|cost]
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class OfficialAssigner {
+
+	/**
+	 * What to prefer when choosing between free officials.
+	 */
+	public enum Goal {
+		BALANCE, COST
+	}
+
+	// Every game needs one official in each of these roles.
+	public static final String[] ROLES = { "referee", "timekeeper" };
+	private static final String INSERT = "INSERT INTO Officiates VALUES (?, ?, ?, ?, ?, ?)";
+
+	private static final DatabaseMetrics.Operation METRICS = DatabaseMetrics.getDefault().operation("sql.assign");
+
+	/**
+	 * An official given a role at a game.
+	 */
+	public static class Assignment {
+		private final String[] game;
+		private final int oid;
+		private final String role;
+
+		Assignment(String[] game, int oid, String role) {
+			this.game = game;
+			this.oid = oid;
+			this.role = role;
+		}
+
+		/**
+		 * @return Time, date, sport and level of the game.
+		 */
+		public String[] getGame() {
+			return game.clone();
+		}
+
+		public int getOid() {
+			return oid;
+		}
+
+		public String getRole() {
+			return role;
+		}
+	}
+
+	/**
+	 * The officials given to the games of a season.
+	 */
+	public static class Plan {
+		private final List<Assignment> assignments = new ArrayList<Assignment>();
+		private int games = 0;
+		private int uncovered = 0;
+		private long cost = 0;
+
+		public List<Assignment> getAssignments() {
+			return assignments;
+		}
+
+		/**
+		 * @return Number of upcoming games of the season.
+		 */
+		public int getGames() {
+			return games;
+		}
+
+		/**
+		 * @return Number of roles left empty because no official was free.
+		 */
+		public int getUncovered() {
+			return uncovered;
+		}
+
+		/**
+		 * @return Hourly salaries of the officials given, times the length of a game.
+		 */
+		public double getCost() {
+			return cost * BookingIndex.GAME_MINUTES / 60.0;
+		}
+	}
+
+	/**
+	 * An official and how many upcoming games they have.
+	 */
+	private static class Candidate {
+		final int oid;
+		final int salary;
+		int games;
+
+		Candidate(int oid, int salary) {
+			this.oid = oid;
+			this.salary = salary;
+		}
+	}
+
+	private final ConnectionPool pool;
+	private final BookingIndex bookings;
+
+	/**
+	 * @param pool - Pool to borrow connections from.
+	 * @param bookings - Loaded bookings of every game, updated with the officials written.
+	 */
+	public OfficialAssigner(ConnectionPool pool, BookingIndex bookings) {
+		this.pool = pool;
+		this.bookings = bookings;
+	}
+
+	/**
+	 * Works out the officials of every game of a season from a date on, without writing them.
+	 * @param year - Year of the season.
+	 * @param sport - Sport of the league.
+	 * @param level - Level of the league.
+	 * @param from - First date of the games, YYYY-MM-DD.
+	 * @param goal - Whether to balance the load or to lower the cost.
+	 * @return The plan.
+	 * @throws SQLException
+	 */
+	public Plan plan(int year, String sport, String level, String from, Goal goal) throws SQLException {
+		List<String[]> games = new ArrayList<String[]>();
+		// Roles filled and officials at each game, as "role,#oid," for each, by game.
+		Map<String, String> filled = new HashMap<String, String>();
+		Map<Integer, Candidate> officials = new HashMap<Integer, Candidate>();
+		PooledConnection connection = pool.borrow();
+		try {
+			for (String[] row : read(connection, "SELECT DISTINCT G.gtime, G.gdate FROM Game G, HasTeams H WHERE "
+					+ "H.gtime = G.gtime AND H.gdate = G.gdate AND H.sport = G.sport AND H.llevel = G.llevel "
+					+ "AND H.syear1 = ? AND G.sport = ? AND G.llevel = ? AND G.gdate >= ? ORDER BY G.gdate, G.gtime",
+					year, sport, level, from)) {
+				games.add(new String[] { row[0], row[1], sport, level });
+			}
+			for (String[] row : read(connection, "SELECT oid, gtime, gdate, role FROM Officiates "
+					+ "WHERE sport = ? AND llevel = ? AND gdate >= ?", sport, level, from)) {
+				String key = row[1] + " " + row[2];
+				String roles = filled.get(key);
+				filled.put(key, (roles == null ? "" : roles) + row[3] + ",#" + row[0].trim() + ",");
+			}
+			for (String[] row : read(connection, "SELECT oid, hourlysal FROM Official")) {
+				Candidate candidate = new Candidate(Integer.parseInt(row[0].trim()), Integer.parseInt(row[1].trim()));
+				officials.put(candidate.oid, candidate);
+			}
+			for (String[] row : read(connection, "SELECT oid, COUNT(*) FROM Officiates WHERE gdate >= ? GROUP BY oid",
+					from)) {
+				Candidate candidate = officials.get(Integer.parseInt(row[0].trim()));
+				if (candidate != null) {
+					candidate.games = Integer.parseInt(row[1].trim());
+				}
+			}
+		} finally {
+			connection.close();
+		}
+
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(Math.max(1, officials.size()), order(goal));
+		queue.addAll(officials.values());
+		// Start times of the games given to each official by this plan.
+		Map<Integer, TreeSet<Long>> planned = new HashMap<Integer, TreeSet<Long>>();
+		Plan plan = new Plan();
+		plan.games = games.size();
+		List<Candidate> busy = new ArrayList<Candidate>();
+		for (String[] game : games) {
+			long start = BookingIndex.minutes(game[1], game[0]);
+			String roles = filled.get(game[0] + " " + game[1]);
+			roles = roles == null ? "" : roles;
+			for (String role : ROLES) {
+				if (roles.contains(role)) {
+					continue;
+				}
+				Candidate chosen = null;
+				while (chosen == null && !queue.isEmpty()) {
+					Candidate candidate = queue.poll();
+					if (!roles.contains("#" + candidate.oid + ",") && bookings.isFree(candidate.oid, game)
+							&& isFree(planned.get(candidate.oid), start)) {
+						chosen = candidate;
+					} else {
+						busy.add(candidate);
+					}
+				}
+				if (chosen == null) {
+					plan.uncovered++;
+				} else {
+					plan.assignments.add(new Assignment(game, chosen.oid, role));
+					plan.cost += chosen.salary;
+					chosen.games++;
+					roles += role + ",#" + chosen.oid + ",";
+					TreeSet<Long> starts = planned.get(chosen.oid);
+					if (starts == null) {
+						starts = new TreeSet<Long>();
+						planned.put(chosen.oid, starts);
+					}
+					starts.add(start);
+					queue.add(chosen);
+				}
+				queue.addAll(busy);
+				busy.clear();
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Inserts the officials of a plan in one batch and commits, then records them in the bookings.
+	 * @param plan - Plan made by plan().
+	 * @return Number of officials inserted.
+	 * @throws SQLException if any insert fails. Nothing is written.
+	 */
+	public int write(Plan plan) throws SQLException {
+		if (plan.assignments.isEmpty()) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		PooledConnection connection = pool.borrow();
+		try {
+			Connection con = connection.getConnection();
+			con.setAutoCommit(false);
+			try {
+				PreparedStatement insert = connection.prepare(INSERT);
+				for (Assignment assignment : plan.assignments) {
+					insert.setInt(1, assignment.oid);
+					for (int i = 0; i < assignment.game.length; i++) {
+						insert.setString(i + 2, assignment.game[i]);
+					}
+					insert.setString(6, assignment.role);
+					insert.addBatch();
+				}
+				DatabaseMetrics.getDefault().countStatement(INSERT);
+				insert.executeBatch();
+				con.commit();
+				METRICS.record(start, plan.assignments.size());
+			} catch (SQLException e) {
+				con.rollback();
+				METRICS.recordError(start, e);
+				throw e;
+			}
+		} finally {
+			connection.close();
+		}
+		for (Assignment assignment : plan.assignments) {
+			bookings.addOfficial(assignment.game, assignment.oid);
+		}
+		return plan.assignments.size();
+	}
+
+	/**
+	 * @return True if no start time is within a game length of the given one.
+	 */
+	private static boolean isFree(TreeSet<Long> starts, long start) {
+		return starts == null
+				|| starts.subSet(start - BookingIndex.GAME_MINUTES, false, start + BookingIndex.GAME_MINUTES, false)
+						.isEmpty();
+	}
+
+	/**
+	 * @return The order in which officials are tried, best first, lower oid first when equal.
+	 */
+	private static Comparator<Candidate> order(final Goal goal) {
+		return new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				int first = goal == Goal.COST ? compare(a.salary, b.salary) : compare(a.games, b.games);
+				if (first != 0) {
+					return first;
+				}
+				int second = goal == Goal.COST ? compare(a.games, b.games) : compare(a.salary, b.salary);
+				return second != 0 ? second : compare(a.oid, b.oid);
+			}
+
+			private int compare(int x, int y) {
+				return x < y ? -1 : x > y ? 1 : 0;
+			}
+		};
+	}
+
+	/**
+	 * Runs a query.
+	 * @return Every column of every row, as strings.
+	 */
+	private static List<String[]> read(PooledConnection connection, String sql, Object... params) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = connection.prepare(sql);
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, params[i]);
+		}
+		List<String[]> rows = new ArrayList<String[]>();
+		ResultSet rs = statement.executeQuery();
+		try {
+			int columns = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				String[] row = new String[columns];
+				for (int i = 0; i < columns; i++) {
+					row[i] = rs.getString(i + 1);
+				}
+				rows.add(row);
+			}
+		} finally {
+			rs.close();
+		}
+		return rows;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 6) {
+			System.err.println("Usage: java OfficialAssigner url username password year sport level [balance|cost]");
+			System.exit(1);
+		}
+		Goal goal = args.length > 6 ? Goal.valueOf(args[6].toUpperCase()) : Goal.BALANCE;
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, 1);
+		try {
+			BookingIndex bookings = new BookingIndex();
+			long start = System.nanoTime();
+			bookings.load(pool);
+			long loaded = System.nanoTime();
+			OfficialAssigner assigner = new OfficialAssigner(pool, bookings);
+			Plan plan = assigner.plan(Integer.parseInt(args[3]), args[4], args[5],
+					new SimpleDateFormat("yyyy-MM-dd").format(new Date()), goal);
+			long planned = System.nanoTime();
+			int written = assigner.write(plan);
+			long end = System.nanoTime();
+			System.out.println(String.format("%d upcoming games: %d officials given, %d roles left empty, cost %.2f",
+					plan.getGames(), written, plan.getUncovered(), plan.getCost()));
+			System.out.println(String.format("Bookings loaded in %d ms, planned in %d ms, written in %d ms",
+					(loaded - start) / 1000000, (planned - loaded) / 1000000, (end - planned) / 1000000));
+		} finally {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cleans seasons or teams in parallel, one partition per league. Seasons and
+ * teams of different (sport, llevel) leagues never depend on each other, so
+ * every league is cleaned by a worker with its own connection and its own
+ * transaction. The number of workers is bounded by the number of processors
+ * and by the size of the connection pool.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ParallelCleaner {
+
+	// Same conditions as the set-based procedure, restricted to one league
+	// both for the rows deleted and for the rows that are counted.
+	private static final String SEASON_SQL = "delete from season s "
+			+ "where s.sport = ? and s.llevel = ? and s.regdeadline < current_date "
+			+ "and (s.syear, s.sport, s.llevel) not in "
+			+ "(select t.syear, t.sport, t.llevel "
+			+ "from team t join league l on l.sport = t.sport and l.llevel = t.llevel "
+			+ "where t.sport = ? and t.llevel = ? "
+			+ "group by t.syear, t.sport, t.llevel, l.minteams "
+			+ "having count(*) >= l.minteams)";
+
+	private static final String TEAM_SQL = "delete from team t "
+			+ "where t.sport = ? and t.llevel = ? "
+			+ "and (t.name, t.syear, t.sport, t.llevel) not in "
+			+ "(select r.name, r.syear, r.sport, r.llevel "
+			+ "from (select p.name, p.syear, p.sport, p.llevel, count(*) as players "
+			+ "from playsfor p where p.sport = ? and p.llevel = ? "
+			+ "group by p.name, p.syear, p.sport, p.llevel) r "
+			+ "join league l on l.sport = r.sport and l.llevel = r.llevel "
+			+ "where r.players >= l.minplayers)";
+
+	// Pool from which every worker borrows its connection.
+	private final ConnectionPool pool;
+	// Number of leagues cleaned at the same time.
+	private final int workers;
+
+	/**
+	 * @param pool - Pool to borrow the connections from.
+	 */
+	public ParallelCleaner(ConnectionPool pool) {
+		this.pool = pool;
+		this.workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), pool.getMaxSize()));
+	}
+
+	/**
+	 * Deletes the seasons or teams which do not meet the minimum requirements,
+	 * one league per task, and reports the time taken by each league and how
+	 * many leagues were being cleaned at once on average: the total of the
+	 * league times over the wall time. That is not a speedup, as no serial run
+	 * is measured to compare with.
+	 * @param selection - 'season' or 'team'.
+	 * @return Number of seasons or teams deleted in the leagues that succeeded.
+	 * @throws SQLException if the leagues could not be listed.
+	 */
+	public int clean(String selection) throws SQLException {
+		final String deleteSql;
+		if (selection.equals("season")) {
+			deleteSql = SEASON_SQL;
+		} else if (selection.equals("team")) {
+			deleteSql = TEAM_SQL;
+		} else {
+			throw new IllegalArgumentException("Unknown selection: " + selection);
+		}
+
+		long start = System.nanoTime();
+		List<String[]> leagues = loadLeagues();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+		try {
+			for (final String[] league : leagues) {
+				results.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws SQLException {
+						return cleanLeague(deleteSql, league[0], league[1]);
+					}
+				}));
+			}
+
+			int deleted = 0;
+			int failed = 0;
+			long partitionNanos = 0;
+			for (int i = 0; i < leagues.size(); i++) {
+				String name = leagues.get(i)[0] + " " + leagues.get(i)[1].trim();
+				try {
+					long[] result = results.get(i).get();
+					deleted += result[0];
+					partitionNanos += result[1];
+					System.out.println(String.format("  %-34s %6d %ss deleted in %6d ms",
+							name, result[0], selection, result[1] / 1000000));
+				} catch (ExecutionException e) {
+					failed++;
+					System.err.println("  " + name + " failed and was rolled back: " + e.getCause().getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for the cleaning workers.");
+				}
+			}
+
+			long wall = System.nanoTime() - start;
+			System.out.println(String.format("Deleted %d %ss from %d leagues (%d failed) with %d workers "
+					+ "in %d ms. Leagues took %d ms in total, %.1f leagues at once on average.",
+					deleted, selection, leagues.size(), failed, workers, wall / 1000000,
+					partitionNanos / 1000000, partitionNanos / (double) Math.max(wall, 1)));
+			return deleted;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The sport and level of every league.
+	 */
+	private List<String[]> loadLeagues() throws SQLException {
+		List<String[]> leagues = new ArrayList<String[]>();
+		PooledConnection connection = pool.borrow();
+		try {
+			ResultSet rs = connection.prepare("select sport, llevel from league order by sport, llevel").executeQuery();
+			try {
+				while (rs.next()) {
+					leagues.add(new String[] { rs.getString(1), rs.getString(2) });
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connection.close();
+		}
+		return leagues;
+	}
+
+	/**
+	 * Cleans one league in its own transaction.
+	 * @return The number of rows deleted and the elapsed nanoseconds, not counting the wait for a connection.
+	 */
+	private long[] cleanLeague(String deleteSql, String sport, String level) throws SQLException {
+		PooledConnection connection = pool.borrow();
+		long start = System.nanoTime();
+		Connection con = connection.getConnection();
+		try {
+			con.setAutoCommit(false);
+			PreparedStatement delete = connection.prepare(deleteSql);
+			delete.setString(1, sport);
+			delete.setString(2, level);
+			delete.setString(3, sport);
+			delete.setString(4, level);
+			int deleted = delete.executeUpdate();
+			con.commit();
+			return new long[] { deleted, System.nanoTime() - start };
+		} catch (SQLException e) {
+			// Turning auto-commit off may be what failed. Rolling back in
+			// auto-commit mode would throw and hide the error.
+			try {
+				if (!con.getAutoCommit()) {
+					con.rollback();
+				}
+			} catch (SQLException rollbackE) {
+				e.addSuppressed(rollbackE);
+			}
+			throw e;
+		} finally {
+			connection.close();
+		}
+	}
+}
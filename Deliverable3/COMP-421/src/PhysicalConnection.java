@@ -0,0 +1,87 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A physical connection to the database kept by the ConnectionPool, with its
+ * statement cache. It is never given to callers: each borrow gets a new
+ * PooledConnection in front of it, so that a caller who has given the
+ * connection back cannot use or return it again.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+class PhysicalConnection {
+
+	// The physical connection to the database.
+	private final Connection connection;
+	// Prepared statements kept open on this connection.
+	private final StatementCache statementCache;
+	// Time at which the connection was last borrowed or returned (ms).
+	private volatile long lastUsed;
+
+	PhysicalConnection(Connection con, int statementCacheSize) {
+		connection = con;
+		statementCache = new StatementCache(con, statementCacheSize);
+		lastUsed = System.currentTimeMillis();
+	}
+
+	Connection getConnection() {
+		return connection;
+	}
+
+	StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	void markUsed() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Runs the validation query to make sure the connection is still usable.
+	 */
+	boolean validate(String validationQuery) throws SQLException {
+		if (connection.isClosed()) {
+			return false;
+		}
+		ResultSet rs = statementCache.prepare(validationQuery).executeQuery();
+		try {
+			return rs.next();
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * Puts the connection back in its default state before it is reused.
+	 * @return False if the connection is broken and should be discarded.
+	 */
+	boolean reset() {
+		lastUsed = System.currentTimeMillis();
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			return !connection.isClosed();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the physical connection, ignoring any errors.
+	 */
+	void closePhysical() {
+		statementCache.clear();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// Nothing more can be done with a broken connection.
+		}
+	}
+}
@@ -0,0 +1,234 @@
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the players by birthday and by creation date, for range
+ * searches such as the players created this month or the players born between
+ * two dates. The database has no index on either column, so the same search in
+ * SQL reads the whole Player table.
+ *
+ * A date is kept as its number of days since 1970-01-01. For each column the
+ * index holds the days of every player in ascending order with the PIDs in a
+ * parallel array, so a range is found with two binary searches and the PIDs in
+ * it are a slice of the array. The index is filled by PlayerIndexLoader with
+ * addAll() and then kept up to date with add() as players are entered. It is
+ * shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PlayerDateIndex {
+
+	/**
+	 * The date columns of a player that can be searched.
+	 */
+	public enum Field {
+		BIRTHDAY, CREATED
+	}
+
+	private static final Pattern DATE = Pattern.compile("^(\\d{4})-(\\d{2})-(\\d{2})");
+
+	/**
+	 * Days of the players in ascending order, with the PID of each.
+	 */
+	private static class SortedDays {
+		int[] days = new int[16];
+		int[] pids = new int[16];
+		int size = 0;
+
+		/**
+		 * Fills the arrays from days and PIDs packed as (day << 32 | pid) and sorted.
+		 */
+		void fill(long[] packed, int count) {
+			days = new int[Math.max(count, 16)];
+			pids = new int[days.length];
+			for (int i = 0; i < count; i++) {
+				days[i] = (int) (packed[i] >> 32);
+				pids[i] = (int) packed[i];
+			}
+			size = count;
+		}
+
+		/**
+		 * Inserts a player after every player with the same or an earlier day.
+		 */
+		void add(int day, int pid) {
+			if (size == days.length) {
+				days = Arrays.copyOf(days, size * 2);
+				pids = Arrays.copyOf(pids, size * 2);
+			}
+			int at = firstAfter(day);
+			System.arraycopy(days, at, days, at + 1, size - at);
+			System.arraycopy(pids, at, pids, at + 1, size - at);
+			days[at] = day;
+			pids[at] = pid;
+			size++;
+		}
+
+		/**
+		 * @return Position of the first player whose day is after the given day.
+		 */
+		int firstAfter(int day) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (days[middle] <= day) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	private final SortedDays[] indexes = new SortedDays[Field.values().length];
+
+	public PlayerDateIndex() {
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = new SortedDays();
+		}
+	}
+
+	/**
+	 * Adds a player that has been entered in the database.
+	 * @param pid - Id of the player.
+	 * @param birthday - Birthday, YYYY-MM-DD.
+	 * @param created - Date the player was created, YYYY-MM-DD.
+	 */
+	public synchronized void add(int pid, String birthday, String created) {
+		indexes[Field.BIRTHDAY.ordinal()].add(epochDay(birthday), pid);
+		indexes[Field.CREATED.ordinal()].add(epochDay(created), pid);
+	}
+
+	/**
+	 * Adds many players at once, such as every player in the database or those
+	 * of an import. They are sorted together with the players already in the
+	 * index once, instead of being inserted one at a time.
+	 * @param pids - Ids of the players.
+	 * @param birthdays - Birthdays, in days since 1970-01-01.
+	 * @param created - Dates the players were created, in days since 1970-01-01.
+	 * @param count - Number of players given.
+	 */
+	public synchronized void addAll(int[] pids, int[] birthdays, int[] created, int count) {
+		indexes[Field.BIRTHDAY.ordinal()] = merge(indexes[Field.BIRTHDAY.ordinal()], pids, birthdays, count);
+		indexes[Field.CREATED.ordinal()] = merge(indexes[Field.CREATED.ordinal()], pids, created, count);
+	}
+
+	/**
+	 * Finds the players whose date is in a range.
+	 * @param field - Date column to search.
+	 * @param from - First day of the range, in days since 1970-01-01, or Integer.MIN_VALUE.
+	 * @param to - Last day of the range, in days since 1970-01-01, or Integer.MAX_VALUE.
+	 * @return PIDs of the players in the range, in ascending order.
+	 */
+	public synchronized int[] range(Field field, int from, int to) {
+		SortedDays index = indexes[field.ordinal()];
+		int start = from == Integer.MIN_VALUE ? 0 : index.firstAfter(from - 1);
+		int end = index.firstAfter(to);
+		if (end <= start) {
+			return new int[0];
+		}
+		int[] pids = Arrays.copyOfRange(index.pids, start, end);
+		Arrays.sort(pids);
+		return pids;
+	}
+
+	public synchronized int size() {
+		return indexes[0].size;
+	}
+
+	/**
+	 * Keeps the PIDs found in both arrays.
+	 * @param a - PIDs in ascending order.
+	 * @param b - PIDs in ascending order.
+	 * @return The PIDs in both, in ascending order.
+	 */
+	public static int[] intersect(int[] a, int[] b) {
+		int[] both = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				both[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(both, count);
+	}
+
+	/**
+	 * Converts a date to its number of days since 1970-01-01.
+	 * @param date - Date as YYYY-MM-DD, anything after the day is ignored.
+	 * @return Days since 1970-01-01, negative for earlier dates.
+	 * @throws IllegalArgumentException if the date is not in that form.
+	 */
+	public static int epochDay(String date) {
+		Matcher matcher = date == null ? null : DATE.matcher(date.trim());
+		if (matcher == null || !matcher.find()) {
+			throw new IllegalArgumentException("Not a date: " + date);
+		}
+		int year = Integer.parseInt(matcher.group(1));
+		int month = Integer.parseInt(matcher.group(2));
+		int day = Integer.parseInt(matcher.group(3));
+		if (month < 1 || month > 12 || day < 1 || day > 31) {
+			throw new IllegalArgumentException("Not a date: " + date);
+		}
+		// Count from March so that the leap day is the last day of the year.
+		if (month <= 2) {
+			year--;
+		}
+		int era = (year >= 0 ? year : year - 399) / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Converts a number of days since 1970-01-01 back to a date.
+	 * @param epochDay - Days since 1970-01-01, negative for earlier dates.
+	 * @return The date as YYYY-MM-DD.
+	 */
+	public static String toDate(int epochDay) {
+		int days = epochDay + 719468;
+		int era = (days >= 0 ? days : days - 146096) / 146097;
+		int dayOfEra = days - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return String.format("%04d-%02d-%02d", year, month, day);
+	}
+
+	/**
+	 * @return The players of an index and the given ones, in a new index.
+	 */
+	private static SortedDays merge(SortedDays index, int[] pids, int[] days, int count) {
+		long[] packed = new long[index.size + count];
+		for (int i = 0; i < index.size; i++) {
+			packed[i] = pack(index.days[i], index.pids[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			packed[index.size + i] = pack(days[i], pids[i]);
+		}
+		// Sorting the packed values orders by day and then by PID.
+		Arrays.sort(packed);
+		SortedDays merged = new SortedDays();
+		merged.fill(packed, packed.length);
+		return merged;
+	}
+
+	private static long pack(int day, int pid) {
+		return ((long) day << 32) | (pid & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory trigram index of the players' last names, first names and
+ * addresses, for finding a player when the name or address was misspelled and
+ * an exact lookup finds nothing.
+ *
+ * Every value is broken into its trigrams, the overlapping runs of three
+ * characters of the lower case value padded with spaces. The similarity of two
+ * values is the number of trigrams they share over the number of distinct
+ * trigrams in either, so "Gorshkov" and "Gorshkof" are close while unrelated
+ * names share none. For every trigram the index keeps the players whose value
+ * contains it, so a search only counts the players sharing at least one
+ * trigram with the query. The rarest trigrams are counted first and a search
+ * stops after a fixed number of postings, which bounds the time of a query
+ * made of very common trigrams. When it stops early, the players sharing the
+ * most of the counted trigrams are compared with the whole query again. The
+ * index is filled by PlayerIndexLoader and shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PlayerFuzzyIndex {
+
+	/**
+	 * The fields of a player that can be searched.
+	 */
+	public enum Field {
+		LAST_NAME, FIRST_NAME, ADDRESS
+	}
+
+	/**
+	 * A player found by a search and how similar the searched field is to the query.
+	 */
+	public static class Match {
+		private final int pid;
+		private final double similarity;
+		private final String[] values;
+
+		Match(int pid, double similarity, String[] values) {
+			this.pid = pid;
+			this.similarity = similarity;
+			this.values = values;
+		}
+
+		public int getPid() {
+			return pid;
+		}
+
+		/**
+		 * @return Between 0 and 1, 1 for the same trigrams as the query.
+		 */
+		public double getSimilarity() {
+			return similarity;
+		}
+
+		public String getLastName() {
+			return values[Field.LAST_NAME.ordinal()];
+		}
+
+		public String getFirstName() {
+			return values[Field.FIRST_NAME.ordinal()];
+		}
+
+		public String getAddress() {
+			return values[Field.ADDRESS.ordinal()];
+		}
+	}
+
+	/**
+	 * Growable list of player positions, to avoid an Integer per posting.
+	 */
+	private static class Postings {
+		int[] docs = new int[2];
+		int size = 0;
+
+		void add(int doc) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+			}
+			docs[size++] = doc;
+		}
+	}
+
+	// Players less similar than this are not returned.
+	public static final double MIN_SIMILARITY = 0.3;
+	// Most postings a single search counts.
+	private static final int MAX_POSTINGS = 1000000;
+	// Players compared again per player returned, when a search stops early.
+	private static final int CANDIDATES_PER_RESULT = 50;
+
+	// For each field, the players containing each trigram, by the position they were added in.
+	private final List<Map<Long, Postings>> trigrams = new ArrayList<Map<Long, Postings>>();
+	// PID, number of distinct trigrams per field, and values of the player at each position.
+	private int[] pids = new int[1024];
+	private short[][] trigramCounts = new short[Field.values().length][1024];
+	private String[][] values = new String[1024][];
+	private int size = 0;
+	// Positions of the players already added, so a player is only added once.
+	private final Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+
+	public PlayerFuzzyIndex() {
+		for (int i = 0; i < Field.values().length; i++) {
+			trigrams.add(new HashMap<Long, Postings>());
+		}
+	}
+
+	/**
+	 * Adds a player that has been entered in the database.
+	 * @param pid - Id of the player.
+	 * @param lname - Last name.
+	 * @param fname - First name.
+	 * @param address - Address.
+	 */
+	public synchronized void add(int pid, String lname, String fname, String address) {
+		if (positions.containsKey(pid)) {
+			return;
+		}
+		if (size == pids.length) {
+			int capacity = size * 2;
+			pids = Arrays.copyOf(pids, capacity);
+			values = Arrays.copyOf(values, capacity);
+			for (int f = 0; f < trigramCounts.length; f++) {
+				trigramCounts[f] = Arrays.copyOf(trigramCounts[f], capacity);
+			}
+		}
+		String[] fields = { trim(lname), trim(fname), trim(address) };
+		for (int f = 0; f < fields.length; f++) {
+			Set<Long> grams = trigramsOf(fields[f]);
+			trigramCounts[f][size] = (short) Math.min(grams.size(), Short.MAX_VALUE);
+			Map<Long, Postings> index = trigrams.get(f);
+			for (Long gram : grams) {
+				Postings postings = index.get(gram);
+				if (postings == null) {
+					postings = new Postings();
+					index.put(gram, postings);
+				}
+				postings.add(size);
+			}
+		}
+		pids[size] = pid;
+		values[size] = fields;
+		positions.put(pid, size);
+		size++;
+	}
+
+	/**
+	 * Finds the players whose field is most similar to the query.
+	 * @param field - Field to compare.
+	 * @param query - The value searched for, possibly misspelled.
+	 * @param k - Most players to return.
+	 * @return Up to k players at least MIN_SIMILARITY similar, most similar first.
+	 */
+	public synchronized List<Match> search(Field field, String query, int k) {
+		final Map<Long, Postings> index = trigrams.get(field.ordinal());
+		Set<Long> queryGrams = trigramsOf(query);
+		List<Long> grams = new ArrayList<Long>(queryGrams);
+		int queryCount = grams.size();
+		if (queryCount == 0 || k < 1) {
+			return new ArrayList<Match>();
+		}
+
+		// Count the rarest trigrams first, so that the limit cuts the least selective ones.
+		Collections.sort(grams, new Comparator<Long>() {
+			@Override
+			public int compare(Long a, Long b) {
+				return postingsSize(index.get(a)) - postingsSize(index.get(b));
+			}
+		});
+
+		// Shared trigrams per player, and the players with at least one.
+		int[] shared = new int[size];
+		int[] touched = new int[Math.min(size, MAX_POSTINGS)];
+		int touchedCount = 0;
+		int counted = 0;
+		boolean complete = true;
+		for (Long gram : grams) {
+			Postings postings = index.get(gram);
+			if (postings == null) {
+				continue;
+			}
+			if (counted + postings.size > MAX_POSTINGS) {
+				complete = false;
+				break;
+			}
+			counted += postings.size;
+			for (int i = 0; i < postings.size; i++) {
+				int doc = postings.docs[i];
+				if (shared[doc]++ == 0 && touchedCount < touched.length) {
+					touched[touchedCount++] = doc;
+				}
+			}
+		}
+
+		// Some trigrams were not counted, so the counts are too low. Keep the players
+		// sharing the most counted trigrams and count their shared trigrams in full.
+		if (!complete) {
+			touchedCount = mostShared(shared, touched, touchedCount, k * CANDIDATES_PER_RESULT);
+			for (int i = 0; i < touchedCount; i++) {
+				int doc = touched[i];
+				Set<Long> common = trigramsOf(values[doc][field.ordinal()]);
+				common.retainAll(queryGrams);
+				shared[doc] = common.size();
+			}
+		}
+
+		// Keep the k most similar in a heap with the least similar on top.
+		short[] counts = trigramCounts[field.ordinal()];
+		PriorityQueue<Match> best = new PriorityQueue<Match>(k + 1, new Comparator<Match>() {
+			@Override
+			public int compare(Match a, Match b) {
+				return Double.compare(a.similarity, b.similarity);
+			}
+		});
+		for (int i = 0; i < touchedCount; i++) {
+			int doc = touched[i];
+			int common = shared[doc];
+			double similarity = common / (double) (queryCount + counts[doc] - common);
+			if (similarity < MIN_SIMILARITY || (best.size() == k && similarity <= best.peek().similarity)) {
+				continue;
+			}
+			best.add(new Match(pids[doc], similarity, values[doc]));
+			if (best.size() > k) {
+				best.poll();
+			}
+		}
+
+		List<Match> matches = new ArrayList<Match>(best);
+		Collections.sort(matches, Collections.reverseOrder(best.comparator()));
+		return matches;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Moves the limit players with the most shared trigrams to the front of touched.
+	 * @return The number of players kept.
+	 */
+	private static int mostShared(final int[] shared, int[] touched, int touchedCount, int limit) {
+		if (touchedCount <= limit) {
+			return touchedCount;
+		}
+		// Count the players per number of shared trigrams, then find the lowest number that is kept.
+		int most = 0;
+		for (int i = 0; i < touchedCount; i++) {
+			most = Math.max(most, shared[touched[i]]);
+		}
+		int[] players = new int[most + 1];
+		for (int i = 0; i < touchedCount; i++) {
+			players[shared[touched[i]]]++;
+		}
+		int cutoff = most;
+		int kept = players[most];
+		while (cutoff > 1 && kept + players[cutoff - 1] <= limit) {
+			cutoff--;
+			kept += players[cutoff];
+		}
+		int count = 0;
+		for (int i = 0; i < touchedCount && count < limit; i++) {
+			if (shared[touched[i]] >= cutoff) {
+				touched[count++] = touched[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return An estimate of the bytes held by the index, excluding the strings of the values.
+	 */
+	public synchronized long estimateMemory() {
+		// Object header and array length of an array, and a map entry with its boxed key.
+		final long arrayOverhead = 16;
+		final long entryOverhead = 32 + 24;
+		long bytes = pids.length * 4L + pids.length * 2L * trigramCounts.length + values.length * 8L;
+		bytes += size * (arrayOverhead + 3 * 8L) + positions.size() * (entryOverhead + 16);
+		for (Map<Long, Postings> index : trigrams) {
+			for (Postings postings : index.values()) {
+				bytes += entryOverhead + 24 + arrayOverhead + postings.docs.length * 4L;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Breaks a value into its distinct trigrams, each packed into a long.
+	 * The value is put in lower case, runs of characters other than letters and
+	 * digits become one space, and every word is padded with two spaces in front
+	 * and one behind, so that short words and word starts still have trigrams.
+	 */
+	static Set<Long> trigramsOf(String value) {
+		Set<Long> grams = new HashSet<Long>();
+		if (value == null) {
+			return grams;
+		}
+		for (String word : value.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+			if (word.isEmpty()) {
+				continue;
+			}
+			String padded = "  " + word + " ";
+			for (int i = 0; i + 3 <= padded.length(); i++) {
+				grams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+			}
+		}
+		return grams;
+	}
+
+	private static int postingsSize(Postings postings) {
+		return postings == null ? 0 : postings.size;
+	}
+
+	private static String trim(String value) {
+		return value == null ? "" : value.trim();
+	}
+}
@@ -0,0 +1,74 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Fills the player search, fuzzy and date indexes from the Player table. Every
+ * row is read once and given to all three indexes, either for the whole table
+ * at startup or for the players created since a date after an import.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PlayerIndexLoader {
+
+	// Rows read from the database per round trip while loading.
+	private static final int FETCH_SIZE = 1000;
+
+	private static final String SELECT_PLAYERS =
+			"SELECT pid, lname, fname, email, phonenumber, address, birthday, datecreated FROM Player";
+
+	/**
+	 * Adds the players of the database that are not in the indexes yet.
+	 * @param pool - Pool to borrow the connection from.
+	 * @param since - Only read players created on or after this date, YYYY-MM-DD, or null for every player.
+	 * @param search - Index by name, email and phone number.
+	 * @param fuzzy - Index by name and address, for fuzzy searches.
+	 * @param dates - Index by birthday and creation date.
+	 * @return Number of players added.
+	 * @throws SQLException
+	 */
+	public static int load(ConnectionPool pool, String since, PlayerSearchIndex search, PlayerFuzzyIndex fuzzy,
+			PlayerDateIndex dates) throws SQLException {
+		int[] pids = new int[1024];
+		int[] birthdays = new int[1024];
+		int[] created = new int[1024];
+		int count = 0;
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare(since == null ? SELECT_PLAYERS
+					: SELECT_PLAYERS + " WHERE datecreated >= ?");
+			if (since != null) {
+				statement.setString(1, since);
+			}
+			statement.setFetchSize(FETCH_SIZE);
+			ResultSet rs = statement.executeQuery();
+			try {
+				while (rs.next()) {
+					int pid = rs.getInt(1);
+					// Players entered through the menu are already indexed.
+					if (search.getPlayer(pid) != null) {
+						continue;
+					}
+					search.add(pid, rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5));
+					fuzzy.add(pid, rs.getString(2), rs.getString(3), rs.getString(6));
+					if (count == pids.length) {
+						pids = Arrays.copyOf(pids, count * 2);
+						birthdays = Arrays.copyOf(birthdays, count * 2);
+						created = Arrays.copyOf(created, count * 2);
+					}
+					pids[count] = pid;
+					birthdays[count] = PlayerDateIndex.epochDay(rs.getString(7));
+					created[count] = PlayerDateIndex.epochDay(rs.getString(8));
+					count++;
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connection.close();
+		}
+		dates.addAll(pids, birthdays, created, count);
+		return count;
+	}
+}
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Pages through the players matching a lookup in PID order, for searches such
+ * as by gender which match a large part of the table.
+ *
+ * Pages are found by seeking past the last PID shown instead of with an
+ * offset, so every page is read straight from the primary key index and costs
+ * the same however far into the results it is. Only one page is fetched and
+ * held at a time, and the connection goes back to the pool between pages, so
+ * memory use does not depend on the number of matches and nothing is held open
+ * while the user reads.
+ *
+ * When the players have already been narrowed down to a list of PIDs, for
+ * example by a date range in PlayerDateIndex, the pages are read by PID from
+ * that list instead, and the search condition is applied to those players only.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PlayerPager {
+
+	private static final DatabaseMetrics.Operation PAGE_METRICS = DatabaseMetrics.getDefault().operation("sql.page");
+
+	private final ConnectionPool pool;
+	// Query for one page: the search, the seek past the last PID, and the page limit.
+	// With candidates, the search and a PID IN list of one page of candidates.
+	private final String pageSql;
+	// Values for the search, followed by the last PID shown or the candidates to read.
+	private final Object[] params;
+	// Number of values of the search.
+	private final int conditionValues;
+	// Rows the driver fetches from the database per round trip.
+	private final int fetchSize;
+	private final int pageSize;
+	// PIDs of the only players that can match in ascending order, or null for every player.
+	private final int[] candidates;
+
+	// Highest PID shown so far, every PID is above this.
+	private int lastPid = Integer.MIN_VALUE;
+	// Position of the next candidate to read.
+	private int nextCandidate = 0;
+	private boolean more = true;
+	private long shown = 0;
+
+	/**
+	 * @param pool - Pool to borrow a connection from for each page.
+	 * @param condition - Search condition with a ? for every value, or null to list every player.
+	 * @param values - Values for the placeholders of the condition, in order.
+	 * @param pageSize - Players shown per page.
+	 * @param fetchSize - Rows the driver fetches per round trip.
+	 */
+	public PlayerPager(ConnectionPool pool, String condition, Object[] values, int pageSize, int fetchSize) {
+		this(pool, condition, values, null, pageSize, fetchSize);
+	}
+
+	/**
+	 * @param pool - Pool to borrow a connection from for each page.
+	 * @param condition - Search condition with a ? for every value, or null for no condition.
+	 * @param values - Values for the placeholders of the condition, in order.
+	 * @param candidates - PIDs of the only players that can match in ascending order, or null for every player.
+	 * @param pageSize - Players shown per page.
+	 * @param fetchSize - Rows the driver fetches per round trip.
+	 */
+	public PlayerPager(ConnectionPool pool, String condition, Object[] values, int[] candidates, int pageSize,
+			int fetchSize) {
+		if (pageSize < 1 || fetchSize < 1) {
+			throw new IllegalArgumentException("Page and fetch size must be positive.");
+		}
+		this.pool = pool;
+		this.pageSize = pageSize;
+		this.fetchSize = Math.min(fetchSize, pageSize);
+		this.candidates = candidates;
+		this.conditionValues = values.length;
+		String where = "SELECT * FROM Player WHERE " + (condition == null ? "" : "(" + condition + ") AND ");
+		if (candidates == null) {
+			this.pageSql = where + "PID > ? ORDER BY PID FETCH FIRST " + pageSize + " ROWS ONLY";
+			this.params = new Object[values.length + 1];
+		} else {
+			// Always list a full page of PIDs, so the statement is the same for every page.
+			char[] placeholders = new char[pageSize * 2 - 1];
+			Arrays.fill(placeholders, ',');
+			for (int i = 0; i < placeholders.length; i += 2) {
+				placeholders[i] = '?';
+			}
+			this.pageSql = where + "PID IN (" + new String(placeholders) + ") ORDER BY PID";
+			this.params = new Object[values.length + pageSize];
+			this.more = candidates.length > 0;
+		}
+		System.arraycopy(values, 0, params, 0, values.length);
+	}
+
+	/**
+	 * @return Whether there may be players after the last page.
+	 */
+	public boolean hasMore() {
+		return more;
+	}
+
+	/**
+	 * @return Number of players shown so far.
+	 */
+	public long getShown() {
+		return shown;
+	}
+
+	/**
+	 * Writes the next page of players, one field per line, and flushes the output once
+	 * the page is complete.
+	 * @param out - Where the players are written.
+	 * @return Number of players on the page, 0 once there are no more.
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public int nextPage(Writer out) throws SQLException, IOException {
+		if (!more) {
+			return 0;
+		}
+		int rows = 0;
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare(pageSql);
+			statement.setFetchSize(fetchSize);
+			if (candidates == null) {
+				params[params.length - 1] = lastPid;
+				rows = writeRows(statement, out);
+				// A short page is the last one.
+				more = rows == pageSize;
+			} else {
+				// Read candidates until the page is full, as the condition may rule some out.
+				while (rows < pageSize && nextCandidate < candidates.length) {
+					int count = Math.min(pageSize - rows, candidates.length - nextCandidate);
+					for (int i = 0; i < pageSize; i++) {
+						// Unused places repeat the last candidate, which does not change the result.
+						params[conditionValues + i] = candidates[nextCandidate + Math.min(i, count - 1)];
+					}
+					nextCandidate += count;
+					rows += writeRows(statement, out);
+				}
+				more = nextCandidate < candidates.length;
+			}
+		} finally {
+			connection.close();
+		}
+		out.flush();
+		shown += rows;
+		return rows;
+	}
+
+	/**
+	 * Runs the page query with the current parameters and writes the players it returns.
+	 * @return Number of players written.
+	 */
+	private int writeRows(PreparedStatement statement, Writer out) throws SQLException, IOException {
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, params[i]);
+		}
+		long start = System.nanoTime();
+		DatabaseMetrics.getDefault().countStatement(pageSql);
+		int rows = 0;
+		try {
+			ResultSet rs = statement.executeQuery();
+			try {
+				String[] row = new String[9];
+				while (rs.next()) {
+					for (int i = 0; i < row.length; i++) {
+						row[i] = rs.getString(i + 1);
+					}
+					lastPid = rs.getInt(1);
+					writePlayer(out, row);
+					rows++;
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			PAGE_METRICS.recordError(start, e);
+			throw e;
+		}
+		PAGE_METRICS.record(start, rows);
+		return rows;
+	}
+
+	/**
+	 * Writes a player one field per line.
+	 * @param out - Where the player is written.
+	 * @param row - Every column of the player as a string, in table order.
+	 * @throws IOException
+	 */
+	public static void writePlayer(Writer out, String[] row) throws IOException {
+		out.write("PID :" + row[0].trim() + "\n");
+		out.write("Gender :" + row[1] + "\n");
+		out.write("Last Name :" + row[2] + "\n");
+		out.write("First Name :" + row[3] + "\n");
+		out.write("Address :" + row[4] + "\n");
+		out.write("Phone Number :" + row[5] + "\n");
+		out.write("Email :" + row[6] + "\n");
+		out.write("Birthday :" + row[7] + "\n");
+		out.write("Created :" + row[8] + "\n");
+		out.write("-----\n");
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of the players by last name, first name, email and phone
+ * number, for searching by the start of any of them without regard to case.
+ * The database only has indexes on the keys, so the same search in SQL would
+ * read the whole Player table.
+ *
+ * Every field has a sorted map from its lower case value to the PIDs with that
+ * value. The players starting with a prefix are the keys from the prefix up to
+ * the first key that does not start with it, so a search only touches the
+ * players it returns. The index is filled by PlayerIndexLoader and then kept
+ * up to date with add() as players are entered. It is shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PlayerSearchIndex {
+
+	/**
+	 * The fields of a player that can be searched.
+	 */
+	public enum Field {
+		LAST_NAME, FIRST_NAME, EMAIL, PHONE
+	}
+
+	/**
+	 * Growable list of PIDs, to avoid an Integer per player.
+	 */
+	private static class PidList {
+		int[] pids = new int[1];
+		int size = 0;
+
+		void add(int pid) {
+			if (size == pids.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(pids, 0, grown, 0, size);
+				pids = grown;
+			}
+			pids[size++] = pid;
+		}
+	}
+
+	// One sorted map per field, from lower case value to the players with that value.
+	private final Map<Field, TreeMap<String, PidList>> indexes = new HashMap<Field, TreeMap<String, PidList>>();
+	// Last name, first name, email and phone number of every player, for showing matches.
+	private final Map<Integer, String[]> players = new HashMap<Integer, String[]>();
+
+	public PlayerSearchIndex() {
+		for (Field field : Field.values()) {
+			indexes.put(field, new TreeMap<String, PidList>());
+		}
+	}
+
+	/**
+	 * Adds a player that has been entered in the database.
+	 * @param pid - Id of the player.
+	 * @param lname - Last name.
+	 * @param fname - First name.
+	 * @param email - Email address.
+	 * @param phone - Phone number.
+	 */
+	public synchronized void add(int pid, String lname, String fname, String email, String phone) {
+		String[] fields = { trim(lname), trim(fname), trim(email), trim(phone) };
+		if (players.put(pid, fields) != null) {
+			return;
+		}
+		for (Field field : Field.values()) {
+			String key = fields[field.ordinal()].toLowerCase();
+			TreeMap<String, PidList> index = indexes.get(field);
+			PidList pids = index.get(key);
+			if (pids == null) {
+				pids = new PidList();
+				index.put(key, pids);
+			}
+			pids.add(pid);
+		}
+	}
+
+	/**
+	 * Finds the players whose field starts with the prefix, ignoring case.
+	 * @param field - Field to search.
+	 * @param prefix - Start of the value.
+	 * @param limit - Most players to return.
+	 * @return PIDs of the players in order of the field.
+	 */
+	public synchronized List<Integer> search(Field field, String prefix, int limit) {
+		List<Integer> found = new ArrayList<Integer>();
+		collect(field, prefix.trim().toLowerCase(), limit, found);
+		return found;
+	}
+
+	/**
+	 * Finds the players whose last name, first name, email or phone number starts
+	 * with the prefix, ignoring case.
+	 * @param prefix - Start of the value.
+	 * @param limit - Most players to return.
+	 * @return PIDs of the players, matches on last name first, then first name, email and phone.
+	 */
+	public synchronized List<Integer> search(String prefix, int limit) {
+		Set<Integer> found = new LinkedHashSet<Integer>();
+		String key = prefix.trim().toLowerCase();
+		for (Field field : Field.values()) {
+			collect(field, key, limit, found);
+		}
+		return new ArrayList<Integer>(found);
+	}
+
+	/**
+	 * @param pid - Id of a player.
+	 * @return The last name, first name, email and phone number of the player, or null if not indexed.
+	 */
+	public synchronized String[] getPlayer(int pid) {
+		return players.get(pid);
+	}
+
+	public synchronized int size() {
+		return players.size();
+	}
+
+	/**
+	 * Adds the players whose field starts with the key until there are limit players.
+	 */
+	private void collect(Field field, String key, int limit, Collection<Integer> found) {
+		if (key.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<String, PidList> entry : indexes.get(field).tailMap(key, true).entrySet()) {
+			if (!entry.getKey().startsWith(key)) {
+				break;
+			}
+			PidList pids = entry.getValue();
+			for (int i = 0; i < pids.size; i++) {
+				if (found.size() >= limit) {
+					return;
+				}
+				found.add(pids.pids[i]);
+			}
+		}
+	}
+
+	private static String trim(String value) {
+		return value == null ? "" : value.trim();
+	}
+}
@@ -0,0 +1,139 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection lent out by the ConnectionPool. Closing it gives it back to the
+ * pool instead of closing the physical connection to the database.
+ *
+ * Every borrow gets a new PooledConnection, which stops working once it is
+ * closed, even though the physical connection behind it is lent out again.
+ * Closing it a second time does nothing, and any other use throws an
+ * SQLException with SQLSTATE 08003, so a caller holding on to a returned
+ * connection cannot touch the work of the next borrower.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class PooledConnection implements AutoCloseable {
+
+	// SQLSTATE of a connection that is not open.
+	private static final String NOT_OPEN = "08003";
+
+	// Pool which owns the connection.
+	private final ConnectionPool pool;
+	// The physical connection, shared with the earlier and later borrows.
+	private final PhysicalConnection physical;
+	// Time at which the connection was borrowed (ms).
+	private final long borrowedAt;
+	// Set once, by the first close.
+	private final AtomicBoolean closed = new AtomicBoolean();
+	// Whether this borrow has already been reported as a leak.
+	private volatile boolean leakReported;
+	// The connection given to the caller, made on first use.
+	private Connection guarded;
+
+	PooledConnection(ConnectionPool owner, PhysicalConnection physical) {
+		this.pool = owner;
+		this.physical = physical;
+		this.borrowedAt = System.currentTimeMillis();
+		physical.markUsed();
+	}
+
+	/**
+	 * @return The connection, for transactions and statements that are not
+	 *         cached. Closing it does nothing, and it stops working once this
+	 *         PooledConnection is closed.
+	 * @throws SQLException if this PooledConnection was closed.
+	 */
+	public synchronized Connection getConnection() throws SQLException {
+		checkOpen();
+		if (guarded == null) {
+			guarded = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Guard());
+		}
+		return guarded;
+	}
+
+	/**
+	 * Gives a prepared statement for the SQL from this connection's statement cache.
+	 * The statement stays open for reuse and must not be closed by the caller.
+	 * @param sql - SQL text with ? placeholders for the parameters.
+	 * @throws SQLException if this PooledConnection was closed or the statement cannot be prepared.
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		checkOpen();
+		return physical.getStatementCache().prepare(sql);
+	}
+
+	/**
+	 * Returns the connection to the pool. Does nothing if it was already returned.
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			pool.release(this);
+		}
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	PhysicalConnection getPhysical() {
+		return physical;
+	}
+
+	long getBorrowedAt() {
+		return borrowedAt;
+	}
+
+	boolean isLeakReported() {
+		return leakReported;
+	}
+
+	void setLeakReported() {
+		leakReported = true;
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed.get()) {
+			throw new SQLException("The connection was already returned to the pool.", NOT_OPEN);
+		}
+	}
+
+	/**
+	 * Passes calls on to the physical connection while this PooledConnection is
+	 * open, except close(), which is left to the pool.
+	 */
+	private class Guard implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close") && method.getParameterTypes().length == 0) {
+				return null;
+			}
+			if (name.equals("isClosed") && method.getParameterTypes().length == 0) {
+				return closed.get() || physical.getConnection().isClosed();
+			}
+			if (name.equals("equals") && method.getParameterTypes().length == 1) {
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+				return System.identityHashCode(proxy);
+			}
+			if (!name.equals("toString")) {
+				checkOpen();
+			}
+			try {
+				return method.invoke(physical.getConnection(), args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.regex.Pattern;
+
+/**
+ * The kinds of people that can be added to the database, with the checks that
+ * DatabaseUI.addNewRecord() applies to each field. Used to validate records
+ * that are imported in bulk instead of typed in one at a time.
+ *
+ * A record is given as its fields in table order without the creation date:
+ * id, gender, last name, first name, address, phone number, email, birthday,
+ * and for officials and coordinators the salary.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public enum RecordType {
+	PLAYER("Player", "PID", 260400000, 260500000, false),
+	OFFICIAL("Official", "OID", 300000, 400000, true),
+	COORDINATOR("Coordinator", "CID", 540000, 550000, true);
+
+	private static final Pattern DATE = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}$");
+	private static final Pattern PHONE = Pattern.compile("^[0-9]{10}$");
+	// Rejects dates that do not exist, such as 1990-02-31, which DB2 would
+	// refuse with 22008. One per thread, as imports validate in parallel.
+	private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+			format.setLenient(false);
+			return format;
+		}
+	};
+
+	// Table the records are inserted into.
+	private final String table;
+	// Name of the id field, used in messages.
+	private final String idName;
+	// Ids must lie strictly between these bounds.
+	private final int minId;
+	private final int maxId;
+	// Whether the record ends with a salary.
+	private final boolean hasSalary;
+
+	private RecordType(String table, String idName, int minId, int maxId, boolean hasSalary) {
+		this.table = table;
+		this.idName = idName;
+		this.minId = minId;
+		this.maxId = maxId;
+		this.hasSalary = hasSalary;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * @return Number of fields expected for a record, without the creation date.
+	 */
+	public int getFieldCount() {
+		return hasSalary ? 9 : 8;
+	}
+
+	/**
+	 * @return The insert statement for the table, with a placeholder for every column.
+	 */
+	public String getInsertSql() {
+		return hasSalary ? "INSERT INTO " + table + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+				: "INSERT INTO " + table + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	}
+
+	/**
+	 * Checks a record against the column limits of the schema.
+	 * @param fields - The fields of the record.
+	 * @return Null if the record is valid, otherwise the reason it is not.
+	 */
+	public String validate(String[] fields) {
+		if (fields.length != getFieldCount()) {
+			return "Expected " + getFieldCount() + " fields but found " + fields.length;
+		}
+		int id;
+		try {
+			id = Integer.parseInt(fields[0].trim());
+		} catch (NumberFormatException e) {
+			return idName + " is not a number";
+		}
+		if (id <= minId || id >= maxId) {
+			return idName + " is not between " + minId + " and " + maxId;
+		}
+		if (!fields[1].equals("m") && !fields[1].equals("f")) {
+			return "Gender must be m or f";
+		}
+		if (!isName(fields[2])) {
+			return "Last name must be up to 25 characters with first letter capital";
+		}
+		if (!isName(fields[3])) {
+			return "First name must be up to 25 characters with first letter capital";
+		}
+		if (fields[4].length() > 100) {
+			return "Address is longer than 100 characters";
+		}
+		if (!PHONE.matcher(fields[5]).matches()) {
+			return "Phone number must be 10 digits";
+		}
+		if (fields[6].length() > 50 || !fields[6].contains("@") || !fields[6].contains(".")) {
+			return "Email must be up to 50 characters with an @ and a .";
+		}
+		if (!isDate(fields[7])) {
+			return "Birthday must be a date as YYYY-MM-DD";
+		}
+		if (hasSalary) {
+			try {
+				Integer.parseInt(fields[8].trim());
+			} catch (NumberFormatException e) {
+				return "Salary is not a whole number";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Turns a valid record into the values for the insert statement.
+	 * @param fields - The fields of a record that passed validate().
+	 * @param created - The creation date to store, YYYY-MM-DD.
+	 * @return Values in column order.
+	 */
+	public Object[] toParameters(String[] fields, String created) {
+		Object[] values = new Object[hasSalary ? 10 : 9];
+		values[0] = Integer.parseInt(fields[0].trim());
+		for (int i = 1; i < 8; i++) {
+			values[i] = fields[i];
+		}
+		values[8] = created;
+		if (hasSalary) {
+			values[9] = Integer.parseInt(fields[8].trim());
+		}
+		return values;
+	}
+
+	private static boolean isDate(String date) {
+		if (!DATE.matcher(date).matches()) {
+			return false;
+		}
+		ParsePosition position = new ParsePosition(0);
+		return DATE_FORMAT.get().parse(date, position) != null && position.getIndex() == date.length();
+	}
+
+	private static boolean isName(String name) {
+		return name.length() > 0 && name.length() <= 25 && name.charAt(0) >= 'A' && name.charAt(0) <= 'Z';
+	}
+
+	@Override
+	public String toString() {
+		return table;
+	}
+}
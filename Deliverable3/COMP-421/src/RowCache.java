@@ -0,0 +1,163 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-through cache of the rows of one table keyed by their integer id, used
+ * for the players, coordinators and officials that the front desk looks up over
+ * and over. A row that is not cached is read from the database and kept, so
+ * repeat lookups do not go over the network.
+ *
+ * The cache holds a limited number of rows and evicts the least recently used
+ * one when it is full. Rows also expire after a fixed time so that changes made
+ * outside this program are eventually seen. Ids that do not exist are cached as
+ * well, so every change made through this program must invalidate the id it
+ * wrote. The cache is shared between threads.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class RowCache {
+
+	// Cached in place of the row for an id that does not exist.
+	private static final String[] NOT_FOUND = new String[0];
+
+	/**
+	 * A row and the time at which it stops being used.
+	 */
+	private static class CachedRow {
+		final String[] row;
+		final long expires;
+
+		CachedRow(String[] row, long expires) {
+			this.row = row;
+			this.expires = expires;
+		}
+	}
+
+	private final ConnectionPool pool;
+	private final String table;
+	// Query reading one row by its id.
+	private final String selectSql;
+	// Milliseconds a row is used for after it is read.
+	private final long timeToLive;
+	// Rows in access order, least recently used first.
+	private final LinkedHashMap<Integer, CachedRow> rows;
+	// Number of lookups served from the cache and number that went to the database.
+	private long hits = 0;
+	private long misses = 0;
+	// Counts invalidations, so a row read while its id was invalidated is not kept.
+	private long generation = 0;
+
+	/**
+	 * @param pool - Pool to borrow a connection from on a miss.
+	 * @param table - Table the rows are read from.
+	 * @param idColumn - Integer primary key of the table.
+	 * @param capacity - Number of rows to keep before the least recently used is evicted.
+	 * @param timeToLive - Milliseconds a row is used for after it is read.
+	 */
+	public RowCache(ConnectionPool pool, String table, String idColumn, final int capacity, long timeToLive) {
+		this.pool = pool;
+		this.table = table;
+		this.selectSql = "SELECT * FROM " + table + " WHERE " + idColumn + " = ?";
+		this.timeToLive = timeToLive;
+		this.rows = new LinkedHashMap<Integer, CachedRow>(capacity + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CachedRow> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Gives the row with the id, from the cache if possible.
+	 * @param id - Id of the row.
+	 * @return Every column of the row as a string in table order, or null if there is no such row.
+	 * @throws SQLException
+	 */
+	public String[] get(int id) throws SQLException {
+		long readGeneration;
+		synchronized (this) {
+			CachedRow entry = rows.get(id);
+			if (entry != null && entry.expires > System.currentTimeMillis()) {
+				hits++;
+				return entry.row == NOT_FOUND ? null : entry.row;
+			}
+			misses++;
+			readGeneration = generation;
+		}
+
+		// Read the row without holding the lock, so other lookups are not held up by the database.
+		String[] row = NOT_FOUND;
+		PooledConnection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepare(selectSql);
+			statement.setInt(1, id);
+			ResultSet rs = statement.executeQuery();
+			try {
+				if (rs.next()) {
+					row = new String[rs.getMetaData().getColumnCount()];
+					for (int i = 0; i < row.length; i++) {
+						row[i] = rs.getString(i + 1);
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			connection.close();
+		}
+
+		synchronized (this) {
+			if (generation == readGeneration) {
+				rows.put(id, new CachedRow(row, System.currentTimeMillis() + timeToLive));
+			}
+		}
+		return row == NOT_FOUND ? null : row;
+	}
+
+	/**
+	 * Forgets the row with the id, so that the next lookup reads it again. Called
+	 * whenever the row is inserted, updated or deleted.
+	 * @param id - Id of the row that changed.
+	 */
+	public synchronized void invalidate(int id) {
+		generation++;
+		rows.remove(id);
+	}
+
+	/**
+	 * Forgets every row, after changes to many rows such as a bulk import.
+	 */
+	public synchronized void clear() {
+		generation++;
+		rows.clear();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The fraction of lookups served from the cache, 0 before the first lookup.
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : hits / (double) total;
+	}
+
+	/**
+	 * @return A one line summary of the use of the cache.
+	 */
+	public synchronized String getStatistics() {
+		return String.format("%s cache: %d rows, %d hits, %d misses, hit rate %.1f%%", table, rows.size(), hits,
+				misses, getHitRate() * 100);
+	}
+}
@@ -0,0 +1,204 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Times SeasonScheduler on generated leagues: first making the fixtures of
+ * every season in memory, then scheduling every season into the database with
+ * one thread and with several, deleting the games between runs.
+ *
+ * Usage: java ScheduleBenchmark url username password [leagues] [teams] [threads]
+ *
+ * Every league has one season of the given number of teams. The tables are
+ * created from the DDL of the second deliverable if they do not exist, which
+ * can be changed with -Dbench.ddl. All generated rows belong to leagues whose
+ * sport starts with "SCHED-" and are removed afterwards.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ScheduleBenchmark {
+
+	// Prefix of the sports created for the benchmark.
+	private static final String SPORT_PREFIX = "SCHED-";
+	// League levels used for every generated sport.
+	private static final String[] LEVELS = { "A", "B", "C" };
+	private static final int YEAR = 2030;
+	// Rows inserted per batch.
+	private static final int BATCH_SIZE = 5000;
+	// Slots of the schedule: four games every day from the first date.
+	private static final String FIRST_DATE = YEAR + "-09-01";
+	private static final String[] TIMES = { "09:00:00", "11:00:00", "13:00:00", "15:00:00" };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: java ScheduleBenchmark url username password [leagues] [teams] [threads]");
+			System.exit(1);
+		}
+		int leagues = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		int teams = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		Connection con = DriverManager.getConnection(args[0], args[1], args[2]);
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, threads);
+		try {
+			SchemaLoader.createSchema(con, new File(System.getProperty("bench.ddl", SchemaLoader.DEFAULT_DDL)));
+			removeData(con);
+			generateLeagues(con, leagues, teams);
+			System.out.println("Generated " + leagues + " leagues of " + teams + " teams, "
+					+ (long) leagues * teams * (teams - 1) / 2 + " games to schedule.");
+
+			SeasonScheduler scheduler = new SeasonScheduler(pool, FIRST_DATE, TIMES, 1);
+			System.out.println("Making the fixtures in memory:");
+			timePlan(scheduler, leagues, teams, 1);
+			timePlan(scheduler, leagues, teams, threads);
+
+			System.out.println("Scheduling into the database:");
+			timeSchedule(con, scheduler, 1);
+			timeSchedule(con, scheduler, threads);
+		} finally {
+			try {
+				removeData(con);
+			} finally {
+				pool.close();
+				con.close();
+			}
+		}
+	}
+
+	/**
+	 * Makes the fixtures of every league, several leagues at a time, without the database.
+	 */
+	private static void timePlan(final SeasonScheduler scheduler, int leagues, int teams, int threads)
+			throws InterruptedException {
+		final List<String> names = teamNames(teams);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int l = 0; l < leagues; l++) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return scheduler.plan(names, new HashSet<String>()).size();
+				}
+			});
+		}
+		long start = System.nanoTime();
+		long games = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Integer> result : executor.invokeAll(tasks)) {
+				try {
+					games += result.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		print(threads, games, System.nanoTime() - start, 0);
+	}
+
+	/**
+	 * Deletes the games of the generated leagues and schedules every season again.
+	 */
+	private static void timeSchedule(Connection con, SeasonScheduler scheduler, int threads) throws SQLException,
+			InterruptedException {
+		Statement statement = con.createStatement();
+		try {
+			statement.executeUpdate("delete from Game where sport like '" + SPORT_PREFIX + "%'");
+		} finally {
+			statement.close();
+		}
+		long statements = DatabaseMetrics.getDefault().getStatementCount();
+		long start = System.nanoTime();
+		long games = scheduler.schedule(YEAR, threads);
+		print(threads, games, System.nanoTime() - start, DatabaseMetrics.getDefault().getStatementCount() - statements);
+	}
+
+	private static void print(int threads, long games, long nanos, long statements) {
+		long millis = Math.max(1, nanos / 1000000);
+		System.out.println(String.format("  %2d threads: %9d games in %7d ms, %9d games/s%s", threads, games, millis,
+				games * 1000 / millis, statements > 0 ? ", " + statements + " statements" : ""));
+	}
+
+	/**
+	 * Generates the leagues, each with one season and its teams.
+	 */
+	private static void generateLeagues(Connection con, int leagues, int teams) throws SQLException {
+		List<String> names = teamNames(teams);
+		con.setAutoCommit(false);
+		PreparedStatement league = con.prepareStatement("insert into League values (?, ?, ?, ?, ?)");
+		PreparedStatement season = con.prepareStatement("insert into Season values (?, ?, ?, ?, ?)");
+		PreparedStatement team = con.prepareStatement("insert into Team values (?, ?, ?, ?)");
+		try {
+			int pending = 0;
+			for (int l = 0; l < leagues; l++) {
+				String sport = SPORT_PREFIX + (l / LEVELS.length);
+				String level = LEVELS[l % LEVELS.length];
+				league.setString(1, sport);
+				league.setString(2, level);
+				league.setInt(3, 5);
+				league.setInt(4, 15);
+				league.setInt(5, 2);
+				league.addBatch();
+				season.setInt(1, YEAR);
+				season.setString(2, sport);
+				season.setString(3, level);
+				season.setDate(4, java.sql.Date.valueOf(YEAR + "-08-15"));
+				season.setInt(5, teams);
+				season.addBatch();
+				for (String name : names) {
+					team.setString(1, name);
+					team.setInt(2, YEAR);
+					team.setString(3, sport);
+					team.setString(4, level);
+					team.addBatch();
+				}
+				pending += 2 + teams;
+				if (pending >= BATCH_SIZE || l == leagues - 1) {
+					league.executeBatch();
+					season.executeBatch();
+					team.executeBatch();
+					pending = 0;
+				}
+			}
+			con.commit();
+		} finally {
+			league.close();
+			season.close();
+			team.close();
+			con.setAutoCommit(true);
+		}
+	}
+
+	private static List<String> teamNames(int teams) {
+		List<String> names = new ArrayList<String>();
+		for (int t = 0; t < teams; t++) {
+			names.add(String.format("Team %05d", t));
+		}
+		return names;
+	}
+
+	/**
+	 * Deletes the generated leagues, with their seasons, teams and games.
+	 */
+	private static void removeData(Connection con) throws SQLException {
+		Statement statement = con.createStatement();
+		try {
+			statement.executeUpdate("delete from League where sport like '" + SPORT_PREFIX + "%'");
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates the tables of the sports/recreation center database in an empty
+ * schema, from the same DDL that was handed in with the second deliverable, so
+ * that benchmarks and generated data run against exactly the production tables.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class SchemaLoader {
+
+	// DDL file of the second deliverable, relative to the COMP-421 directory.
+	public static final String DEFAULT_DDL = "../../Deliverable2/Group30 - ProjectDeliverable2.txt";
+
+	// The trigger of the third deliverable which stops a player from playing for two teams of a season.
+	public static final String ONE_TEAM_TRIGGER = "create trigger oneTeam before insert on playsfor "
+			+ "referencing new as n "
+			+ "for each row "
+			+ "when (n.syear in (select syear from playsfor where pid = n.pid and sport = n.sport and llevel = n.llevel)) "
+			+ "SIGNAL SQLSTATE '75000' SET MESSAGE_TEXT='Cannot play twice in same season'";
+
+	// SQLSTATE of a table or trigger that already exists.
+	private static final String ALREADY_EXISTS = "42710";
+
+	/**
+	 * Runs the create table statements of the DDL file, with their check
+	 * constraints, and creates the oneTeam trigger.
+	 * @param con - Connection to the schema.
+	 * @param ddl - The DDL file, one create table statement per line.
+	 * @return Number of tables created.
+	 * @throws IOException if the file cannot be read.
+	 * @throws SQLException
+	 */
+	public static int createSchema(Connection con, File ddl) throws IOException, SQLException {
+		return createSchema(con, ddl, true);
+	}
+
+	/**
+	 * Runs the create table statements of the DDL file and creates the oneTeam
+	 * trigger. The file creates every table twice, the second time with its check
+	 * constraints, so with checks the last statement for each table is used and
+	 * without them the first, in the order the tables first appear. Tables and
+	 * triggers that already exist are left as they are.
+	 * @param con - Connection to the schema.
+	 * @param ddl - The DDL file, one create table statement per line.
+	 * @param checks - Whether to create the tables with their check constraints,
+	 *                 which limit the ids to the ranges the applications use.
+	 * @return Number of tables created.
+	 * @throws IOException if the file cannot be read.
+	 * @throws SQLException
+	 */
+	public static int createSchema(Connection con, File ddl, boolean checks) throws IOException, SQLException {
+		Map<String, String> tables = new LinkedHashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new FileReader(ddl));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.toLowerCase().startsWith("create table")) {
+					String table = line.substring("create table".length()).trim().split("[\\s(]", 2)[0];
+					if (checks || !tables.containsKey(table.toLowerCase())) {
+						tables.put(table.toLowerCase(), line);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		int created = 0;
+		for (String sql : tables.values()) {
+			if (execute(con, sql)) {
+				created++;
+			}
+		}
+		execute(con, ONE_TEAM_TRIGGER);
+		if (!con.getAutoCommit()) {
+			con.commit();
+		}
+		return created;
+	}
+
+	/**
+	 * @return True if the statement ran, false if the object already existed.
+	 */
+	private static boolean execute(Connection con, String sql) throws SQLException {
+		Statement statement = con.createStatement();
+		try {
+			statement.executeUpdate(sql);
+			return true;
+		} catch (SQLException e) {
+			if (ALREADY_EXISTS.equals(e.getSQLState())) {
+				return false;
+			}
+			throw e;
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Schedules a round robin for the seasons of a year, in which every team of a
+ * season plays every other team once, and writes the games to Game and
+ * HasTeams.
+ *
+ * The fixtures are made with the circle method: one team stays in place while
+ * the others rotate around it, so that every round every team plays once, and
+ * the team in place alternates between the first and second name. The games
+ * are given the available slots of the league in order, round after round: a
+ * slot is a time on a match day, the match days being every few days from a
+ * first date. The key of Game lets a league have one game per slot, so no team
+ * ever plays twice at once, and slots already used by games of the league are
+ * skipped.
+ *
+ * Each season is scheduled on its own connection, seasons in parallel, and its
+ * games are inserted in batches and committed together, so a season is either
+ * fully scheduled or not at all.
+ *
+ * Usage: java SeasonScheduler url username password year first-date times days-between [threads]
+ * where times are separated by commas, such as 09:00,11:00 or 09:00:00,11:00:00.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class SeasonScheduler {
+
+	// Rows sent per executeBatch().
+	private static final int BATCH_SIZE = 1000;
+	private static final String INSERT_GAME = "INSERT INTO Game VALUES (?, ?, ?, ?)";
+	private static final String INSERT_TEAMS = "INSERT INTO HasTeams VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	// A time of day as HH:MM or HH:MM:SS.
+	private static final Pattern TIME = Pattern.compile("^([01][0-9]|2[0-3]):[0-5][0-9](:[0-5][0-9])?$");
+
+	private static final DatabaseMetrics.Operation METRICS = DatabaseMetrics.getDefault().operation("sql.schedule");
+
+	private final ConnectionPool pool;
+	private final String firstDate;
+	private final String[] times;
+	private final int daysBetween;
+
+	/**
+	 * @param pool - Pool to borrow a connection from for every season.
+	 * @param firstDate - First match day, YYYY-MM-DD.
+	 * @param times - Times games start on a match day, HH:MM or HH:MM:SS, in order.
+	 * @param daysBetween - Days from one match day to the next.
+	 * @throws IllegalArgumentException if a time is in neither form.
+	 */
+	public SeasonScheduler(ConnectionPool pool, String firstDate, String[] times, int daysBetween) {
+		if (times.length == 0 || daysBetween < 1) {
+			throw new IllegalArgumentException("There must be at least one time and one day between match days.");
+		}
+		this.pool = pool;
+		this.firstDate = firstDate;
+		// Kept as HH:MM:SS, as DB2 returns the times of the games already taken.
+		this.times = new String[times.length];
+		for (int i = 0; i < times.length; i++) {
+			String time = times[i].trim();
+			if (!TIME.matcher(time).matches()) {
+				throw new IllegalArgumentException("Not a time as HH:MM or HH:MM:SS: " + times[i]);
+			}
+			this.times[i] = time.length() == 5 ? time + ":00" : time;
+		}
+		this.daysBetween = daysBetween;
+	}
+
+	/**
+	 * Pairs the teams with the circle method.
+	 * @param teams - Names of the teams.
+	 * @return Both names of every game, round after round.
+	 */
+	public static List<String[]> roundRobin(List<String> teams) {
+		List<String> circle = new ArrayList<String>(teams);
+		if (circle.size() % 2 == 1) {
+			// The team paired with null has the round off.
+			circle.add(null);
+		}
+		int n = circle.size();
+		List<String[]> games = new ArrayList<String[]>(n / 2 * Math.max(0, n - 1));
+		for (int round = 0; round < n - 1; round++) {
+			for (int i = 0; i < n / 2; i++) {
+				String first = circle.get(i);
+				String second = circle.get(n - 1 - i);
+				if (first == null || second == null) {
+					continue;
+				}
+				if (i == 0 && round % 2 == 1) {
+					games.add(new String[] { second, first });
+				} else {
+					games.add(new String[] { first, second });
+				}
+			}
+			// Every team but the first moves one place round the circle.
+			circle.add(1, circle.remove(n - 1));
+		}
+		return games;
+	}
+
+	/**
+	 * Gives every game of a round robin a slot.
+	 * @param teams - Names of the teams.
+	 * @param taken - Slots already used in the league, as "date time", which are skipped.
+	 * @return Time, date and both names of every game, in order.
+	 */
+	public List<String[]> plan(List<String> teams, Set<String> taken) {
+		List<String[]> pairs = roundRobin(teams);
+		List<String[]> games = new ArrayList<String[]>(pairs.size());
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		Calendar day = Calendar.getInstance();
+		try {
+			day.setTime(format.parse(firstDate));
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Not a date: " + firstDate);
+		}
+		String date = format.format(day.getTime());
+		int time = 0;
+		for (String[] pair : pairs) {
+			while (taken.contains(date + " " + times[time])) {
+				time++;
+				if (time == times.length) {
+					time = 0;
+					day.add(Calendar.DAY_OF_MONTH, daysBetween);
+					date = format.format(day.getTime());
+				}
+			}
+			games.add(new String[] { times[time], date, pair[0], pair[1] });
+			time++;
+			if (time == times.length) {
+				time = 0;
+				day.add(Calendar.DAY_OF_MONTH, daysBetween);
+				date = format.format(day.getTime());
+			}
+		}
+		return games;
+	}
+
+	/**
+	 * Schedules one season.
+	 * @param year - Year of the season.
+	 * @param sport - Sport of the league.
+	 * @param level - Level of the league.
+	 * @return Number of games written.
+	 * @throws SQLException if any statement fails. Nothing is written.
+	 */
+	public int schedule(int year, String sport, String level) throws SQLException {
+		long start = System.nanoTime();
+		PooledConnection connection = pool.borrow();
+		try {
+			Connection con = connection.getConnection();
+			con.setAutoCommit(false);
+			try {
+				List<String> teams = new ArrayList<String>();
+				for (String[] row : read(connection, "SELECT name FROM Team WHERE syear = ? AND sport = ? "
+						+ "AND llevel = ? ORDER BY name", year, sport, level)) {
+					teams.add(row[0]);
+				}
+				Set<String> taken = new HashSet<String>();
+				for (String[] row : read(connection, "SELECT gdate, gtime FROM Game WHERE sport = ? AND llevel = ?",
+						sport, level)) {
+					taken.add(row[0] + " " + row[1]);
+				}
+				List<String[]> games = plan(teams, taken);
+				write(connection, year, sport, level, games);
+				con.commit();
+				METRICS.record(start, games.size());
+				return games.size();
+			} catch (SQLException e) {
+				con.rollback();
+				METRICS.recordError(start, e);
+				throw e;
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Schedules every season of a year, several at a time.
+	 * @param year - Year of the seasons.
+	 * @param threads - Seasons scheduled at once. The pool must be able to lend as many connections.
+	 * @return Number of games written.
+	 * @throws SQLException if a season could not be scheduled. The seasons already done are kept.
+	 * @throws InterruptedException
+	 */
+	public long schedule(final int year, int threads) throws SQLException, InterruptedException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread.");
+		}
+		List<String[]> leagues;
+		PooledConnection connection = pool.borrow();
+		try {
+			leagues = read(connection, "SELECT sport, llevel FROM Season WHERE syear = ?", year);
+		} finally {
+			connection.close();
+		}
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (final String[] league : leagues) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws SQLException {
+					return schedule(year, league[0], league[1]);
+				}
+			});
+		}
+		long games = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Integer> result : executor.invokeAll(tasks)) {
+				try {
+					games += result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof SQLException) {
+						throw (SQLException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return games;
+	}
+
+	/**
+	 * Inserts the games of a season and their teams in batches.
+	 */
+	private static void write(PooledConnection connection, int year, String sport, String level, List<String[]> games)
+			throws SQLException {
+		PreparedStatement game = connection.prepare(INSERT_GAME);
+		PreparedStatement teams = connection.prepare(INSERT_TEAMS);
+		int pending = 0;
+		for (String[] row : games) {
+			game.setString(1, row[0]);
+			game.setString(2, row[1]);
+			game.setString(3, sport);
+			game.setString(4, level);
+			game.addBatch();
+			Object[] values = { row[0], row[1], sport, level, row[2], year, sport, level, row[3], year, sport, level };
+			for (int i = 0; i < values.length; i++) {
+				teams.setObject(i + 1, values[i]);
+			}
+			teams.addBatch();
+			if (++pending == BATCH_SIZE) {
+				flush(game, teams);
+				pending = 0;
+			}
+		}
+		if (pending > 0) {
+			flush(game, teams);
+		}
+	}
+
+	/**
+	 * Sends the games before their teams, which refer to them.
+	 */
+	private static void flush(PreparedStatement game, PreparedStatement teams) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(INSERT_GAME);
+		game.executeBatch();
+		DatabaseMetrics.getDefault().countStatement(INSERT_TEAMS);
+		teams.executeBatch();
+	}
+
+	/**
+	 * Runs a query.
+	 * @return Every column of every row, as strings.
+	 */
+	private static List<String[]> read(PooledConnection connection, String sql, Object... params) throws SQLException {
+		DatabaseMetrics.getDefault().countStatement(sql);
+		PreparedStatement statement = connection.prepare(sql);
+		for (int i = 0; i < params.length; i++) {
+			statement.setObject(i + 1, params[i]);
+		}
+		List<String[]> rows = new ArrayList<String[]>();
+		ResultSet rs = statement.executeQuery();
+		try {
+			int columns = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				String[] row = new String[columns];
+				for (int i = 0; i < columns; i++) {
+					row[i] = rs.getString(i + 1);
+				}
+				rows.add(row);
+			}
+		} finally {
+			rs.close();
+		}
+		return rows;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 7) {
+			System.err.println("Usage: java SeasonScheduler url username password year first-date times days-between "
+					+ "[threads]");
+			System.exit(1);
+		}
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : 4;
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, threads);
+		try {
+			SeasonScheduler scheduler = new SeasonScheduler(pool, args[4], args[5].split(","),
+					Integer.parseInt(args[6]));
+			long start = System.nanoTime();
+			long games = scheduler.schedule(Integer.parseInt(args[3]), threads);
+			System.out.println(String.format("Scheduled %d games in %d ms", games, (System.nanoTime() - start) / 1000000));
+		} finally {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of prepared statements for one connection, keyed by
+ * the SQL text. Reusing a prepared statement saves the database from parsing and
+ * planning the same statement every time it is run. Statements are closed when
+ * they are evicted or when the cache is cleared.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class StatementCache {
+
+	// Connection the statements are prepared on.
+	private final Connection connection;
+	// Statements in access order, least recently used first.
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	// Number of lookups served from the cache and number that had to prepare.
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param con - Connection to prepare statements on.
+	 * @param capacity - Number of statements to keep before the least recently used is closed.
+	 */
+	public StatementCache(Connection con, final int capacity) {
+		connection = con;
+		statements = new LinkedHashMap<String, PreparedStatement>(capacity + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > capacity) {
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gives the prepared statement for the SQL, preparing it only if it is not
+	 * cached. The statement belongs to the cache and must not be closed by the caller.
+	 * @param sql - SQL text with ? placeholders for the parameters.
+	 * @return Prepared statement with its parameters cleared.
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if (statement != null) {
+			hits++;
+			statement.clearParameters();
+			return statement;
+		}
+		misses++;
+		statement = connection.prepareStatement(sql);
+		statements.put(sql, statement);
+		return statement;
+	}
+
+	/**
+	 * Closes and forgets every cached statement.
+	 */
+	public void clear() {
+		for (PreparedStatement statement : statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// The statement is being discarded anyway.
+		}
+	}
+}
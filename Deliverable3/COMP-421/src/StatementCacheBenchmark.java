@@ -0,0 +1,178 @@
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Measures the per-call latency of the coordinator lookup and salary update
+ * paths of DatabaseUI.alterSalary(), once with a new Statement and concatenated
+ * SQL for every call (the old behaviour) and once with parameters bound to a
+ * prepared statement from the statement cache.
+ *
+ * Usage: java StatementCacheBenchmark url username password [iterations]
+ *
+ * Every call sends different literals, as calls from the application would, so
+ * the old path cannot reuse a plan from the package cache: the lookups probe a
+ * new id of the coordinator id range each time, and the salary path raises the
+ * salary of one coordinator by one each time. That salary is put back at the
+ * end.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class StatementCacheBenchmark {
+
+	private static final String LOOKUP_SQL = "SELECT cid FROM Coordinator WHERE cid = ?";
+	private static final String SALARY_SQL = "SELECT yearlysal FROM Coordinator WHERE cid = ?";
+	private static final String UPDATE_SQL = "UPDATE Coordinator SET yearlysal = ? WHERE cid = ?";
+	// Coordinator ids allowed by the schema, probed in turn by the lookups.
+	private static final int FIRST_CID = 540001;
+	private static final int CIDS = 9999;
+
+	// Lookups done so far, so that no two runs probe the same ids.
+	private static int probes = 0;
+
+	public static void main(String[] args) throws SQLException {
+		if (args.length < 3) {
+			System.err.println("Usage: java StatementCacheBenchmark url username password [iterations]");
+			System.exit(1);
+		}
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+		DriverManager.registerDriver(new com.ibm.db2.jcc.DB2Driver());
+		ConnectionPool pool = new ConnectionPool(args[0], args[1], args[2], 1, 1);
+		PooledConnection connection = pool.borrow();
+		try {
+			int cid = firstCoordinator(connection);
+			if (cid < 0) {
+				System.err.println("There are no coordinators to benchmark with.");
+				return;
+			}
+			int salary = salary(connection, cid);
+			double[] literal;
+			double[] prepared;
+			try {
+				// Warm up both paths so that neither pays for class loading or connection setup.
+				runLiteral(connection, cid, iterations / 10 + 1);
+				runPrepared(connection, cid, iterations / 10 + 1);
+
+				literal = runLiteral(connection, cid, iterations);
+				prepared = runPrepared(connection, cid, iterations);
+			} finally {
+				PreparedStatement restore = connection.prepare(UPDATE_SQL);
+				restore.setInt(1, salary);
+				restore.setInt(2, cid);
+				restore.executeUpdate();
+			}
+
+			System.out.println("Iterations: " + iterations);
+			System.out.println(String.format("%-8s %18s %18s %10s", "Path", "Statement (us)", "Prepared (us)", "Speedup"));
+			System.out.println(String.format("%-8s %18.1f %18.1f %9.2fx", "Lookup", literal[0], prepared[0], literal[0] / prepared[0]));
+			System.out.println(String.format("%-8s %18.1f %18.1f %9.2fx", "Salary", literal[1], prepared[1], literal[1] / prepared[1]));
+		} finally {
+			connection.close();
+			pool.close();
+		}
+	}
+
+	/**
+	 * @return The id of some coordinator, or -1 if there are none.
+	 */
+	private static int firstCoordinator(PooledConnection connection) throws SQLException {
+		ResultSet rs = connection.prepare("SELECT min(cid) FROM Coordinator").executeQuery();
+		try {
+			rs.next();
+			int cid = rs.getInt(1);
+			return rs.wasNull() ? -1 : cid;
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * @return The salary of a coordinator.
+	 */
+	private static int salary(PooledConnection connection, int cid) throws SQLException {
+		PreparedStatement statement = connection.prepare(SALARY_SQL);
+		statement.setInt(1, cid);
+		ResultSet rs = statement.executeQuery();
+		try {
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			rs.close();
+		}
+	}
+
+	/**
+	 * @return The next coordinator id to look up.
+	 */
+	private static int nextProbe() {
+		return FIRST_CID + probes++ % CIDS;
+	}
+
+	/**
+	 * Runs both paths the way they used to be written.
+	 * @return Average microseconds per call for the lookup and the salary paths.
+	 */
+	private static double[] runLiteral(PooledConnection connection, int cid, int iterations) throws SQLException {
+		double[] result = new double[2];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Statement statement = connection.getConnection().createStatement();
+			ResultSet rs = statement.executeQuery("SELECT cid FROM Coordinator WHERE cid=" + nextProbe());
+			rs.next();
+			statement.close();
+		}
+		result[0] = (System.nanoTime() - start) / (iterations * 1000.0);
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Statement statement = connection.getConnection().createStatement();
+			ResultSet rs = statement.executeQuery("SELECT yearlysal FROM Coordinator WHERE cid =" + cid);
+			rs.next();
+			int salary = rs.getInt(1);
+			statement.close();
+			statement = connection.getConnection().createStatement();
+			statement.executeUpdate("UPDATE Coordinator SET yearlysal =" + (salary + 1) + " WHERE cid = " + cid);
+			statement.close();
+		}
+		result[1] = (System.nanoTime() - start) / (iterations * 1000.0);
+		return result;
+	}
+
+	/**
+	 * Runs both paths with prepared statements from the statement cache.
+	 * @return Average microseconds per call for the lookup and the salary paths.
+	 */
+	private static double[] runPrepared(PooledConnection connection, int cid, int iterations) throws SQLException {
+		double[] result = new double[2];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			PreparedStatement statement = connection.prepare(LOOKUP_SQL);
+			statement.setInt(1, nextProbe());
+			ResultSet rs = statement.executeQuery();
+			rs.next();
+			rs.close();
+		}
+		result[0] = (System.nanoTime() - start) / (iterations * 1000.0);
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			PreparedStatement statement = connection.prepare(SALARY_SQL);
+			statement.setInt(1, cid);
+			ResultSet rs = statement.executeQuery();
+			rs.next();
+			int salary = rs.getInt(1);
+			rs.close();
+			statement = connection.prepare(UPDATE_SQL);
+			statement.setInt(1, salary + 1);
+			statement.setInt(2, cid);
+			statement.executeUpdate();
+		}
+		result[1] = (System.nanoTime() - start) / (iterations * 1000.0);
+		return result;
+	}
+}
@@ -0,0 +1,261 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Checks that a connection given back to the ConnectionPool cannot touch the
+ * borrow that follows it. Runs against an in-memory driver, so no database is
+ * needed.
+ *
+ * Usage: javac -d classes src/*.java test/*.java
+ *        java -cp classes ConnectionPoolTest
+ * It exits with status 1 if any check fails.
+ *
+ * @author Maxim Gorshkov, Andrew Borodovski, James McCorriston
+ */
+public class ConnectionPoolTest {
+
+	private static final String URL = "jdbc:pooltest:";
+
+	private static int failures = 0;
+
+	/**
+	 * The state of one fake physical connection.
+	 */
+	static class FakeConnection implements InvocationHandler {
+		boolean autoCommit = true;
+		boolean closed = false;
+		// Work done since the last commit or rollback.
+		int uncommitted = 0;
+		int rollbacks = 0;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getAutoCommit")) {
+				return autoCommit;
+			} else if (name.equals("setAutoCommit")) {
+				autoCommit = (Boolean) args[0];
+				return null;
+			} else if (name.equals("rollback")) {
+				rollbacks++;
+				uncommitted = 0;
+				return null;
+			} else if (name.equals("commit")) {
+				uncommitted = 0;
+				return null;
+			} else if (name.equals("isClosed")) {
+				return closed;
+			} else if (name.equals("close")) {
+				closed = true;
+				return null;
+			} else if (name.equals("prepareStatement")) {
+				return statement();
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			}
+			return null;
+		}
+
+		/**
+		 * @return A statement whose updates count as uncommitted work and whose queries return one row.
+		 */
+		private PreparedStatement statement() {
+			return (PreparedStatement) Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("executeUpdate")) {
+								uncommitted++;
+								return 1;
+							} else if (method.getName().equals("executeQuery")) {
+								return oneRow();
+							}
+							return null;
+						}
+					});
+		}
+
+		private ResultSet oneRow() {
+			return (ResultSet) Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+					new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+						private boolean read = false;
+
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("next")) {
+								boolean more = !read;
+								read = true;
+								return more;
+							}
+							return null;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Opens fake connections and remembers the last one.
+	 */
+	static class FakeDriver implements Driver {
+		FakeConnection last;
+
+		@Override
+		public Connection connect(String url, Properties info) {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			last = new FakeConnection();
+			return (Connection) Proxy.newProxyInstance(ConnectionPoolTest.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, last);
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url.startsWith(URL);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		FakeDriver driver = new FakeDriver();
+		DriverManager.registerDriver(driver);
+		staleCloseLeavesNextBorrowAlone(driver);
+		closedConnectionCannotBeUsed();
+		closingTheConnectionKeepsItInThePool(driver);
+		if (failures > 0) {
+			System.out.println(failures + " checks failed.");
+			System.exit(1);
+		}
+		System.out.println("All checks passed.");
+	}
+
+	/**
+	 * Borrows, closes, borrows again and closes the first borrow a second time.
+	 * The second borrower's uncommitted work must survive.
+	 */
+	private static void staleCloseLeavesNextBorrowAlone(FakeDriver driver) throws SQLException {
+		ConnectionPool pool = new ConnectionPool(URL, "user", "password", 1, 1);
+		try {
+			FakeConnection physical = driver.last;
+			PooledConnection first = pool.borrow();
+			first.close();
+
+			PooledConnection second = pool.borrow();
+			second.getConnection().setAutoCommit(false);
+			second.prepare("UPDATE Player SET fname = ? WHERE pid = ?").executeUpdate();
+
+			first.close();
+			check("the stale close leaves the second borrow's work", physical.uncommitted == 1);
+			check("the stale close does not roll back", physical.rollbacks == 0);
+			check("the stale close leaves auto-commit off", !physical.autoCommit);
+			check("the second borrow is still active", pool.getActiveCount() == 1);
+			check("the second borrow is not put back in the pool", pool.getIdleCount() == 0);
+
+			second.getConnection().commit();
+			second.close();
+			check("the second close returns the connection", pool.getIdleCount() == 1);
+		} finally {
+			pool.close();
+		}
+	}
+
+	/**
+	 * A closed borrow must refuse to prepare statements or give its connection.
+	 */
+	private static void closedConnectionCannotBeUsed() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(URL, "user", "password", 1, 1);
+		try {
+			PooledConnection first = pool.borrow();
+			Connection held = first.getConnection();
+			first.close();
+			PooledConnection second = pool.borrow();
+			try {
+				check("prepare on a closed connection throws", throwsNotOpen(first, held));
+			} finally {
+				second.close();
+			}
+		} finally {
+			pool.close();
+		}
+	}
+
+	private static boolean throwsNotOpen(PooledConnection closed, Connection held) {
+		int refused = 0;
+		try {
+			closed.prepare("SELECT 1 FROM SYSIBM.SYSDUMMY1");
+		} catch (SQLException e) {
+			refused += "08003".equals(e.getSQLState()) ? 1 : 0;
+		}
+		try {
+			closed.getConnection();
+		} catch (SQLException e) {
+			refused += "08003".equals(e.getSQLState()) ? 1 : 0;
+		}
+		try {
+			held.setAutoCommit(false);
+		} catch (SQLException e) {
+			refused += "08003".equals(e.getSQLState()) ? 1 : 0;
+		}
+		return refused == 3;
+	}
+
+	/**
+	 * Closing the connection given by getConnection() must not close the physical connection.
+	 */
+	private static void closingTheConnectionKeepsItInThePool(FakeDriver driver) throws SQLException {
+		ConnectionPool pool = new ConnectionPool(URL, "user", "password", 1, 1);
+		try {
+			FakeConnection physical = driver.last;
+			PooledConnection connection = pool.borrow();
+			connection.getConnection().close();
+			check("closing the connection leaves the physical one open", !physical.closed);
+			connection.close();
+		} finally {
+			pool.close();
+		}
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}